@@ -0,0 +1,103 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yoomoney.gradle.plugins.git.expired.branch.helper.BranchFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static java.lang.String.format;
+
+/**
+ * Бенчмарк фильтрации веток по паттернам игнорирования.
+ * <p>
+ * Паттерны состоят поровну из точных имен, префиксов и произвольных регулярных выражений.
+ * Скомпилированный {@link BranchFilter} сравнивается с последовательной проверкой каждого паттерна.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BranchFilterBenchmark {
+
+    @Param({"10000"})
+    public int branches;
+
+    @Param({"3", "30"})
+    public int patterns;
+
+    private List<String> branchNames;
+    private List<Pattern> ignorePatterns;
+    private BranchFilter branchFilter;
+
+    @Setup
+    public void setUp() {
+        branchNames = new ArrayList<>(branches);
+        for (int i = 0; i < branches; i++) {
+            branchNames.add(format("refs/remotes/origin/%s/branch-%d", i % 2 == 0 ? "feature" : "bugfix", i));
+        }
+        ignorePatterns = new ArrayList<>(patterns);
+        for (int i = 0; i < patterns; i++) {
+            switch (i % 3) {
+                case 0:
+                    ignorePatterns.add(Pattern.compile(format("^refs/remotes/origin/release-%d$", i)));
+                    break;
+                case 1:
+                    ignorePatterns.add(Pattern.compile(format("^refs/remotes/origin/hotfix-%d/.*", i)));
+                    break;
+                default:
+                    ignorePatterns.add(Pattern.compile(format("^refs/remotes/origin/feature/branch-%d[0-9]+$", i)));
+                    break;
+            }
+        }
+        branchFilter = BranchFilter.compile(ignorePatterns);
+    }
+
+    @Benchmark
+    public int compileAndFilter() {
+        BranchFilter filter = BranchFilter.compile(ignorePatterns);
+        int notIgnored = 0;
+        for (String branchName : branchNames) {
+            if (!filter.isIgnored(branchName)) {
+                notIgnored++;
+            }
+        }
+        return notIgnored;
+    }
+
+    @Benchmark
+    public int filter() {
+        int notIgnored = 0;
+        for (String branchName : branchNames) {
+            if (!branchFilter.isIgnored(branchName)) {
+                notIgnored++;
+            }
+        }
+        return notIgnored;
+    }
+
+    @Benchmark
+    public int filterByEachPattern() {
+        int notIgnored = 0;
+        for (String branchName : branchNames) {
+            if (ignorePatterns.stream().noneMatch(pattern -> pattern.matcher(branchName).matches())) {
+                notIgnored++;
+            }
+        }
+        return notIgnored;
+    }
+}
@@ -0,0 +1,116 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.benchmark;
+
+import org.eclipse.jgit.lib.Ref;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.yoomoney.gradle.plugins.git.expired.branch.BranchInfo;
+import ru.yoomoney.gradle.plugins.git.expired.branch.git.GitSettings;
+import ru.yoomoney.gradle.plugins.git.expired.branch.helper.GitManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки операций {@link GitManager} на синтетическом репозитории.
+ * <p>
+ * Каждый бенчмарк обрабатывает все ветки репозитория, как при запуске задачи,
+ * поэтому результат - время обработки репозитория целиком.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GitManagerBenchmark {
+
+    @Param({"1000"})
+    public int branches;
+
+    @Param({"5"})
+    public int commitsPerBranch;
+
+    @Param({"500"})
+    public int masterCommits;
+
+    @Param({"10"})
+    public int fanOut;
+
+    private SyntheticRepository repository;
+    private GitManager gitManager;
+    private List<Ref> remoteBranches;
+
+    @Setup
+    public void setUp() throws IOException {
+        repository = SyntheticRepository.builder()
+                .withBranches(branches)
+                .withCommitsPerBranch(commitsPerBranch)
+                .withMasterCommits(masterCommits)
+                .withFanOut(fanOut)
+                .create(Files.createTempDirectory("git-expired-branch-benchmark").toFile());
+        gitManager = new GitManager(repository.getDirectory(), GitSettings.builder()
+                .withEmail("benchmark@test.ru")
+                .withUsername("Benchmark")
+                .build());
+        remoteBranches = gitManager.getRemoteBranches();
+    }
+
+    @TearDown
+    public void tearDown() {
+        repository.close();
+    }
+
+    @Benchmark
+    public List<Ref> getRemoteBranches() {
+        return gitManager.getRemoteBranches();
+    }
+
+    @Benchmark
+    public void getLastCommitFromBranch(Blackhole blackhole) {
+        for (Ref branch : remoteBranches) {
+            blackhole.consume(gitManager.getLastCommitFromBranch(branch));
+        }
+    }
+
+    @Benchmark
+    public List<BranchInfo> getLastCommitsFromBranches() {
+        return gitManager.getLastCommitsFromBranches(remoteBranches);
+    }
+
+    @Benchmark
+    public void getGoodCommonAncestorsCommit(Blackhole blackhole) {
+        for (String branchName : repository.getBranchNames()) {
+            Optional<String> commonAncestor =
+                    gitManager.getGoodCommonAncestorsCommit(SyntheticRepository.REMOTE_MASTER, branchName);
+            blackhole.consume(commonAncestor);
+        }
+    }
+
+    @Benchmark
+    public Map<String, String> getGoodCommonAncestorsCommits() {
+        return gitManager.getGoodCommonAncestorsCommits(SyntheticRepository.REMOTE_MASTER,
+                repository.getBranchNames());
+    }
+
+    @Benchmark
+    public void makeDiffBranch(Blackhole blackhole) {
+        for (String branchName : repository.getBranchNames()) {
+            blackhole.consume(gitManager.makeDiffBranch(branchName));
+        }
+    }
+}
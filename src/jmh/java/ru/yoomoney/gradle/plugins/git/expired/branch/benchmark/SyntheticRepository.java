@@ -0,0 +1,258 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.benchmark;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.BatchRefUpdate;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.ReceiveCommand;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+
+/**
+ * Синтетический git репозиторий для бенчмарков.
+ * <p>
+ * Репозиторий содержит ветку master из {@code masterCommits} коммитов и {@code branches} веток
+ * refs/remotes/origin/feature/branch-N по {@code commitsPerBranch} коммитов в каждой. Ветки отводятся
+ * от {@code fanOut} равномерно распределенных по истории master коммитов. Объекты записываются напрямую
+ * через {@link ObjectInserter} без рабочей директории, ref'ы создаются одним пакетным обновлением
+ * и попадают в packed-refs, как в репозитории после clone.
+ */
+public class SyntheticRepository implements AutoCloseable {
+    /**
+     * Имя ref'а ветки master в удаленном репозитории
+     */
+    public static final String REMOTE_MASTER = Constants.R_REMOTES + "origin/master";
+
+    private static final long DAY_SECONDS = TimeUnit.DAYS.toSeconds(1);
+
+    private final File directory;
+    private final List<String> branchNames;
+
+    private SyntheticRepository(File directory, List<String> branchNames) {
+        this.directory = directory;
+        this.branchNames = Collections.unmodifiableList(branchNames);
+    }
+
+    /**
+     * Папка с репозиторием
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Полные имена ref'ов созданных веток в порядке создания
+     */
+    public List<String> getBranchNames() {
+        return branchNames;
+    }
+
+    /**
+     * Удалить репозиторий
+     */
+    @Override
+    public void close() {
+        FileUtils.deleteQuietly(directory);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Генератор синтетического репозитория
+     */
+    public static class Builder {
+        private int branches = 1000;
+        private int commitsPerBranch = 5;
+        private int masterCommits = 500;
+        private int fanOut = 10;
+        private int filesPerCommit = 3;
+        private int authors = 50;
+        private boolean packed = true;
+
+        private Builder() {
+        }
+
+        /**
+         * Количество веток
+         */
+        public Builder withBranches(int branches) {
+            this.branches = branches;
+            return this;
+        }
+
+        /**
+         * Количество коммитов в каждой ветке после точки ответвления от master
+         */
+        public Builder withCommitsPerBranch(int commitsPerBranch) {
+            this.commitsPerBranch = commitsPerBranch;
+            return this;
+        }
+
+        /**
+         * Количество коммитов в ветке master
+         */
+        public Builder withMasterCommits(int masterCommits) {
+            this.masterCommits = masterCommits;
+            return this;
+        }
+
+        /**
+         * Количество различных коммитов master, от которых отводятся ветки
+         */
+        public Builder withFanOut(int fanOut) {
+            this.fanOut = fanOut;
+            return this;
+        }
+
+        /**
+         * Количество различных файлов, изменяемых коммитами одной ветки
+         */
+        public Builder withFilesPerCommit(int filesPerCommit) {
+            this.filesPerCommit = filesPerCommit;
+            return this;
+        }
+
+        /**
+         * Количество различных авторов веток
+         */
+        public Builder withAuthors(int authors) {
+            this.authors = authors;
+            return this;
+        }
+
+        /**
+         * Упаковать объекты после генерации
+         */
+        public Builder withPacked(boolean packed) {
+            this.packed = packed;
+            return this;
+        }
+
+        /**
+         * Создать репозиторий в папке directory
+         *
+         * @param directory пустая папка для репозитория
+         * @return созданный репозиторий
+         */
+        public SyntheticRepository create(File directory) {
+            if (branches < 0 || commitsPerBranch < 1 || masterCommits < 1 || fanOut < 1
+                    || filesPerCommit < 1 || authors < 1) {
+                throw new IllegalArgumentException(format("Wrong repository parameters: branches=%s, " +
+                                "commitsPerBranch=%s, masterCommits=%s, fanOut=%s, filesPerCommit=%s, authors=%s",
+                        branches, commitsPerBranch, masterCommits, fanOut, filesPerCommit, authors));
+            }
+            try (Git git = Git.init().setDirectory(directory).call()) {
+                List<String> branchNames = generate(git.getRepository());
+                if (packed) {
+                    git.gc().call();
+                }
+                return new SyntheticRepository(directory, branchNames);
+            } catch (GitAPIException | IOException e) {
+                throw new RuntimeException(format("Can't create synthetic repository: directory=%s", directory), e);
+            }
+        }
+
+        private List<String> generate(Repository repository) throws IOException {
+            long startTime = System.currentTimeMillis() / 1000 - (masterCommits + commitsPerBranch + 365L) * DAY_SECONDS;
+            List<ObjectId> masterCommitIds = new ArrayList<>(masterCommits);
+            List<SortedMap<String, ObjectId>> masterTrees = new ArrayList<>(masterCommits);
+            List<String> branchNames = new ArrayList<>(branches);
+            List<ReceiveCommand> commands = new ArrayList<>(branches + 2);
+
+            try (ObjectInserter inserter = repository.newObjectInserter()) {
+                SortedMap<String, ObjectId> files = new TreeMap<>();
+                ObjectId parent = null;
+                for (int i = 0; i < masterCommits; i++) {
+                    String fileName = format("master-%d.txt", i % filesPerCommit);
+                    files.put(fileName, insertBlob(inserter, format("master commit %d%n", i)));
+                    parent = insertCommit(inserter, files, parent, "master",
+                            startTime + i * DAY_SECONDS, format("master commit %d", i));
+                    masterCommitIds.add(parent);
+                    masterTrees.add(new TreeMap<>(files));
+                }
+
+                for (int branch = 0; branch < branches; branch++) {
+                    int forkIndex = (int) ((long) (branch % fanOut) * masterCommits / fanOut);
+                    SortedMap<String, ObjectId> branchFiles = new TreeMap<>(masterTrees.get(forkIndex));
+                    ObjectId branchParent = masterCommitIds.get(forkIndex);
+                    String author = format("author-%d", branch % authors);
+                    for (int commit = 0; commit < commitsPerBranch; commit++) {
+                        String fileName = format("branch-%d-%d.txt", branch, commit % filesPerCommit);
+                        branchFiles.put(fileName, insertBlob(inserter,
+                                format("branch %d commit %d%n", branch, commit)));
+                        branchParent = insertCommit(inserter, branchFiles, branchParent, author,
+                                startTime + (forkIndex + commit + 1) * DAY_SECONDS + branch,
+                                format("branch %d commit %d", branch, commit));
+                    }
+                    String branchName = format("%sorigin/feature/branch-%d", Constants.R_REMOTES, branch);
+                    branchNames.add(branchName);
+                    commands.add(new ReceiveCommand(ObjectId.zeroId(), branchParent, branchName));
+                }
+                inserter.flush();
+            }
+
+            ObjectId master = masterCommitIds.get(masterCommits - 1);
+            commands.add(new ReceiveCommand(ObjectId.zeroId(), master, Constants.R_HEADS + Constants.MASTER));
+            commands.add(new ReceiveCommand(ObjectId.zeroId(), master, REMOTE_MASTER));
+            BatchRefUpdate refUpdate = repository.getRefDatabase().newBatchUpdate();
+            refUpdate.addCommand(commands);
+            try (RevWalk walk = new RevWalk(repository)) {
+                refUpdate.execute(walk, NullProgressMonitor.INSTANCE);
+            }
+            for (ReceiveCommand command : commands) {
+                if (command.getResult() != ReceiveCommand.Result.OK) {
+                    throw new IOException(format("Can't create ref: ref=%s, result=%s",
+                            command.getRefName(), command.getResult()));
+                }
+            }
+            return branchNames;
+        }
+
+        private static ObjectId insertBlob(ObjectInserter inserter, String content) throws IOException {
+            return inserter.insert(Constants.OBJ_BLOB, content.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private static ObjectId insertCommit(ObjectInserter inserter, SortedMap<String, ObjectId> files,
+                                             ObjectId parent, String author, long commitTime,
+                                             String message) throws IOException {
+            TreeFormatter tree = new TreeFormatter();
+            for (Map.Entry<String, ObjectId> file : files.entrySet()) {
+                tree.append(file.getKey(), FileMode.REGULAR_FILE, file.getValue());
+            }
+            PersonIdent ident = new PersonIdent(author, author + "@test.ru",
+                    TimeUnit.SECONDS.toMillis(commitTime), 0);
+            CommitBuilder commit = new CommitBuilder();
+            commit.setTreeId(inserter.insert(tree));
+            if (parent != null) {
+                commit.setParentId(parent);
+            }
+            commit.setAuthor(ident);
+            commit.setCommitter(ident);
+            commit.setMessage(message);
+            return inserter.insert(commit);
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package ru.yoomoney.gradle.plugins.git.expired.branch;
 
+import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.revwalk.RevCommit;
 
+import javax.annotation.Nullable;
+import java.util.function.Supplier;
+
 /**
  * Информация о git брачне
  *
@@ -12,18 +16,91 @@ import org.eclipse.jgit.revwalk.RevCommit;
 public class BranchInfo {
 
     private final Ref branch;
-    private final RevCommit lastCommit;
+    private final long commitTime;
+    @Nullable
+    private final PersonIdent authorIdent;
+    @Nullable
+    private final String shortMessage;
+    private final Supplier<RevCommit> lastCommitLoader;
+    private volatile RevCommit lastCommit;
 
     public BranchInfo(Ref branch, RevCommit lastCommit) {
         this.branch = branch;
         this.lastCommit = lastCommit;
+        this.commitTime = lastCommit.getCommitTime();
+        this.authorIdent = null;
+        this.shortMessage = null;
+        this.lastCommitLoader = () -> lastCommit;
+    }
+
+    /**
+     * Конструктор для ленивой загрузки последнего коммита.
+     * Для определения устаревания ветки достаточно времени коммита,
+     * поэтому сам коммит читается из репозитория только при первом обращении к {@link #getLastCommit()}.
+     *
+     * @param branch           ref ветки
+     * @param commitTime       время последнего коммита в секундах
+     * @param lastCommitLoader загрузчик последнего коммита
+     */
+    public BranchInfo(Ref branch, long commitTime, Supplier<RevCommit> lastCommitLoader) {
+        this(branch, commitTime, null, null, lastCommitLoader);
+    }
+
+    /**
+     * Конструктор для ветки, автор и сообщение последнего коммита которой уже известны,
+     * например, из кэша. Коммит загружается только при обращении к {@link #getLastCommit()}.
+     *
+     * @param branch           ref ветки
+     * @param commitTime       время последнего коммита в секундах
+     * @param authorIdent      автор последнего коммита
+     * @param shortMessage     короткое сообщение последнего коммита
+     * @param lastCommitLoader загрузчик последнего коммита
+     */
+    public BranchInfo(Ref branch, long commitTime, @Nullable PersonIdent authorIdent, @Nullable String shortMessage,
+                      Supplier<RevCommit> lastCommitLoader) {
+        this.branch = branch;
+        this.commitTime = commitTime;
+        this.authorIdent = authorIdent;
+        this.shortMessage = shortMessage;
+        this.lastCommitLoader = lastCommitLoader;
     }
 
     public Ref getBranch() {
         return branch;
     }
 
+    /**
+     * Время последнего коммита (committer time) в секундах
+     */
+    public long getCommitTime() {
+        return commitTime;
+    }
+
+    /**
+     * Автор последнего коммита
+     */
+    public PersonIdent getAuthorIdent() {
+        return authorIdent != null ? authorIdent : getLastCommit().getAuthorIdent();
+    }
+
+    /**
+     * Короткое сообщение последнего коммита
+     */
+    public String getShortMessage() {
+        return shortMessage != null ? shortMessage : getLastCommit().getShortMessage();
+    }
+
     public RevCommit getLastCommit() {
-        return lastCommit;
+        RevCommit commit = lastCommit;
+        if (commit == null) {
+            synchronized (this) {
+                commit = lastCommit;
+                if (commit == null) {
+                    commit = lastCommitLoader.get();
+                    lastCommit = commit;
+                }
+            }
+        }
+        return commit;
     }
 }
@@ -0,0 +1,110 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch;
+
+import org.eclipse.jgit.lib.Ref;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.workers.WorkAction;
+import ru.yoomoney.gradle.plugins.git.expired.branch.helper.RepositoryScanner;
+import ru.yoomoney.gradle.plugins.git.expired.branch.notification.MailSender;
+import ru.yoomoney.gradle.plugins.git.expired.branch.plan.PlannedBranch;
+import ru.yoomoney.gradle.plugins.git.expired.branch.plan.RemovalPlan;
+import ru.yoomoney.gradle.plugins.git.expired.branch.plan.RepositoryRemovalPlan;
+import ru.yoomoney.gradle.plugins.git.expired.branch.report.RunMetrics;
+import ru.yoomoney.gradle.plugins.git.expired.branch.report.RunReport;
+import ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchSettings;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Фоновое действие удаления веток, которые не используются и могут быть автоматически удалены
+ */
+public abstract class GitExpiredBranchDeleteAction implements WorkAction<GitExpiredBranchWorkParameters> {
+    /**
+     * Логгер
+     */
+    private final Logger log = Logging.getLogger(GitExpiredBranchDeleteAction.class);
+
+    /**
+     * Удаляет ветки
+     */
+    @Override
+    public void execute() {
+        GitExpiredBranchSettings expiredBranchSettings = getParameters().getExpiredBranchSettings().get();
+        Collection<File> repoDirs = expiredBranchSettings.getRepoDirs();
+        String projectName = getParameters().getProjectName().get();
+        RemovalPlan removalPlan = getParameters().getPlanFile().isPresent()
+                ? RemovalPlan.read(getParameters().getPlanFile().get().getAsFile())
+                : null;
+        RunReport report = new RunReport(GitExpiredBranchDeleteTask.TASK_NAME);
+        try (MailSender mailSender = new MailSender(getParameters().getEmailConnectionSettings().get())) {
+            RepositoryScanner.scan(repoDirs, expiredBranchSettings.getRepositoryScanThreads(),
+                    repoDir -> report.measureRepository(repoDir, metrics -> {
+                        String repoProjectName = repoDirs.size() > 1 ? repoDir.getName() : projectName;
+                        if (removalPlan == null) {
+                            removeExpiredGitBranches(repoDir, repoProjectName, mailSender, metrics);
+                        } else {
+                            removePlannedGitBranches(repoDir, repoProjectName, removalPlan, mailSender, metrics);
+                        }
+                        return repoDir;
+                    })).throwIfFailed();
+        } finally {
+            report.writeTo(getParameters().getReportFile().get().getAsFile());
+        }
+    }
+
+    private void removeExpiredGitBranches(File repoDir, String projectName, MailSender mailSender,
+                                          RunMetrics metrics) {
+        GitExpiredBranchRemover gitExpiredBranchRemover = new GitExpiredBranchRemover(
+                getParameters().getExpiredBranchSettings().get(),
+                mailSender,
+                getParameters().getGitSettings().get(),
+                repoDir,
+                projectName,
+                metrics
+        );
+
+        log.lifecycle("Collecting data for deletion: repoDir={}", repoDir);
+        List<BranchInfo> staleBranchesInfo = gitExpiredBranchRemover.collectGitStaleBranchesInfoToDelete();
+        List<String> staleBranchesName = staleBranchesInfo.stream().map(BranchInfo::getBranch).map(Ref::getName).collect(toList());
+        log.lifecycle("Found stale branches={}", staleBranchesName);
+
+        log.lifecycle("Deleting branches ");
+        List<BranchInfo> deletedBranches = gitExpiredBranchRemover.deleteStaleBranches(staleBranchesInfo);
+
+        log.lifecycle("Notifying commiters about deletion");
+        gitExpiredBranchRemover.notifyAboutDeletedBranches(deletedBranches);
+        gitExpiredBranchRemover.failIfBranchesNotDeleted();
+    }
+
+    private void removePlannedGitBranches(File repoDir, String projectName, RemovalPlan removalPlan,
+                                          MailSender mailSender, RunMetrics metrics) {
+        GitExpiredBranchRemover gitExpiredBranchRemover = new GitExpiredBranchRemover(
+                getParameters().getExpiredBranchSettings().get(),
+                mailSender,
+                getParameters().getGitSettings().get(),
+                repoDir,
+                projectName,
+                metrics
+        );
+        Optional<RepositoryRemovalPlan> repositoryPlan =
+                removalPlan.findRepository(repoDir, gitExpiredBranchRemover.getRemoteUrl());
+        if (!repositoryPlan.isPresent()) {
+            log.warn("Removal plan has no repository, branches will not be deleted: repoDir={}", repoDir);
+            return;
+        }
+
+        log.lifecycle("Deleting planned branches: repoDir={}, branches={}", repoDir,
+                repositoryPlan.get().getBranches().stream().map(PlannedBranch::getRefName).collect(toList()));
+        List<BranchInfo> deletedBranches =
+                gitExpiredBranchRemover.deletePlannedBranches(repositoryPlan.get().getBranches());
+
+        log.lifecycle("Notifying commiters about deletion");
+        gitExpiredBranchRemover.notifyAboutDeletedBranches(deletedBranches);
+        gitExpiredBranchRemover.failIfBranchesNotDeleted();
+    }
+}
@@ -1,29 +1,25 @@
 package ru.yoomoney.gradle.plugins.git.expired.branch;
 
-import org.eclipse.jgit.lib.Ref;
 import org.gradle.api.DefaultTask;
-import org.gradle.api.logging.Logger;
-import org.gradle.api.logging.Logging;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputFile;
 import org.gradle.api.tasks.TaskAction;
+import org.gradle.workers.WorkerExecutor;
 import ru.yoomoney.gradle.plugins.git.expired.branch.git.GitSettings;
-import ru.yoomoney.gradle.plugins.git.expired.branch.notification.MailSender;
 import ru.yoomoney.gradle.plugins.git.expired.branch.settings.EmailConnectionSettings;
 import ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchSettings;
 
-import java.io.File;
-import java.util.List;
-
-import static java.util.stream.Collectors.toList;
+import javax.inject.Inject;
 
 /**
  * Задача для удаления бранчей, которые не используются и могут быть автоматически удалены
  */
-class GitExpiredBranchDeleteTask extends DefaultTask {
-    /**
-     * Логгер
-     */
-    private final Logger log = Logging.getLogger(GitExpiredBranchDeleteTask.class);
-
+public abstract class GitExpiredBranchDeleteTask extends DefaultTask {
     /**
      * Имя таски
      */
@@ -32,60 +28,62 @@ class GitExpiredBranchDeleteTask extends DefaultTask {
     /**
      * Настройки плагина
      */
-    private GitExpiredBranchSettings expiredBranchSettings;
+    @Input
+    public abstract Property<GitExpiredBranchSettings> getExpiredBranchSettings();
 
     /**
-     * Настройки smtp
+     * Настройки smtp.
+     * Содержат пароль, поэтому не являются входом задачи и не попадают в отпечаток входов
      */
-    private EmailConnectionSettings emailConnectionSettings;
+    @Internal
+    public abstract Property<EmailConnectionSettings> getEmailConnectionSettings();
 
     /**
-     * Настройки git
+     * Настройки git.
+     * Содержат парольную фразу ssh ключа, поэтому не являются входом задачи и не попадают в отпечаток входов
      */
-    private GitSettings gitSettings;
-
-
-    @SuppressWarnings("PublicConstructorInNonPublicClass")
-    public GitExpiredBranchDeleteTask() {
-    }
+    @Internal
+    public abstract Property<GitSettings> getGitSettings();
 
     /**
-     * Удаляет ветки
+     * Имя gradle проекта
      */
-    @TaskAction
-    void removeExpiredGitBranches() {
-        File repoDir = expiredBranchSettings.getRepoDir();
-        MailSender mailSender = new MailSender(emailConnectionSettings);
-
-        GitExpiredBranchRemover gitExpiredBranchRemover = new GitExpiredBranchRemover(
-                expiredBranchSettings,
-                mailSender,
-                gitSettings,
-                repoDir,
-                getProject().getName()
-        );
+    @Input
+    public abstract Property<String> getProjectName();
 
-        log.lifecycle("Collecting data for deletion");
-        List<BranchInfo> staleBranchesInfo = gitExpiredBranchRemover.collectGitStaleBranchesInfoToDelete();
-        List<String> staleBranchesName = staleBranchesInfo.stream().map(BranchInfo::getBranch).map(Ref::getName).collect(toList());
-        log.lifecycle("Found stale branches={}", staleBranchesName);
-
-        log.lifecycle("Deleting branches ");
-        List<BranchInfo> deletedBranches = gitExpiredBranchRemover.deleteStaleBranches(staleBranchesInfo);
-
-        log.lifecycle("Notifying commiters about deletion");
-        gitExpiredBranchRemover.notifyAboutDeletedBranches(deletedBranches);
-    }
+    /**
+     * Файл отчета о запуске задачи с временем этапов и счетчиками в формате JSON
+     */
+    @OutputFile
+    public abstract RegularFileProperty getReportFile();
 
-    void setExpiredBranchSettings(GitExpiredBranchSettings expiredBranchSettings) {
-        this.expiredBranchSettings = expiredBranchSettings;
-    }
+    /**
+     * Файл плана удаления веток, составленного задачей planExpiredGitBranchesRemoval.
+     * Если задан, ветки удаляются по плану без повторного сбора устаревших веток
+     */
+    @Optional
+    @InputFile
+    public abstract RegularFileProperty getPlanFile();
 
-    void setEmailConnectionSettings(EmailConnectionSettings emailConnectionSettings) {
-        this.emailConnectionSettings = emailConnectionSettings;
-    }
+    /**
+     * Исполнитель фоновых действий
+     */
+    @Inject
+    protected abstract WorkerExecutor getWorkerExecutor();
 
-    void setGitSettings(GitSettings gitSettings) {
-        this.gitSettings = gitSettings;
+    /**
+     * Удаляет ветки.
+     * Удаление выполняется фоновым действием, задача не блокирует выполнение других задач
+     */
+    @TaskAction
+    void removeExpiredGitBranches() {
+        getWorkerExecutor().noIsolation().submit(GitExpiredBranchDeleteAction.class, parameters -> {
+            parameters.getExpiredBranchSettings().set(getExpiredBranchSettings());
+            parameters.getEmailConnectionSettings().set(getEmailConnectionSettings());
+            parameters.getGitSettings().set(getGitSettings());
+            parameters.getProjectName().set(getProjectName());
+            parameters.getReportFile().set(getReportFile());
+            parameters.getPlanFile().set(getPlanFile());
+        });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,476 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch;
+
+import org.eclipse.jgit.lib.ObjectIdRef;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.workers.WorkAction;
+import ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchSettings;
+import ru.yoomoney.gradle.plugins.git.expired.branch.helper.AuthorIdentity;
+import ru.yoomoney.gradle.plugins.git.expired.branch.helper.BranchFilter;
+import ru.yoomoney.gradle.plugins.git.expired.branch.helper.BranchTipCache;
+import ru.yoomoney.gradle.plugins.git.expired.branch.helper.GitManager;
+import ru.yoomoney.gradle.plugins.git.expired.branch.helper.MailMap;
+import ru.yoomoney.gradle.plugins.git.expired.branch.helper.RepositoryScanner;
+import ru.yoomoney.gradle.plugins.git.expired.branch.notification.DigestStore;
+import ru.yoomoney.gradle.plugins.git.expired.branch.notification.EmailMessage;
+import ru.yoomoney.gradle.plugins.git.expired.branch.notification.MailSender;
+import ru.yoomoney.gradle.plugins.git.expired.branch.notification.MailTemplate;
+import ru.yoomoney.gradle.plugins.git.expired.branch.notification.NotificationDispatcher;
+import ru.yoomoney.gradle.plugins.git.expired.branch.notification.NotificationLedger;
+import ru.yoomoney.gradle.plugins.git.expired.branch.report.RunMetrics;
+import ru.yoomoney.gradle.plugins.git.expired.branch.report.RunReport;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Фоновое действие уведомления авторов о ветках, которые не используются
+ */
+public abstract class GitExpiredBranchNotifyAction implements WorkAction<GitExpiredBranchWorkParameters> {
+    /**
+     * Шаблон письма об устаревших ветках по-умолчанию
+     */
+    static final String DEFAULT_STALE_BRANCHES_MAIL_TEMPLATE =
+            "Добрый день, уважаемый коллега {{authorName}}!\n" +
+            "{{#repositories}}\n" +
+            "В проекте {{repositoryName}} найдены ветки, в которые вы не делали коммиты целых {{staleDays}} дней!\n" +
+            "Пожалуйста обновите (merge, rebase) или удалите эти ветки.\n" +
+            "{{#severalBranches}}Ветки {{/severalBranches}}{{^severalBranches}}Ветка {{/severalBranches}}" +
+            "{{branchesUrl}}:\n" +
+            "{{#branches}}\t* {{branchName}}\n\t  последний коммит: {{lastCommitDate}}, {{lastCommitMessage}}\n" +
+            "{{/branches}}" +
+            "{{/repositories}}";
+
+    /**
+     * Формат даты последнего коммита, потокобезопасен
+     */
+    private static final DateTimeFormatter LAST_COMMIT_DATE_FORMATTER =
+            DateTimeFormatter.ofPattern("dd.MM.yyyy hh:mm").withZone(ZoneId.systemDefault());
+
+    /**
+     * Логгер
+     */
+    private final Logger log = Logging.getLogger(GitExpiredBranchNotifyAction.class);
+
+    /**
+     * Отправляет нотификацию
+     */
+    @Override
+    public void execute() {
+        RunReport report = new RunReport(GitExpiredBranchNotifyTask.TASK_NAME);
+        try {
+            collectAndNotify(report);
+        } finally {
+            report.writeTo(getParameters().getReportFile().get().getAsFile());
+        }
+    }
+
+    private void collectAndNotify(RunReport report) {
+        GitExpiredBranchSettings expiredBranchSettings = getExpiredBranchSettings();
+        if (expiredBranchSettings.getDigestWindowDays() > 0) {
+            RepositoryScanner.Results<RepositoryStaleBranches> scanResults = scanRepositories(report, repository -> {
+            });
+            log.lifecycle("Notifying about git expired branches");
+            notifyWithDigest(scanResults.getResults(), expiredBranchSettings.getDigestWindowDays(), report.getTaskMetrics());
+            scanResults.throwIfFailed();
+            return;
+        }
+
+        // письма по репозиторию ставятся в очередь сразу после его сканирования,
+        // чтобы отправка писем шла параллельно со сканированием остальных репозиториев
+        StaleNotifications notifications = new StaleNotifications(loadNotificationLedger(),
+                expiredBranchSettings.getStaleDaysToNotify());
+        RepositoryScanner.Results<RepositoryStaleBranches> scanResults;
+        try (MailSender mailSender = new MailSender(getParameters().getEmailConnectionSettings().get());
+             NotificationDispatcher dispatcher = createNotificationDispatcher(mailSender, report.getTaskMetrics())) {
+            scanResults = scanRepositories(report, repository -> notifications.submit(
+                    Collections.singletonList(repository), dispatcher, report.getTaskMetrics()));
+            log.lifecycle("Waiting for notifications about git expired branches");
+            dispatcher.awaitCompletion();
+        }
+        notifications.saveDelivered();
+
+        scanResults.throwIfFailed();
+    }
+
+    /**
+     * Сканирует репозитории, передавая каждый просканированный репозиторий обработчику
+     * сразу по завершении его сканирования
+     */
+    private RepositoryScanner.Results<RepositoryStaleBranches> scanRepositories(
+            RunReport report, Consumer<RepositoryStaleBranches> scannedRepositoryHandler) {
+        GitExpiredBranchSettings expiredBranchSettings = getExpiredBranchSettings();
+        log.lifecycle("Collecting notification data");
+        return RepositoryScanner.scan(
+                expiredBranchSettings.getRepoDirs(),
+                expiredBranchSettings.getRepositoryScanThreads(),
+                repoDir -> report.measureRepository(repoDir, metrics -> {
+                    RepositoryStaleBranches repository = collectRepositoryStaleBranches(repoDir, metrics);
+                    scannedRepositoryHandler.accept(repository);
+                    return repository;
+                })
+        );
+    }
+
+    /**
+     * Накапливает устаревшие ветки в хранилище событий и отправляет каждому автору одно письмо-сводку
+     * при закрытии окна сводки. Пока окно открыто, письма не отправляются
+     */
+    private void notifyWithDigest(Map<File, RepositoryStaleBranches> scannedRepositories, int digestWindowDays,
+                                  RunMetrics metrics) {
+        File storeFile = getParameters().getDigestStoreFile().get().getAsFile();
+        DigestStore digestStore = DigestStore.load(storeFile);
+        long nowMillis = System.currentTimeMillis();
+        scannedRepositories.forEach((repoDir, repository) -> {
+            List<DigestStore.BranchEvent> events = getBranchEvents(repository);
+            digestStore.putRepository(
+                    repoDir.getAbsolutePath(),
+                    events.isEmpty() ? null : repository.getRepositoryName(),
+                    events.isEmpty() ? null : repository.getProjectBranchesUrl(),
+                    events,
+                    nowMillis);
+        });
+
+        if (digestStore.isWindowClosed(nowMillis, digestWindowDays)) {
+            log.lifecycle("Sending notification digest: events={}", digestStore.size());
+            if (digestStore.size() > 0) {
+                Set<String> undeliveredEmails = notifyAboutStaleBranches(digestStore.getRepositories().stream()
+                                .map(GitExpiredBranchNotifyAction::toRepositoryStaleBranches)
+                                .collect(Collectors.toList()),
+                        getExpiredBranchSettings().getStaleDaysToNotify(), metrics);
+                // события авторов, которым сводка не доставлена, сохраняются, и окно остается закрытым,
+                // чтобы следующий запуск повторил отправку их сводок
+                digestStore.removeDelivered(digestStore.getRepositories().stream()
+                        .flatMap(repository -> repository.getEvents().stream())
+                        .map(DigestStore.BranchEvent::getAuthorEmail)
+                        .filter(email -> !undeliveredEmails.contains(email))
+                        .collect(Collectors.toSet()));
+                if (digestStore.size() > 0) {
+                    log.warn("Notification digest is not delivered, it will be resent on next run: events={}",
+                            digestStore.size());
+                }
+            } else {
+                digestStore.clear();
+            }
+        } else {
+            long postponedMails = digestStore.getRepositories().stream()
+                    .flatMap(repository -> repository.getEvents().stream())
+                    .map(DigestStore.BranchEvent::getAuthorEmail)
+                    .distinct()
+                    .count();
+            metrics.increment(RunMetrics.Counter.MAILS_POSTPONED, postponedMails);
+            log.lifecycle("Notifications are postponed until digest window is closed: events={}, windowEnd={}",
+                    digestStore.size(), Instant.ofEpochMilli(digestStore.getWindowEndMillis(digestWindowDays)));
+        }
+        digestStore.save();
+    }
+
+    private static List<DigestStore.BranchEvent> getBranchEvents(RepositoryStaleBranches repository) {
+        List<DigestStore.BranchEvent> events = new ArrayList<>();
+        repository.getStaleBranches().forEach((person, setOfBranchInfo) -> setOfBranchInfo.forEach(branchInfo ->
+                events.add(new DigestStore.BranchEvent(
+                        branchInfo.getBranch().getName(),
+                        branchInfo.getBranch().getObjectId(),
+                        branchInfo.getCommitTime(),
+                        person.getName(),
+                        person.getEmail(),
+                        branchInfo.getShortMessage()))));
+        return events;
+    }
+
+    private static RepositoryStaleBranches toRepositoryStaleBranches(DigestStore.RepositoryEvents repository) {
+        Map<AuthorIdentity, Set<BranchInfo>> staleBranches = new LinkedHashMap<>();
+        for (DigestStore.BranchEvent event : repository.getEvents()) {
+            staleBranches.computeIfAbsent(new AuthorIdentity(event.getAuthorName(), event.getAuthorEmail()),
+                    person -> new HashSet<>())
+                    .add(new BranchInfo(
+                            new ObjectIdRef.PeeledNonTag(Ref.Storage.NETWORK, event.getRefName(), event.getTipId()),
+                            event.getCommitTime(),
+                            new PersonIdent(event.getAuthorName(), event.getAuthorEmail(), 0L, 0),
+                            event.getShortMessage(),
+                            () -> {
+                                throw new IllegalStateException(
+                                        "Last commit is not available for digest event: branchName=" + event.getRefName());
+                            }));
+        }
+        return new RepositoryStaleBranches(repository.getRepositoryKey(), repository::getRepositoryName,
+                repository::getBranchesUrl, staleBranches);
+    }
+
+    private RepositoryStaleBranches collectRepositoryStaleBranches(File repoDir, RunMetrics metrics) {
+        GitExpiredBranchSettings expiredBranchSettings = getExpiredBranchSettings();
+        GitManager gitManager = new GitManager(repoDir, getParameters().getGitSettings().get(), metrics);
+        BranchTipCache branchTipCache = expiredBranchSettings.isBranchTipCacheEnabled()
+                ? BranchTipCache.load(gitManager.getBranchTipCacheFile(), expiredBranchSettings.getBranchTipCacheMaxEntries())
+                : null;
+        if (expiredBranchSettings.isFetchBeforeScan()) {
+            gitManager.fetchRemoteBranches(expiredBranchSettings.getIncludeBranchesPrefixes());
+        }
+
+        Map<AuthorIdentity, Set<BranchInfo>> staleBranchesInfo = collectGitStaleBranchesInfo(
+                gitManager,
+                expiredBranchSettings.getStaleDaysToNotify(),
+                expiredBranchSettings.getIncludeBranchesPrefixes(),
+                BranchFilter.compile(expiredBranchSettings.getIgnoreBranches()),
+                expiredBranchSettings.getBranchScanThreads(),
+                branchTipCache,
+                gitManager.loadMailMap(),
+                metrics
+        );
+        if (branchTipCache != null) {
+            branchTipCache.save();
+        }
+        return new RepositoryStaleBranches(
+                repoDir.getAbsolutePath(),
+                gitManager::getRepositoryName,
+                gitManager::getBitbucketProjectBranchesUrl,
+                staleBranchesInfo
+        );
+    }
+
+    private static Map<AuthorIdentity, Set<BranchInfo>> collectGitStaleBranchesInfo(
+            GitManager gitManager,
+            long staleDaysCount,
+            Collection<String> includeBranchesPrefixes,
+            BranchFilter branchFilter,
+            int branchScanThreads,
+            @Nullable BranchTipCache branchTipCache,
+            MailMap mailMap,
+            RunMetrics metrics
+    ) {
+        long staleTimeSeconds = LocalDateTime.now().minusDays(staleDaysCount).atZone(ZoneId.systemDefault()).toEpochSecond();
+
+        List<Ref> remoteBranches = gitManager.getRemoteBranches(includeBranchesPrefixes);
+        List<Ref> branches = metrics.time(RunMetrics.Phase.FILTERING, () -> remoteBranches.stream()
+                .filter(branch -> !branchFilter.isIgnored(branch.getName()))
+                .collect(Collectors.toList()));
+
+        List<BranchInfo> staleBranches =
+                gitManager.getStaleBranches(branches, staleTimeSeconds, branchScanThreads, branchTipCache);
+        return staleBranches.stream()
+                .collect(Collectors.groupingBy(branchInfo -> mailMap.resolve(branchInfo.getAuthorIdent()),
+                        LinkedHashMap::new,
+                        Collectors.mapping(Function.identity(), Collectors.toSet())
+                ));
+    }
+
+    /**
+     * Отправляет каждому автору одно письмо с устаревшими ветками из всех переданных репозиториев
+     *
+     * @return email авторов, которым письмо не было доставлено
+     */
+    private Set<String> notifyAboutStaleBranches(List<RepositoryStaleBranches> repositories, long staleDaysCount,
+                                                 RunMetrics metrics) {
+        StaleNotifications notifications = new StaleNotifications(loadNotificationLedger(), staleDaysCount);
+        try (MailSender mailSender = new MailSender(getParameters().getEmailConnectionSettings().get());
+             NotificationDispatcher dispatcher = createNotificationDispatcher(mailSender, metrics)) {
+            notifications.submit(repositories, dispatcher, metrics);
+            dispatcher.awaitCompletion();
+        }
+        notifications.saveDelivered();
+        return notifications.getUndeliveredEmails();
+    }
+
+    private NotificationDispatcher createNotificationDispatcher(MailSender mailSender, RunMetrics metrics) {
+        GitExpiredBranchSettings expiredBranchSettings = getExpiredBranchSettings();
+        return new NotificationDispatcher(
+                mailSender,
+                expiredBranchSettings.getNotificationThreads(),
+                expiredBranchSettings.getNotificationMaxAttempts(),
+                expiredBranchSettings.getNotificationRetryDelayMillis(),
+                metrics);
+    }
+
+    @Nullable
+    private NotificationLedger loadNotificationLedger() {
+        return getExpiredBranchSettings().getRenotifyIntervalDays() > 0
+                ? NotificationLedger.load(getParameters().getNotificationLedgerFile().get().getAsFile())
+                : null;
+    }
+
+    /**
+     * Письма об устаревших ветках, поставленные в очередь на отправку.
+     * Ветки, о которых автору уже было отправлено письмо, отфильтровываются по журналу уведомлений.
+     * После отправки писем в журнал записываются только ветки из писем, доставленных авторам
+     */
+    private class StaleNotifications {
+        @Nullable
+        private final NotificationLedger ledger;
+        private final long staleDaysCount;
+        private final long nowMillis = System.currentTimeMillis();
+        private final long renotifyIntervalMillis =
+                TimeUnit.DAYS.toMillis(getExpiredBranchSettings().getRenotifyIntervalDays());
+        private final MailTemplate mailTemplate = MailTemplate.compile(
+                Optional.ofNullable(getExpiredBranchSettings().getStaleBranchesMailTemplate())
+                        .orElse(DEFAULT_STALE_BRANCHES_MAIL_TEMPLATE));
+        private final List<StaleNotification> submitted = Collections.synchronizedList(new ArrayList<>());
+
+        StaleNotifications(@Nullable NotificationLedger ledger, long staleDaysCount) {
+            this.ledger = ledger;
+            this.staleDaysCount = staleDaysCount;
+        }
+
+        /**
+         * Ставит в очередь по одному письму каждому автору с его устаревшими ветками из переданных репозиториев
+         */
+        void submit(List<RepositoryStaleBranches> repositories, NotificationDispatcher dispatcher, RunMetrics metrics) {
+            Map<String, AuthorIdentity> authors = new LinkedHashMap<>();
+            Map<String, Map<RepositoryStaleBranches, Set<BranchInfo>>> staleBranchesByAuthor = new LinkedHashMap<>();
+            for (RepositoryStaleBranches repository : repositories) {
+                repository.getStaleBranches().forEach((person, setOfBranchInfo) -> {
+                    Set<BranchInfo> branchesToNotify = ledger == null ? setOfBranchInfo : setOfBranchInfo.stream()
+                            .filter(branchInfo -> !ledger.isNotified(repository.getRepositoryKey(),
+                                    branchInfo.getBranch().getName(), branchInfo.getBranch().getObjectId(),
+                                    nowMillis, renotifyIntervalMillis))
+                            .collect(Collectors.toSet());
+                    metrics.increment(RunMetrics.Counter.BRANCHES_SUPPRESSED,
+                            setOfBranchInfo.size() - branchesToNotify.size());
+                    if (branchesToNotify.isEmpty()) {
+                        return;
+                    }
+                    authors.putIfAbsent(person.getEmail(), person);
+                    staleBranchesByAuthor.computeIfAbsent(person.getEmail(), email -> new LinkedHashMap<>())
+                            .computeIfAbsent(repository, repo -> new HashSet<>())
+                            .addAll(branchesToNotify);
+                });
+            }
+            if (staleBranchesByAuthor.isEmpty()) {
+                return;
+            }
+
+            GitExpiredBranchSettings expiredBranchSettings = getExpiredBranchSettings();
+            log.info("Send notification to {}", String.join(", ", staleBranchesByAuthor.keySet()));
+            staleBranchesByAuthor.forEach((email, branchesByRepository) -> submitted.add(
+                    new StaleNotification(email, branchesByRepository, dispatcher.submit(
+                            new EmailMessage(
+                                    expiredBranchSettings.getNotifierEmail(),
+                                    Collections.singleton(email),
+                                    getStaleNotificationMailSubject(branchesByRepository.keySet().stream()
+                                            .map(RepositoryStaleBranches::getRepositoryName)
+                                            .collect(Collectors.joining(", "))),
+                                    getStaleNotificationMailBody(mailTemplate, authors.get(email),
+                                            branchesByRepository, staleDaysCount)
+                            ),
+                            expiredBranchSettings.getAdminEmail()))));
+        }
+
+        /**
+         * Записывает в журнал уведомлений ветки из доставленных авторам писем.
+         * Вызывается после завершения отправки всех писем
+         */
+        void saveDelivered() {
+            if (ledger == null) {
+                return;
+            }
+            // ветки, письмо о которых не дошло до автора или было переслано на резервный адрес, не отмечаются,
+            // чтобы автор получил напоминание при следующем запуске
+            getSubmitted(true).forEach(notification -> notification.branchesByRepository.forEach(
+                    (repository, setOfBranchInfo) -> setOfBranchInfo.forEach(branchInfo -> ledger.markNotified(
+                            repository.getRepositoryKey(), branchInfo.getBranch().getName(),
+                            branchInfo.getBranch().getObjectId(), nowMillis))));
+            ledger.save(nowMillis, renotifyIntervalMillis);
+        }
+
+        /**
+         * Email авторов, которым письмо не было доставлено. Вызывается после завершения отправки всех писем
+         */
+        Set<String> getUndeliveredEmails() {
+            return getSubmitted(false).stream()
+                    .map(notification -> notification.email)
+                    .collect(Collectors.toSet());
+        }
+
+        private List<StaleNotification> getSubmitted(boolean delivered) {
+            synchronized (submitted) {
+                return submitted.stream()
+                        .filter(notification -> notification.delivery.getNow(false) == delivered)
+                        .collect(Collectors.toList());
+            }
+        }
+    }
+
+    /**
+     * Поставленное в очередь письмо автору об устаревших ветках
+     */
+    private static class StaleNotification {
+        private final String email;
+        private final Map<RepositoryStaleBranches, Set<BranchInfo>> branchesByRepository;
+        private final CompletableFuture<Boolean> delivery;
+
+        StaleNotification(String email, Map<RepositoryStaleBranches, Set<BranchInfo>> branchesByRepository,
+                          CompletableFuture<Boolean> delivery) {
+            this.email = email;
+            this.branchesByRepository = branchesByRepository;
+            this.delivery = delivery;
+        }
+    }
+
+    private static String getStaleNotificationMailBody(
+            MailTemplate mailTemplate,
+            AuthorIdentity person,
+            Map<RepositoryStaleBranches, Set<BranchInfo>> branchesByRepository,
+            long staleDaysCount
+    ) {
+        List<Map<String, Object>> repositories = new ArrayList<>(branchesByRepository.size());
+        branchesByRepository.forEach((repository, setOfBranchInfo) -> {
+            Map<String, Object> repositoryModel = new HashMap<>();
+            repositoryModel.put("repositoryName", repository.getRepositoryName());
+            repositoryModel.put("branchesUrl", repository.getProjectBranchesUrl());
+            repositoryModel.put("severalBranches", setOfBranchInfo.size() > 1);
+            repositoryModel.put("branches", setOfBranchInfo.stream()
+                    .sorted(Comparator.comparingLong(BranchInfo::getCommitTime))
+                    .map(GitExpiredBranchNotifyAction::getBranchModel)
+                    .collect(Collectors.toList()));
+            repositories.add(repositoryModel);
+        });
+
+        Map<String, Object> model = new HashMap<>();
+        model.put("authorName", person.getName());
+        model.put("staleDays", staleDaysCount);
+        model.put("repositories", repositories);
+        return mailTemplate.render(model);
+    }
+
+    private static Map<String, Object> getBranchModel(BranchInfo branchInfo) {
+        Map<String, Object> branchModel = new HashMap<>();
+        branchModel.put("branchName", getBranchUrl(branchInfo.getBranch().getName()));
+        branchModel.put("lastCommitDate",
+                LAST_COMMIT_DATE_FORMATTER.format(Instant.ofEpochSecond(branchInfo.getCommitTime())));
+        branchModel.put("lastCommitMessage", branchInfo.getShortMessage());
+        return branchModel;
+    }
+
+    private static String getBranchUrl(String name) {
+        return name.replace("origin/", "");
+    }
+
+    private static String getStaleNotificationMailSubject(String repositoryNames) {
+        return "Напоминание об устаревших бранчах " + repositoryNames;
+    }
+
+    private GitExpiredBranchSettings getExpiredBranchSettings() {
+        return getParameters().getExpiredBranchSettings().get();
+    }
+}
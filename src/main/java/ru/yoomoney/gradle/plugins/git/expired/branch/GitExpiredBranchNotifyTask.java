@@ -1,182 +1,94 @@
 package ru.yoomoney.gradle.plugins.git.expired.branch;
 
-import org.eclipse.jgit.lib.PersonIdent;
-import org.eclipse.jgit.lib.Ref;
 import org.gradle.api.DefaultTask;
-import org.gradle.api.logging.Logger;
-import org.gradle.api.logging.Logging;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputFile;
 import org.gradle.api.tasks.TaskAction;
+import org.gradle.workers.WorkerExecutor;
 import ru.yoomoney.gradle.plugins.git.expired.branch.git.GitSettings;
 import ru.yoomoney.gradle.plugins.git.expired.branch.settings.EmailConnectionSettings;
 import ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchSettings;
-import ru.yoomoney.gradle.plugins.git.expired.branch.helper.GitManager;
-import ru.yoomoney.gradle.plugins.git.expired.branch.notification.MailSender;
 
-import java.text.Format;
-import java.text.SimpleDateFormat;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Date;
-import java.util.Map;
-import java.util.Set;
-import java.util.function.Function;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import javax.inject.Inject;
 
 /**
  * Задача для уведомления пользователей о бранчах, которые не используются
  */
-public class GitExpiredBranchNotifyTask extends DefaultTask {
+public abstract class GitExpiredBranchNotifyTask extends DefaultTask {
     /**
-     * Количество миллисекунд в секундах
+     * Имя таски
      */
-    private static final long MILLIS_IN_SECOND = 1000L;
+    public static final String TASK_NAME = "notifyAboutGitExpiredBranches";
 
     /**
-     * Логгер
+     * Настройки плагина
      */
-    private final Logger log = Logging.getLogger(GitExpiredBranchNotifyTask.class);
+    @Input
+    public abstract Property<GitExpiredBranchSettings> getExpiredBranchSettings();
 
     /**
-     * Имя таски
+     * Настройки smtp.
+     * Содержат пароль, поэтому не являются входом задачи и не попадают в отпечаток входов
      */
-    public static final String TASK_NAME = "notifyAboutGitExpiredBranches";
+    @Internal
+    public abstract Property<EmailConnectionSettings> getEmailConnectionSettings();
 
     /**
-     * Настройки плагина
+     * Настройки git.
+     * Содержат парольную фразу ssh ключа, поэтому не являются входом задачи и не попадают в отпечаток входов
      */
-    private GitExpiredBranchSettings expiredBranchSettings;
+    @Internal
+    public abstract Property<GitSettings> getGitSettings();
 
     /**
-     * Настройки smtp
+     * Имя gradle проекта
      */
-    private EmailConnectionSettings emailConnectionSettings;
+    @Input
+    public abstract Property<String> getProjectName();
 
     /**
-     * Настройки git
+     * Файл отчета о запуске задачи с временем этапов и счетчиками в формате JSON
      */
-    private GitSettings gitSettings;
+    @OutputFile
+    public abstract RegularFileProperty getReportFile();
 
     /**
-     * Отправляет нотификацию
+     * Файл событий для писем-сводок, используется при digestWindowDays больше 0.
+     * Файл читается и изменяется при каждом запуске, поэтому не является ни входом, ни результатом задачи
      */
-    @TaskAction
-    void notifyAboutGitExpiredBranches() {
-        GitManager gitManager = new GitManager(expiredBranchSettings.getRepoDir(), gitSettings);
-
-        log.lifecycle("Collecting notification data");
-        Map<PersonIdent, Set<BranchInfo>> staleBranchesInfo = collectGitStaleBranchesInfo(
-                gitManager,
-                expiredBranchSettings.getStaleDaysToNotify(),
-                expiredBranchSettings.getIgnoreBranches()
-        );
-        log.lifecycle("Notifying about git expired branches");
-        notifyAboutStaleBranches(staleBranchesInfo, gitManager, expiredBranchSettings.getStaleDaysToNotify());
-    }
-
-    private static Map<PersonIdent, Set<BranchInfo>> collectGitStaleBranchesInfo(
-            GitManager gitManager,
-            long staleDaysCount,
-            Collection<Pattern> ignoreBranches
-    ) {
-        long staleTimeSeconds = LocalDateTime.now().minusDays(staleDaysCount).atZone(ZoneId.systemDefault()).toEpochSecond();
+    @Internal
+    public abstract RegularFileProperty getDigestStoreFile();
 
-        return gitManager.getRemoteBranches().stream()
-                .filter(branch -> isBranchNotIgnored(branch, ignoreBranches))
-                .map(repoBranch -> new BranchInfo(repoBranch, gitManager.getLastCommitFromBranch(repoBranch)))
-                .filter(branchInfo -> branchInfo.getLastCommit().getCommitTime() < staleTimeSeconds)
-                .collect(Collectors.groupingBy(branchInfo -> branchInfo.getLastCommit().getAuthorIdent(),
-                        Collectors.mapping(Function.identity(), Collectors.toSet())
-                ));
-    }
+    /**
+     * Файл журнала отправленных уведомлений, используется при renotifyIntervalDays больше 0.
+     * Файл читается и дописывается при каждом запуске, поэтому не является ни входом, ни результатом задачи
+     */
+    @Internal
+    public abstract RegularFileProperty getNotificationLedgerFile();
 
-    private static boolean isBranchNotIgnored(Ref branch, Collection<Pattern> ignoreBranches) {
-        for (Pattern ignoreBranchPattern : ignoreBranches) {
-            if (ignoreBranchPattern.matcher(branch.getName()).matches()) {
-                return false;
-            }
-        }
-        return true;
-    }
+    /**
+     * Исполнитель фоновых действий
+     */
+    @Inject
+    protected abstract WorkerExecutor getWorkerExecutor();
 
-    private void notifyAboutStaleBranches(
-            Map<PersonIdent,
-            Set<BranchInfo>> staleBranchesInfo,
-            GitManager gitManager,
-            long staleDaysCount
-    ) {
-        MailSender mailSender = new MailSender(emailConnectionSettings);
-        log.info("Send notification to {}", staleBranchesInfo.keySet().stream()
-                .map(PersonIdent::getEmailAddress).collect(Collectors.joining(", ")));
-        staleBranchesInfo.forEach((person, setOfBranchInfo) -> {
-            String repositoryName = gitManager.getRepositoryName();
-            String mailSubject = getStaleNotificationMailSubject(repositoryName);
-            String mailBody = getStaleNotificationMailBody(person, setOfBranchInfo, gitManager, repositoryName, staleDaysCount);
-            try {
-                mailSender.sendEmail(
-                        expiredBranchSettings.getNotifierEmail(),
-                        Collections.singleton(person.getEmailAddress()),
-                        mailSubject,
-                        mailBody
-                );
-            } catch (Exception e) {
-                mailSender.sendEmail(
-                        expiredBranchSettings.getNotifierEmail(),
-                        Collections.singleton(expiredBranchSettings.getAdminEmail()),
-                        mailSubject,
-                        mailBody + "/n" + e.getMessage()
-                );
-            }
+    /**
+     * Отправляет нотификацию.
+     * Сбор веток и отправка писем выполняются фоновым действием, задача не блокирует выполнение других задач
+     */
+    @TaskAction
+    void notifyAboutGitExpiredBranches() {
+        getWorkerExecutor().noIsolation().submit(GitExpiredBranchNotifyAction.class, parameters -> {
+            parameters.getExpiredBranchSettings().set(getExpiredBranchSettings());
+            parameters.getEmailConnectionSettings().set(getEmailConnectionSettings());
+            parameters.getGitSettings().set(getGitSettings());
+            parameters.getProjectName().set(getProjectName());
+            parameters.getReportFile().set(getReportFile());
+            parameters.getDigestStoreFile().set(getDigestStoreFile());
+            parameters.getNotificationLedgerFile().set(getNotificationLedgerFile());
         });
     }
-
-    private static String getStaleNotificationMailBody(
-            PersonIdent person,
-            Set<BranchInfo> setOfBranchInfo,
-            GitManager gitManager,
-            String repositoryName,
-            long staleDaysCount
-    ) {
-        StringBuilder builder = new StringBuilder();
-        builder.append("Добрый день, уважаемый коллега ").append(person.getName()).append("!\n\n");
-        builder.append("В проекте ").append(repositoryName)
-                .append(" найдены ветки, в которые вы не делали коммиты целых ").append(staleDaysCount).append(" дней!\n");
-        builder.append("Пожалуйста обновите (merge, rebase) или удалите эти ветки.\n");
-
-        builder.append(setOfBranchInfo.size() > 1 ? "Ветки " : "Ветка ")
-                .append(gitManager.getBitbucketProjectBranchesUrl()).append(":\n");
-        Format formatter = new SimpleDateFormat("dd.MM.yyyy hh:mm");
-        setOfBranchInfo.stream()
-                .sorted(Comparator.comparingInt(branch -> branch.getLastCommit().getCommitTime()))
-                .forEach(branchInfo -> builder
-                .append("\t* ").append(getBranchUrl(branchInfo.getBranch().getName())).append("\n\t  последний коммит: ")
-                .append(formatter.format(new Date(branchInfo.getLastCommit().getCommitTime() * MILLIS_IN_SECOND)))
-                .append(", ").append(branchInfo.getLastCommit().getShortMessage()).append('\n'));
-
-        return builder.toString();
-    }
-
-    private static String getBranchUrl(String name) {
-        return name.replaceAll("origin/", "");
-    }
-
-    private static String getStaleNotificationMailSubject(String repositoryName) {
-        return "Напоминание об устаревших бранчах " + repositoryName;
-    }
-
-    void setExpiredBranchSettings(GitExpiredBranchSettings expiredBranchSettings) {
-        this.expiredBranchSettings = expiredBranchSettings;
-    }
-
-    void setEmailConnectionSettings(EmailConnectionSettings emailConnectionSettings) {
-        this.emailConnectionSettings = emailConnectionSettings;
-    }
-
-    void setGitSettings(GitSettings gitSettings) {
-        this.gitSettings = gitSettings;
-    }
-
-}
\ No newline at end of file
+}
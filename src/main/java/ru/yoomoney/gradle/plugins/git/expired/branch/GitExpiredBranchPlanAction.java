@@ -0,0 +1,72 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.workers.WorkAction;
+import ru.yoomoney.gradle.plugins.git.expired.branch.helper.RepositoryScanner;
+import ru.yoomoney.gradle.plugins.git.expired.branch.plan.PlannedBranch;
+import ru.yoomoney.gradle.plugins.git.expired.branch.plan.RemovalPlan;
+import ru.yoomoney.gradle.plugins.git.expired.branch.plan.RepositoryRemovalPlan;
+import ru.yoomoney.gradle.plugins.git.expired.branch.report.RunMetrics;
+import ru.yoomoney.gradle.plugins.git.expired.branch.report.RunReport;
+import ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchSettings;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Фоновое действие составления плана удаления веток.
+ * Удаленные репозитории не изменяются, письма не отправляются
+ */
+public abstract class GitExpiredBranchPlanAction implements WorkAction<GitExpiredBranchWorkParameters> {
+    /**
+     * Логгер
+     */
+    private final Logger log = Logging.getLogger(GitExpiredBranchPlanAction.class);
+
+    /**
+     * Составляет план удаления веток и сохраняет его в файл
+     */
+    @Override
+    public void execute() {
+        GitExpiredBranchSettings expiredBranchSettings = getParameters().getExpiredBranchSettings().get();
+        Collection<File> repoDirs = expiredBranchSettings.getRepoDirs();
+        String projectName = getParameters().getProjectName().get();
+        RunReport report = new RunReport(GitExpiredBranchPlanTask.TASK_NAME);
+        try {
+            RepositoryScanner.Results<RepositoryRemovalPlan> scanResults = RepositoryScanner.scan(repoDirs,
+                    expiredBranchSettings.getRepositoryScanThreads(),
+                    repoDir -> report.measureRepository(repoDir, metrics -> planRepository(repoDir,
+                            repoDirs.size() > 1 ? repoDir.getName() : projectName, metrics)));
+            scanResults.throwIfFailed();
+
+            File planFile = getParameters().getPlanFile().get().getAsFile();
+            new RemovalPlan(System.currentTimeMillis(), expiredBranchSettings.getStaleDaysToDelete(),
+                    new ArrayList<>(scanResults.getResults().values())).write(planFile);
+            log.lifecycle("Removal plan saved: file={}", planFile);
+        } finally {
+            report.writeTo(getParameters().getReportFile().get().getAsFile());
+        }
+    }
+
+    private RepositoryRemovalPlan planRepository(File repoDir, String projectName, RunMetrics metrics) {
+        GitExpiredBranchRemover gitExpiredBranchRemover = new GitExpiredBranchRemover(
+                getParameters().getExpiredBranchSettings().get(),
+                null,
+                getParameters().getGitSettings().get(),
+                repoDir,
+                projectName,
+                metrics
+        );
+
+        log.lifecycle("Planning deletion: repoDir={}", repoDir);
+        List<PlannedBranch> plannedBranches = gitExpiredBranchRemover.planStaleBranchesRemoval();
+        plannedBranches.forEach(branch -> log.lifecycle("Planned to delete: branch={}, author={}, mergeBase={}, "
+                        + "diffSizeBytes={}, diffTruncated={}", branch.getRefName(), branch.getAuthorEmail(),
+                branch.getMergeBase().orElse(null), branch.getDiffSizeBytes(), branch.isDiffTruncated()));
+        return new RepositoryRemovalPlan(repoDir, gitExpiredBranchRemover.getRemoteUrl(), projectName,
+                plannedBranches);
+    }
+}
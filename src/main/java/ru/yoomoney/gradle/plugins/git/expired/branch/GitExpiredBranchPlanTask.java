@@ -0,0 +1,76 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.workers.WorkerExecutor;
+import ru.yoomoney.gradle.plugins.git.expired.branch.git.GitSettings;
+import ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchSettings;
+
+import javax.inject.Inject;
+
+/**
+ * Задача для составления плана удаления бранчей без удаления бранчей и отправки писем
+ */
+public abstract class GitExpiredBranchPlanTask extends DefaultTask {
+    /**
+     * Имя таски
+     */
+    static final String TASK_NAME = "planExpiredGitBranchesRemoval";
+
+    /**
+     * Настройки плагина
+     */
+    @Input
+    public abstract Property<GitExpiredBranchSettings> getExpiredBranchSettings();
+
+    /**
+     * Настройки git.
+     * Содержат парольную фразу ssh ключа, поэтому не являются входом задачи и не попадают в отпечаток входов
+     */
+    @Internal
+    public abstract Property<GitSettings> getGitSettings();
+
+    /**
+     * Имя gradle проекта
+     */
+    @Input
+    public abstract Property<String> getProjectName();
+
+    /**
+     * Файл плана удаления веток
+     */
+    @OutputFile
+    public abstract RegularFileProperty getPlanFile();
+
+    /**
+     * Файл отчета о запуске задачи с временем этапов и счетчиками в формате JSON
+     */
+    @OutputFile
+    public abstract RegularFileProperty getReportFile();
+
+    /**
+     * Исполнитель фоновых действий
+     */
+    @Inject
+    protected abstract WorkerExecutor getWorkerExecutor();
+
+    /**
+     * Составляет план удаления веток.
+     * План составляется фоновым действием, задача не блокирует выполнение других задач
+     */
+    @TaskAction
+    void planExpiredGitBranchesRemoval() {
+        getWorkerExecutor().noIsolation().submit(GitExpiredBranchPlanAction.class, parameters -> {
+            parameters.getExpiredBranchSettings().set(getExpiredBranchSettings());
+            parameters.getGitSettings().set(getGitSettings());
+            parameters.getProjectName().set(getProjectName());
+            parameters.getPlanFile().set(getPlanFile());
+            parameters.getReportFile().set(getReportFile());
+        });
+    }
+}
@@ -2,6 +2,7 @@ package ru.yoomoney.gradle.plugins.git.expired.branch;
 
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.provider.Provider;
 import ru.yoomoney.gradle.plugins.git.expired.branch.settings.EmailConnectionExtension;
 import ru.yoomoney.gradle.plugins.git.expired.branch.settings.EmailConnectionSettings;
 import ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchExtension;
@@ -15,15 +16,14 @@ import ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitConnectionExten
 public class GitExpiredBranchPlugin implements Plugin<Project> {
 
     /**
-     * Действия при применении плагина GitExpiredBranchPlugin
+     * Действия при применении плагина GitExpiredBranchPlugin.
+     * Настройки передаются в задачи через провайдеры и вычисляются только при выполнении задач
+     * или при сохранении configuration cache
      *
      * @param target проект, для которого применяется плагин
      */
     @Override
     public void apply(Project target) {
-        GitExpiredBranchNotifyTask gitExpiredBranchNotifyTask = createGitStaleBranchNotifyTask(target);
-        GitExpiredBranchDeleteTask gitExpiredBranchDeleteTask = createGitStaleBranchDeleteTask(target);
-
         EmailConnectionExtension emailConnection = target.getExtensions()
                 .create("emailForGitExpiredBranches", EmailConnectionExtension.class);
 
@@ -32,69 +32,106 @@ public class GitExpiredBranchPlugin implements Plugin<Project> {
 
         GitExpiredBranchExtension expiredBranch = target.getExtensions()
                 .create("expiredBranchSettings", GitExpiredBranchExtension.class);
+        expiredBranch.getRepoDir().convention(target.getRootDir());
 
-        target.afterEvaluate(project -> {
-            GitExpiredBranchSettings expiredBranchSettings = createGitExpiredBranchSettings(expiredBranch, target);
-            EmailConnectionSettings emailConnectionSettings = createEmailConnectionSettings(emailConnection);
-            GitSettings gitSettings = createGitSettings(gitConnection);
-
-            gitExpiredBranchNotifyTask.setEmailConnectionSettings(emailConnectionSettings);
-            gitExpiredBranchNotifyTask.setExpiredBranchSettings(expiredBranchSettings);
-            gitExpiredBranchNotifyTask.setGitSettings(gitSettings);
+        Provider<GitExpiredBranchSettings> expiredBranchSettings =
+                target.provider(() -> createGitExpiredBranchSettings(expiredBranch));
+        Provider<EmailConnectionSettings> emailConnectionSettings =
+                target.provider(() -> createEmailConnectionSettings(emailConnection));
+        Provider<GitSettings> gitSettings = target.provider(() -> createGitSettings(gitConnection));
+        String projectName = target.getName();
 
-            gitExpiredBranchDeleteTask.setEmailConnectionSettings(emailConnectionSettings);
-            gitExpiredBranchDeleteTask.setExpiredBranchSettings(expiredBranchSettings);
-            gitExpiredBranchDeleteTask.setGitSettings(gitSettings);
+        target.getTasks().register(GitExpiredBranchNotifyTask.TASK_NAME, GitExpiredBranchNotifyTask.class, task -> {
+            task.setGroup("report");
+            task.setDescription("Make notifications about git expired branches");
+            task.getExpiredBranchSettings().set(expiredBranchSettings);
+            task.getEmailConnectionSettings().set(emailConnectionSettings);
+            task.getGitSettings().set(gitSettings);
+            task.getProjectName().set(projectName);
+            task.getReportFile().convention(target.getLayout().getBuildDirectory()
+                    .file("reports/git-expired-branch/" + GitExpiredBranchNotifyTask.TASK_NAME + ".json"));
+            // события сводки и журнал уведомлений должны переживать clean, поэтому хранятся вне build директории
+            task.getDigestStoreFile().convention(target.getLayout().getProjectDirectory()
+                    .file(".gradle/git-expired-branch/notification-digest.store"));
+            task.getNotificationLedgerFile().convention(target.getLayout().getProjectDirectory()
+                    .file(".gradle/git-expired-branch/notification-ledger.log"));
+            // отчет - побочный результат задачи, задача должна выполняться при каждом запуске
+            task.getOutputs().upToDateWhen(element -> false);
         });
-    }
 
-    private static GitExpiredBranchNotifyTask createGitStaleBranchNotifyTask(Project target) {
-        GitExpiredBranchNotifyTask task = target.getTasks()
-                .create(GitExpiredBranchNotifyTask.TASK_NAME, GitExpiredBranchNotifyTask.class);
-        task.setGroup("report");
-        task.setDescription("Make notifications about git expired branches");
-        return task;
-    }
+        target.getTasks().register(GitExpiredBranchPlanTask.TASK_NAME, GitExpiredBranchPlanTask.class, task -> {
+            task.setGroup("build");
+            task.setDescription("Plan removal of git expired branches without deleting them");
+            task.getExpiredBranchSettings().set(expiredBranchSettings);
+            task.getGitSettings().set(gitSettings);
+            task.getProjectName().set(projectName);
+            task.getPlanFile().convention(target.getLayout().getBuildDirectory()
+                    .file("git-expired-branch/removal-plan.txt"));
+            task.getReportFile().convention(target.getLayout().getBuildDirectory()
+                    .file("reports/git-expired-branch/" + GitExpiredBranchPlanTask.TASK_NAME + ".json"));
+            // план зависит от состояния удаленного репозитория, задача должна выполняться при каждом запуске
+            task.getOutputs().upToDateWhen(element -> false);
+        });
 
-    private GitExpiredBranchDeleteTask createGitStaleBranchDeleteTask(Project target) {
-        GitExpiredBranchDeleteTask task = target.getTasks()
-                .create(GitExpiredBranchDeleteTask.TASK_NAME, GitExpiredBranchDeleteTask.class);
-        task.setGroup("build");
-        task.setDescription("Delete git expired branches");
-        return task;
+        target.getTasks().register(GitExpiredBranchDeleteTask.TASK_NAME, GitExpiredBranchDeleteTask.class, task -> {
+            task.setGroup("build");
+            task.setDescription("Delete git expired branches");
+            task.getExpiredBranchSettings().set(expiredBranchSettings);
+            task.getEmailConnectionSettings().set(emailConnectionSettings);
+            task.getGitSettings().set(gitSettings);
+            task.getProjectName().set(projectName);
+            task.getReportFile().convention(target.getLayout().getBuildDirectory()
+                    .file("reports/git-expired-branch/" + GitExpiredBranchDeleteTask.TASK_NAME + ".json"));
+            // отчет - побочный результат задачи, задача должна выполняться при каждом запуске
+            task.getOutputs().upToDateWhen(element -> false);
+        });
     }
 
     private static GitSettings createGitSettings(GitConnectionExtension gitConnection) {
         return GitSettings.builder()
-            .withSshKeyPath(gitConnection.getPathToGitPrivateSshKey())
-            .withPassphraseSshKey(gitConnection.getPassphraseSshKey())
-            .withUsername(gitConnection.getUsername())
-            .withEmail(gitConnection.getEmail())
+            .withSshKeyPath(gitConnection.getPathToGitPrivateSshKey().getOrNull())
+            .withPassphraseSshKey(gitConnection.getPassphraseSshKey().getOrNull())
+            .withUsername(gitConnection.getUsername().getOrNull())
+            .withEmail(gitConnection.getEmail().getOrNull())
             .build();
     }
 
     private static EmailConnectionSettings createEmailConnectionSettings(EmailConnectionExtension emailConnection) {
         return new EmailConnectionSettings.Builder()
-            .withEmailHost(emailConnection.emailHost)
-            .withEmailPort(emailConnection.emailPort)
-            .withEmailAuthUser(emailConnection.emailAuthUser)
-            .withEmailAuthPassword(emailConnection.emailAuthPassword)
+            .withEmailHost(emailConnection.getEmailHost().getOrNull())
+            .withEmailPort(emailConnection.getEmailPort().getOrNull())
+            .withEmailAuthUser(emailConnection.getEmailAuthUser().getOrNull())
+            .withEmailAuthPassword(emailConnection.getEmailAuthPassword().getOrNull())
+            .withReuseConnection(emailConnection.getReuseConnection().get())
             .build();
     }
 
-    private static GitExpiredBranchSettings createGitExpiredBranchSettings(
-        GitExpiredBranchExtension expiredBranch,
-        Project target
-    ) {
+    private static GitExpiredBranchSettings createGitExpiredBranchSettings(GitExpiredBranchExtension expiredBranch) {
         return new GitExpiredBranchSettings.Builder()
-            .withRepoDir(expiredBranch.repoDir == null ? target.getRootDir() : expiredBranch.repoDir)
-            .withGitArchiveRepository(expiredBranch.gitArchiveRepository)
-            .withNotifierEmail(expiredBranch.notifierEmail)
-            .withRemoverEmail(expiredBranch.removerEmail)
-            .withAdminEmail(expiredBranch.adminEmail)
-            .withStaleDaysToNotify(expiredBranch.staleDaysToNotify)
-            .withStaleDaysToDelete(expiredBranch.staleDaysToDelete)
-            .withIgnoreBranchesPatterns(expiredBranch.ignoreBranchesPatterns)
+            .withRepoDir(expiredBranch.getRepoDir().get())
+            .withGitArchiveRepository(expiredBranch.getGitArchiveRepository().getOrNull())
+            .withNotifierEmail(expiredBranch.getNotifierEmail().getOrNull())
+            .withRemoverEmail(expiredBranch.getRemoverEmail().getOrNull())
+            .withAdminEmail(expiredBranch.getAdminEmail().getOrNull())
+            .withStaleDaysToNotify(expiredBranch.getStaleDaysToNotify().get())
+            .withStaleDaysToDelete(expiredBranch.getStaleDaysToDelete().get())
+            .withIgnoreBranchesPatterns(expiredBranch.getIgnoreBranchesPatterns().get())
+            .withBranchScanThreads(expiredBranch.getBranchScanThreads().get())
+            .withBranchTipCacheEnabled(expiredBranch.getBranchTipCacheEnabled().get())
+            .withBranchTipCacheMaxEntries(expiredBranch.getBranchTipCacheMaxEntries().get())
+            .withDeleteBranchesBatchSize(expiredBranch.getDeleteBranchesBatchSize().get())
+            .withArchiveDiffMaxSizeBytes(expiredBranch.getArchiveDiffMaxSizeBytes().get())
+            .withNotificationThreads(expiredBranch.getNotificationThreads().get())
+            .withNotificationMaxAttempts(expiredBranch.getNotificationMaxAttempts().get())
+            .withNotificationRetryDelayMillis(expiredBranch.getNotificationRetryDelayMillis().get())
+            .withIncludeBranchesPrefixes(expiredBranch.getIncludeBranchesPrefixes().get())
+            .withRepoDirs(expiredBranch.getRepoDirs().get())
+            .withRepositoryScanThreads(expiredBranch.getRepositoryScanThreads().get())
+            .withFetchBeforeScan(expiredBranch.getFetchBeforeScan().get())
+            .withStaleBranchesMailTemplate(expiredBranch.getStaleBranchesMailTemplate().getOrNull())
+            .withDeletedBranchesMailTemplate(expiredBranch.getDeletedBranchesMailTemplate().getOrNull())
+            .withDigestWindowDays(expiredBranch.getDigestWindowDays().get())
+            .withRenotifyIntervalDays(expiredBranch.getRenotifyIntervalDays().get())
             .build();
     }
-}
\ No newline at end of file
+}
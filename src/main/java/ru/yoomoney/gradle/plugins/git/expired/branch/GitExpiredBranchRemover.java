@@ -1,26 +1,49 @@
 package ru.yoomoney.gradle.plugins.git.expired.branch;
 
-import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.errors.GitAPIException;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
 import ru.yoomoney.gradle.plugins.git.expired.branch.git.GitSettings;
+import ru.yoomoney.gradle.plugins.git.expired.branch.git.RepositoryCoordinates;
 import ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchSettings;
+import ru.yoomoney.gradle.plugins.git.expired.branch.helper.ArchiveSession;
+import ru.yoomoney.gradle.plugins.git.expired.branch.helper.AuthorIdentity;
+import ru.yoomoney.gradle.plugins.git.expired.branch.helper.BranchFilter;
+import ru.yoomoney.gradle.plugins.git.expired.branch.helper.BranchTipCache;
 import ru.yoomoney.gradle.plugins.git.expired.branch.helper.GitManager;
+import ru.yoomoney.gradle.plugins.git.expired.branch.helper.MailMap;
+import ru.yoomoney.gradle.plugins.git.expired.branch.notification.EmailMessage;
 import ru.yoomoney.gradle.plugins.git.expired.branch.notification.MailSender;
+import ru.yoomoney.gradle.plugins.git.expired.branch.notification.MailTemplate;
+import ru.yoomoney.gradle.plugins.git.expired.branch.notification.NotificationDispatcher;
+import ru.yoomoney.gradle.plugins.git.expired.branch.plan.PlannedBranch;
+import ru.yoomoney.gradle.plugins.git.expired.branch.report.RunMetrics;
 
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.function.Function;
 import java.util.regex.Matcher;
@@ -34,13 +57,33 @@ import java.util.stream.Collectors;
  * @since 26.09.2019
  */
 public class GitExpiredBranchRemover {
+    private static final Logger log = Logging.getLogger(GitExpiredBranchRemover.class);
     private static final Pattern REMOTE_PATTERN = Pattern.compile("refs/remotes/origin/", Pattern.LITERAL);
 
+    /**
+     * Шаблон письма об удаленных ветках по-умолчанию
+     */
+    static final String DEFAULT_DELETED_BRANCHES_MAIL_TEMPLATE =
+            "Добрый день, уважаемый коллега {{authorName}}!\n\n" +
+            "В репозитории {{repositoryBranchesUrl}} были найдены и удалены ветки, " +
+            "в которые вы не делали коммиты целых {{staleDays}} дней!\n" +
+            "Архив патчей удаленных веток находится тут: {{archiveBranchesUrl}}\n" +
+            "{{#severalBranches}}Ветки: {{/severalBranches}}{{^severalBranches}}Ветка: {{/severalBranches}}\n" +
+            "{{#branches}}\t* {{branchName}}\n{{/branches}}";
+
     private GitExpiredBranchSettings expiredBranchSettings;
     private final GitSettings gitSettings;
     private final String projectName;
     private final GitManager gitManager;
+    @Nullable
     private final MailSender mailSender;
+    @Nullable
+    private final BranchTipCache branchTipCache;
+    private final BranchFilter branchFilter;
+    private final MailMap mailMap;
+    private final MailTemplate deletedBranchesMailTemplate;
+    private final RunMetrics metrics;
+    private final List<String> failedDeletions = new ArrayList<>();
 
     GitExpiredBranchRemover(
             GitExpiredBranchSettings expiredBranchSettings,
@@ -48,102 +91,303 @@ public class GitExpiredBranchRemover {
             GitSettings gitSettings,
             File repoDir,
             String projectName
+    ) {
+        this(expiredBranchSettings, mailSender, gitSettings, repoDir, projectName, new RunMetrics());
+    }
+
+    GitExpiredBranchRemover(
+            GitExpiredBranchSettings expiredBranchSettings,
+            @Nullable MailSender mailSender,
+            GitSettings gitSettings,
+            File repoDir,
+            String projectName,
+            RunMetrics metrics
     ) {
         this.expiredBranchSettings = expiredBranchSettings;
         this.mailSender = mailSender;
-        this.gitManager = new GitManager(repoDir, gitSettings);
+        this.metrics = metrics;
+        this.gitManager = new GitManager(repoDir, gitSettings, metrics);
         this.gitSettings = gitSettings;
         this.projectName = projectName;
+        this.branchTipCache = expiredBranchSettings.isBranchTipCacheEnabled()
+                ? BranchTipCache.load(gitManager.getBranchTipCacheFile(), expiredBranchSettings.getBranchTipCacheMaxEntries())
+                : null;
+        this.branchFilter = BranchFilter.compile(expiredBranchSettings.getIgnoreBranches());
+        this.mailMap = gitManager.loadMailMap();
+        this.deletedBranchesMailTemplate = MailTemplate.compile(
+                Optional.ofNullable(expiredBranchSettings.getDeletedBranchesMailTemplate())
+                        .orElse(DEFAULT_DELETED_BRANCHES_MAIL_TEMPLATE));
     }
 
     /**
-     * Собирает устаревшие ветки
+     * Собирает устаревшие ветки.
+     * Если включена настройка fetchBeforeScan, перед сбором ветки обновляются из origin
      */
     List<BranchInfo> collectGitStaleBranchesInfoToDelete() {
+        List<BranchInfo> staleBranches = collectStaleBranches();
+        if (branchTipCache != null) {
+            branchTipCache.save();
+        }
+        return staleBranches;
+    }
+
+    /**
+     * Собирает устаревшие ветки без сохранения кэша последних коммитов веток
+     */
+    private List<BranchInfo> collectStaleBranches() {
+        fetchRemoteBranchesIfEnabled();
         long dateWeekAgo = LocalDateTime.now().minusDays(expiredBranchSettings.getStaleDaysToDelete())
                 .atZone(ZoneId.systemDefault()).toEpochSecond();
 
-        return gitManager.getRemoteBranches().stream()
-                .filter(branch -> isBranchNotIgnored(branch, expiredBranchSettings.getIgnoreBranches()))
-                .map(repoBranch -> new BranchInfo(repoBranch, gitManager.getLastCommitFromBranch(repoBranch)))
-                .filter(branchInfo -> branchInfo.getLastCommit().getCommitTime() < dateWeekAgo)
-                .collect(Collectors.toList());
+        List<Ref> remoteBranches = gitManager.getRemoteBranches(expiredBranchSettings.getIncludeBranchesPrefixes());
+        List<Ref> branches = metrics.time(RunMetrics.Phase.FILTERING, () -> remoteBranches.stream()
+                .filter(branch -> !branchFilter.isIgnored(branch.getName()))
+                .collect(Collectors.toList()));
+
+        return gitManager.getStaleBranches(
+                branches, dateWeekAgo, expiredBranchSettings.getBranchScanThreads(), branchTipCache);
     }
 
-    private static boolean isBranchNotIgnored(Ref branch, Collection<Pattern> ignoreBranches) {
-        for (Pattern ignoreBranchPattern : ignoreBranches) {
-            if (ignoreBranchPattern.matcher(branch.getName()).matches()) {
-                return false;
-            }
+    /**
+     * Удаляет устаревшие ветки.
+     * Перед удалением diff каждой ветки сохраняется в архивный репозиторий, удаляются только ветки,
+     * которые удалось заархивировать. Удаление в удаленном репозитории выполняется пачками,
+     * размер пачки задается настройкой deleteBranchesBatchSize. Ветка не удаляется, если в удаленном репозитории
+     * она указывает не на тот коммит, по которому была собрана.
+     *
+     * @return ветки, которые были удалены в удаленном репозитории
+     */
+    List<BranchInfo> deleteStaleBranches(List<BranchInfo> staleBranchesInfo) {
+        return deleteStaleBranches(staleBranchesInfo, getCommonAncestors(staleBranchesInfo));
+    }
+
+    /**
+     * Составляет план удаления устаревших веток.
+     * Удаленные репозитории не изменяются: для каждой ветки вычисляются общий предок с origin/master
+     * и размер diff, который будет сохранен в архивный репозиторий. Кэш последних коммитов веток не сохраняется.
+     *
+     * @return ветки, которые будут удалены при выполнении плана
+     */
+    List<PlannedBranch> planStaleBranchesRemoval() {
+        List<BranchInfo> staleBranchesInfo = collectStaleBranches();
+        Map<String, String> commonAncestors = getCommonAncestors(staleBranchesInfo);
+        List<PlannedBranch> plannedBranches = new ArrayList<>(staleBranchesInfo.size());
+        for (BranchInfo branchInfo : staleBranchesInfo) {
+            String branchName = branchInfo.getBranch().getName();
+            CountingOutputStream diffSize = new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+            boolean diffTruncated = gitManager.writeDiffBranch(branchName, diffSize,
+                    expiredBranchSettings.getArchiveDiffMaxSizeBytes());
+            AuthorIdentity author = mailMap.resolve(branchInfo.getAuthorIdent());
+            plannedBranches.add(new PlannedBranch(
+                    branchName,
+                    branchInfo.getBranch().getObjectId().getName(),
+                    branchInfo.getCommitTime(),
+                    author.getName(),
+                    author.getEmail(),
+                    branchInfo.getShortMessage(),
+                    commonAncestors.get(branchName),
+                    diffSize.getByteCount(),
+                    diffTruncated));
         }
-        return true;
+        return plannedBranches;
     }
 
     /**
-     * Удаляет устаревшие ветки
+     * Удаляет ветки по плану без повторного сбора устаревших веток.
+     * Ветки, которые были удалены или сдвинулись после составления плана, не удаляются: удаление ветки
+     * в удаленном репозитории выполняется, только если она указывает на коммит из плана.
+     *
+     * @param plannedBranches ветки из плана удаления
+     * @return ветки, которые были удалены в удаленном репозитории
      */
-    List<BranchInfo> deleteStaleBranches(List<BranchInfo> staleBranchesInfo) {
-        List<BranchInfo> deletedStaleBranches = new ArrayList<>();
-        staleBranchesInfo.forEach(branchInfo -> {
-            saveBranchDiffToArchiveRepo(branchInfo, gitManager);
+    List<BranchInfo> deletePlannedBranches(List<PlannedBranch> plannedBranches) {
+        fetchRemoteBranchesIfEnabled();
+        List<BranchInfo> staleBranchesInfo = new ArrayList<>(plannedBranches.size());
+        Map<String, String> commonAncestors = new HashMap<>();
+        for (PlannedBranch plannedBranch : plannedBranches) {
+            String branchName = plannedBranch.getRefName();
+            Optional<Ref> branch = gitManager.findBranch(branchName);
+            if (!branch.isPresent() || branch.get().getObjectId() == null) {
+                log.warn("Planned branch not found and will not be deleted: branchName={}", branchName);
+                continue;
+            }
+            if (!branch.get().getObjectId().getName().equals(plannedBranch.getTipId())) {
+                log.warn("Planned branch was changed and will not be deleted: branchName={}, plannedTip={}, tip={}",
+                        branchName, plannedBranch.getTipId(), branch.get().getObjectId().getName());
+                continue;
+            }
+            if (branchFilter.isIgnored(branchName)) {
+                log.warn("Planned branch is ignored and will not be deleted: branchName={}", branchName);
+                continue;
+            }
+            staleBranchesInfo.add(new BranchInfo(
+                    branch.get(),
+                    plannedBranch.getCommitTime(),
+                    new PersonIdent(plannedBranch.getAuthorName(), plannedBranch.getAuthorEmail(), 0L, 0),
+                    plannedBranch.getShortMessage(),
+                    () -> gitManager.getLastCommitFromBranch(branch.get())));
+            plannedBranch.getMergeBase().ifPresent(mergeBase -> commonAncestors.put(branchName, mergeBase));
+        }
+        return deleteStaleBranches(staleBranchesInfo, commonAncestors);
+    }
 
-            gitManager.deleteRemoteBranch(
-                    REMOTE_PATTERN.matcher(branchInfo.getBranch().getName())
-                            .replaceAll(Matcher.quoteReplacement("")));
+    private List<BranchInfo> deleteStaleBranches(List<BranchInfo> staleBranchesInfo,
+                                                 Map<String, String> commonAncestors) {
+        Map<String, BranchInfo> archivedBranches = archiveStaleBranches(staleBranchesInfo, commonAncestors);
 
-            deletedStaleBranches.add(branchInfo);
+        List<BranchInfo> deletedStaleBranches = new ArrayList<>();
+        Map<String, String> expectedTips = new HashMap<>();
+        archivedBranches.forEach((branchName, branchInfo) -> {
+            ObjectId tip = branchInfo.getBranch().getObjectId();
+            if (tip != null) {
+                expectedTips.put(branchName, tip.getName());
+            }
         });
+        gitManager.deleteRemoteBranches(archivedBranches.keySet(), expectedTips,
+                        expiredBranchSettings.getDeleteBranchesBatchSize())
+                .forEach((branchName, status) -> {
+                    if (status == RemoteRefUpdate.Status.OK || status == RemoteRefUpdate.Status.NON_EXISTING) {
+                        deletedStaleBranches.add(archivedBranches.get(branchName));
+                    } else if (status == RemoteRefUpdate.Status.REJECTED_OTHER_REASON) {
+                        log.warn("Stale branch deletion failed: branchName={}", branchName);
+                        failedDeletions.add(branchName);
+                    } else {
+                        log.warn("Can't delete stale branch: branchName={}, status={}", branchName, status);
+                    }
+                });
         return deletedStaleBranches;
     }
 
     /**
-     * Отправляет email об удаленных ветках
+     * Сохраняет diff веток в архивный репозиторий. Все ветки отправляются в архивный репозиторий одним push.
+     * Если устаревших веток нет, архивный репозиторий не используется.
+     *
+     * @return заархивированные ветки по названию ветки без префикса remote
      */
-    void notifyAboutDeletedBranches(List<BranchInfo> deletedBranches) {
-        deletedBranches.stream().collect(Collectors.groupingBy(branchInfo -> branchInfo.getLastCommit().getAuthorIdent(),
-                Collectors.mapping(Function.identity(), Collectors.toSet())
-        )).forEach((person, setOfBranchInfo) -> {
-            String mailSubject = getDeleteBranchNotificationMailSubject();
-            String mailBody = getDeleteBranchNotificationMailBody(person, setOfBranchInfo);
-            try {
-                mailSender.sendEmail(
-                        expiredBranchSettings.getRemoverEmail(),
-                        Collections.singleton(person.getEmailAddress()),
-                        mailSubject,
-                        mailBody
-                );
-            } catch (Exception e) {
-                mailSender.sendEmail(
-                        expiredBranchSettings.getRemoverEmail(),
-                        Collections.singleton(expiredBranchSettings.getAdminEmail()),
-                        mailSubject,
-                        mailBody + "/n" + e.getMessage()
-                );
-            }
-        });
+    private Map<String, BranchInfo> archiveStaleBranches(List<BranchInfo> staleBranchesInfo,
+                                                         Map<String, String> commonAncestors) {
+        Map<String, BranchInfo> archivedBranches = new LinkedHashMap<>();
+        if (staleBranchesInfo.isEmpty()) {
+            return archivedBranches;
+        }
+        Map<String, BranchInfo> branchesByArchiveName = new LinkedHashMap<>();
+        try (ArchiveSession archiveSession =
+                     ArchiveSession.open(expiredBranchSettings.getGitArchiveRepository(), gitSettings)) {
+            staleBranchesInfo.forEach(branchInfo -> branchesByArchiveName.put(
+                    saveBranchDiffToArchiveRepo(branchInfo, commonAncestors.get(branchInfo.getBranch().getName()),
+                            archiveSession),
+                    branchInfo));
+
+            metrics.time(RunMetrics.Phase.ARCHIVE_PUSH, archiveSession::push).forEach((archiveBranchName, status) -> {
+                BranchInfo branchInfo = branchesByArchiveName.get(archiveBranchName);
+                if (status == RemoteRefUpdate.Status.OK) {
+                    archivedBranches.put(REMOTE_PATTERN.matcher(branchInfo.getBranch().getName())
+                            .replaceAll(Matcher.quoteReplacement("")), branchInfo);
+                } else {
+                    log.warn("Stale branch was not archived and will not be deleted: branchName={}, status={}",
+                            branchInfo.getBranch().getName(), status);
+                }
+            });
+        }
+        return archivedBranches;
     }
 
-    private String getDeleteBranchNotificationMailBody(PersonIdent person, Set<BranchInfo> setOfBranchInfo) {
-        StringBuilder builder = new StringBuilder();
-        builder.append("Добрый день, уважаемый коллега ").append(person.getName()).append("!\n\n");
-        builder.append("В репозитории ")
-                .append(gitManager.getBitbucketProjectBranchesUrl())
-                .append(" были найдены и удалены ветки, в которые вы не делали коммиты целых ")
-                .append(expiredBranchSettings.getStaleDaysToDelete())
-                .append(" дней!\n");
+    /**
+     * Получает url удаленного репозитория origin, по которому репозиторий ищется в плане удаления
+     *
+     * @return url origin, null если origin не настроен
+     */
+    @Nullable
+    String getRemoteUrl() {
+        return gitManager.getRemoteUrl();
+    }
 
-        builder.append("Архив патчей удаленных веток находится тут: ");
-        builder.append(gitManager.getBitbucketBranchesUrlFromCloneUrl(expiredBranchSettings.getGitArchiveRepository()) + "\n");
+    /**
+     * Завершает удаление ошибкой, если часть веток не удалось удалить из-за ошибки push или удаления локальной ветки.
+     * Вызывается после уведомления авторов, чтобы авторы веток, удаленных до ошибки, получили письмо.
+     * Ветки, которые сдвинулись после сбора, ошибкой не считаются.
+     */
+    void failIfBranchesNotDeleted() {
+        if (!failedDeletions.isEmpty()) {
+            throw new RuntimeException("Can't delete stale branches: branchNames=" + failedDeletions);
+        }
+    }
 
-        builder.append(setOfBranchInfo.size() > 1 ? "Ветки: " : "Ветка: ").append("\n");
-        setOfBranchInfo.forEach(branchInfo ->
-                builder.append("\t* ").append(getBranchUrl(branchInfo.getBranch().getName())).append('\n'));
+    private void fetchRemoteBranchesIfEnabled() {
+        if (expiredBranchSettings.isFetchBeforeScan()) {
+            gitManager.fetchRemoteBranches(expiredBranchSettings.getIncludeBranchesPrefixes());
+        }
+    }
 
-        return builder.toString();
+    /**
+     * Находит общих предков веток с origin/master
+     *
+     * @return идентификаторы коммитов общих предков по имени ref'а ветки
+     */
+    private Map<String, String> getCommonAncestors(List<BranchInfo> staleBranchesInfo) {
+        return gitManager.getGoodCommonAncestorsCommits("origin/master", staleBranchesInfo.stream()
+                .map(branchInfo -> branchInfo.getBranch().getName())
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Отправляет email об удаленных ветках.
+     * Ветки группируются по канонической личности автора с учетом .mailmap, каждый автор получает одно письмо.
+     * Если удаленных веток нет, координаты репозиториев не разбираются
+     */
+    void notifyAboutDeletedBranches(List<BranchInfo> deletedBranches) {
+        if (deletedBranches.isEmpty()) {
+            return;
+        }
+        String repositoryBranchesUrl = gitManager.getBitbucketProjectBranchesUrl();
+        String archiveBranchesUrl =
+                RepositoryCoordinates.parse(expiredBranchSettings.getGitArchiveRepository()).getBranchesUrl();
+        try (NotificationDispatcher dispatcher = createNotificationDispatcher()) {
+            deletedBranches.stream().collect(Collectors.groupingBy(
+                    branchInfo -> mailMap.resolve(branchInfo.getAuthorIdent()),
+                    LinkedHashMap::new,
+                    Collectors.mapping(Function.identity(), Collectors.toSet())
+            )).forEach((person, setOfBranchInfo) -> dispatcher.submit(
+                    new EmailMessage(
+                            expiredBranchSettings.getRemoverEmail(),
+                            Collections.singleton(person.getEmail()),
+                            getDeleteBranchNotificationMailSubject(),
+                            getDeleteBranchNotificationMailBody(person, setOfBranchInfo,
+                                    repositoryBranchesUrl, archiveBranchesUrl)
+                    ),
+                    expiredBranchSettings.getAdminEmail()));
+            dispatcher.awaitCompletion();
+        }
+    }
+
+    private NotificationDispatcher createNotificationDispatcher() {
+        if (mailSender == null) {
+            throw new IllegalStateException("Mail sender is required to notify about deleted branches");
+        }
+        return new NotificationDispatcher(
+                mailSender,
+                expiredBranchSettings.getNotificationThreads(),
+                expiredBranchSettings.getNotificationMaxAttempts(),
+                expiredBranchSettings.getNotificationRetryDelayMillis(),
+                metrics);
+    }
+
+    private String getDeleteBranchNotificationMailBody(AuthorIdentity person, Set<BranchInfo> setOfBranchInfo,
+                                                       String repositoryBranchesUrl, String archiveBranchesUrl) {
+        Map<String, Object> model = new HashMap<>();
+        model.put("authorName", person.getName());
+        model.put("repositoryBranchesUrl", repositoryBranchesUrl);
+        model.put("archiveBranchesUrl", archiveBranchesUrl);
+        model.put("staleDays", expiredBranchSettings.getStaleDaysToDelete());
+        model.put("severalBranches", setOfBranchInfo.size() > 1);
+        model.put("branches", setOfBranchInfo.stream()
+                .map(branchInfo -> Collections.singletonMap("branchName", getBranchUrl(branchInfo.getBranch().getName())))
+                .collect(Collectors.toList()));
+        return deletedBranchesMailTemplate.render(model);
     }
 
     private static String getBranchUrl(String name) {
-        return name.replaceAll("origin/", "");
+        return name.replace("origin/", "");
     }
 
     private String getDeleteBranchNotificationMailSubject() {
@@ -154,9 +398,14 @@ public class GitExpiredBranchRemover {
      * Сохранить патч для данного бранча в Архивный репозиторий перед удалением бранча.
      * Действие необходимо для того, чтобы была возможность восстановить ветку, если она кому-то потребуется.
      *
-     * @param branchInfo - ветка, diff для которой нужно сохранить
+     * @param branchInfo     - ветка, diff для которой нужно сохранить
+     * @param commonAncestor - идентификатор коммита, от которого была создана ветка, null если он не найден
+     * @param archiveSession - сессия записи в архивный репозиторий
+     * @return название ветки в архивном репозитории
      */
-    private void saveBranchDiffToArchiveRepo(BranchInfo branchInfo, GitManager gitManager) {
+    private String saveBranchDiffToArchiveRepo(BranchInfo branchInfo,
+                                               @Nullable String commonAncestor,
+                                               ArchiveSession archiveSession) {
         String branchName = branchInfo.getBranch().getName();
         String branchNameWithoutOrigin =
                 REMOTE_PATTERN.matcher(branchName).replaceAll(Matcher.quoteReplacement(""));
@@ -173,35 +422,24 @@ public class GitExpiredBranchRemover {
         );
 
         String fileName = String.format("%s.diff",
-                gitManager.getGoodCommonAncestorsCommit("origin/master", branchName)
-                        .orElse(branchName.replaceAll("/", "_")));
+                commonAncestor != null ? commonAncestor : branchName.replaceAll("/", "_"));
 
-        commitAndPushToArchiveRepository(gitManager.makeDiffBranch(branchName), branchNameWithTimestamp, fileName);
-    }
-
-    /**
-     * Закоммитить и запушить данные строки fileLines в данную ветку.
-     *
-     * @param diff       - строки, которые нужно запушить в репозиторий.
-     * @param branchName - ветка, куда нужно сделать пуш.
-     * @param fileName   - название файла, в который нужно сделать пуш
-     */
-    private void commitAndPushToArchiveRepository(String diff,
-                                                  String branchName,
-                                                  String fileName) {
+        // размер blob'а нужно знать до записи в базу объектов, поэтому diff пишется потоком во временный файл
+        Path diffFile = null;
         try {
-            Path tempDir = Files.createTempDirectory("git");
-
-            Git.init().setDirectory(tempDir.toFile()).call();
-            GitManager archiveRepo = new GitManager(tempDir.toFile(), gitSettings);
-
-            Path fullPath = tempDir.resolve(fileName);
-            Files.write(fullPath, Collections.singletonList(diff));
-
-            archiveRepo.remoteAdd(expiredBranchSettings.getGitArchiveRepository());
-            archiveRepo.addFileIntoRemoteBranch(branchName, fileName);
-        } catch (IOException | GitAPIException e) {
+            diffFile = Files.createTempFile("git-expired-branch", ".diff");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(diffFile))) {
+                gitManager.writeDiffBranch(branchName, out, expiredBranchSettings.getArchiveDiffMaxSizeBytes());
+                out.write(System.lineSeparator().getBytes(StandardCharsets.UTF_8));
+            }
+            archiveSession.addFile(branchNameWithTimestamp, fileName, diffFile.toFile());
+        } catch (IOException e) {
             throw new RuntimeException("Cannot create tmpFile or write data to it: fileName=" + fileName, e);
+        } finally {
+            if (diffFile != null) {
+                FileUtils.deleteQuietly(diffFile.toFile());
+            }
         }
+        return branchNameWithTimestamp;
     }
 }
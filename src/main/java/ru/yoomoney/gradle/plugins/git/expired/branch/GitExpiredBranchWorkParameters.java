@@ -0,0 +1,55 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch;
+
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.workers.WorkParameters;
+import ru.yoomoney.gradle.plugins.git.expired.branch.git.GitSettings;
+import ru.yoomoney.gradle.plugins.git.expired.branch.settings.EmailConnectionSettings;
+import ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchSettings;
+
+/**
+ * Параметры фоновых действий плагина.
+ * Настройки сериализуются при передаче в действие, поэтому действие не зависит от состояния задачи и проекта.
+ */
+public interface GitExpiredBranchWorkParameters extends WorkParameters {
+
+    /**
+     * Настройки плагина
+     */
+    Property<GitExpiredBranchSettings> getExpiredBranchSettings();
+
+    /**
+     * Настройки smtp
+     */
+    Property<EmailConnectionSettings> getEmailConnectionSettings();
+
+    /**
+     * Настройки git
+     */
+    Property<GitSettings> getGitSettings();
+
+    /**
+     * Имя gradle проекта, используется в теме письма об удалении веток
+     */
+    Property<String> getProjectName();
+
+    /**
+     * Файл отчета о запуске задачи
+     */
+    RegularFileProperty getReportFile();
+
+    /**
+     * Файл плана удаления веток
+     */
+    RegularFileProperty getPlanFile();
+
+    /**
+     * Файл событий для писем-сводок
+     */
+    RegularFileProperty getDigestStoreFile();
+
+    /**
+     * Файл журнала отправленных уведомлений
+     */
+    RegularFileProperty getNotificationLedgerFile();
+}
@@ -0,0 +1,53 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch;
+
+import ru.yoomoney.gradle.plugins.git.expired.branch.helper.AuthorIdentity;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Устаревшие ветки одного репозитория.
+ * Имя и url репозитория вычисляются только при обращении, то есть когда есть ветки для уведомления
+ */
+class RepositoryStaleBranches {
+    private final String repositoryKey;
+    private final Supplier<String> repositoryName;
+    private final Supplier<String> projectBranchesUrl;
+    private final Map<AuthorIdentity, Set<BranchInfo>> staleBranches;
+
+    /**
+     * Конструктор
+     *
+     * @param repositoryKey      ключ репозитория - абсолютный путь к нему
+     * @param repositoryName     поставщик имени репозитория
+     * @param projectBranchesUrl поставщик url страницы веток репозитория
+     * @param staleBranches      устаревшие ветки, сгруппированные по каноническим личностям авторов
+     */
+    RepositoryStaleBranches(String repositoryKey, Supplier<String> repositoryName, Supplier<String> projectBranchesUrl,
+                            Map<AuthorIdentity, Set<BranchInfo>> staleBranches) {
+        this.repositoryKey = repositoryKey;
+        this.repositoryName = repositoryName;
+        this.projectBranchesUrl = projectBranchesUrl;
+        this.staleBranches = staleBranches;
+    }
+
+    /**
+     * Ключ репозитория, по которому ветки репозитория хранятся в журнале уведомлений и сводке
+     */
+    String getRepositoryKey() {
+        return repositoryKey;
+    }
+
+    String getRepositoryName() {
+        return repositoryName.get();
+    }
+
+    String getProjectBranchesUrl() {
+        return projectBranchesUrl.get();
+    }
+
+    Map<AuthorIdentity, Set<BranchInfo>> getStaleBranches() {
+        return staleBranches;
+    }
+}
@@ -0,0 +1,203 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.git;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Чтение времени коммитов из файла commit-graph ({@code objects/info/commit-graph}).
+ * <p>
+ * Файл отображается в память целиком, поиск коммита выполняется бинарным поиском по таблице идентификаторов,
+ * поэтому объекты коммитов из базы объектов не читаются и не распаковываются.
+ * Поддерживается только одиночный файл версии 1 с SHA-1, цепочки commit-graph не поддерживаются.
+ * Экземпляр неизменяем и может использоваться из нескольких потоков.
+ *
+ * @see <a href="https://git-scm.com/docs/commit-graph-format">commit-graph format</a>
+ */
+public class CommitGraph {
+    private static final Logger log = LoggerFactory.getLogger(CommitGraph.class);
+
+    private static final int SIGNATURE = 0x43475048;
+    private static final int CHUNK_OID_FANOUT = 0x4f494446;
+    private static final int CHUNK_OID_LOOKUP = 0x4f49444c;
+    private static final int CHUNK_COMMIT_DATA = 0x43444154;
+    private static final int SUPPORTED_VERSION = 1;
+    private static final int HASH_VERSION_SHA1 = 1;
+
+    private static final int HEADER_SIZE = 8;
+    private static final int CHUNK_LOOKUP_ENTRY_SIZE = 12;
+    private static final int FANOUT_ENTRIES = 256;
+    private static final int HASH_SIZE = Constants.OBJECT_ID_LENGTH;
+    /**
+     * Запись о коммите: идентификатор дерева, два родителя и 8 байт с номером поколения и временем коммита
+     */
+    private static final int COMMIT_DATA_SIZE = HASH_SIZE + 16;
+    private static final int COMMIT_TIME_OFFSET = HASH_SIZE + 8;
+    private static final long COMMIT_TIME_HIGH_BITS_MASK = 0x3L;
+    private static final long UNSIGNED_INT_MASK = 0xFFFFFFFFL;
+
+    private final ByteBuffer buffer;
+    private final int fanoutOffset;
+    private final int lookupOffset;
+    private final int commitDataOffset;
+    private final int commitCount;
+
+    private CommitGraph(ByteBuffer buffer, int fanoutOffset, int lookupOffset, int commitDataOffset, int commitCount) {
+        this.buffer = buffer;
+        this.fanoutOffset = fanoutOffset;
+        this.lookupOffset = lookupOffset;
+        this.commitDataOffset = commitDataOffset;
+        this.commitCount = commitCount;
+    }
+
+    /**
+     * Открыть commit-graph репозитория
+     *
+     * @param repository репозиторий
+     * @return commit-graph или пустой Optional, если файла нет или его формат не поддерживается
+     */
+    public static Optional<CommitGraph> open(@Nonnull Repository repository) {
+        requireNonNull(repository, "repository");
+        if (repository.getDirectory() == null) {
+            return Optional.empty();
+        }
+        return open(new File(repository.getDirectory(), "objects/info/commit-graph"));
+    }
+
+    /**
+     * Открыть файл commit-graph
+     *
+     * @param file файл commit-graph
+     * @return commit-graph или пустой Optional, если файла нет или его формат не поддерживается
+     */
+    public static Optional<CommitGraph> open(@Nonnull File file) {
+        requireNonNull(file, "file");
+        if (!file.isFile()) {
+            return Optional.empty();
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                log.warn("Commit-graph is too large, ignoring it: file={}", file);
+                return Optional.empty();
+            }
+            return parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), file);
+        } catch (IOException exc) {
+            log.warn("Can't read commit-graph, ignoring it: file={}", file, exc);
+            return Optional.empty();
+        }
+    }
+
+    private static Optional<CommitGraph> parse(ByteBuffer buffer, File file) {
+        if (buffer.limit() < HEADER_SIZE
+                || buffer.getInt(0) != SIGNATURE
+                || buffer.get(4) != SUPPORTED_VERSION
+                || buffer.get(5) != HASH_VERSION_SHA1
+                || buffer.get(7) != 0) {
+            log.info("Unsupported commit-graph format, ignoring it: file={}", file);
+            return Optional.empty();
+        }
+
+        int chunkCount = buffer.get(6) & 0xFF;
+        if (buffer.limit() < HEADER_SIZE + (chunkCount + 1) * CHUNK_LOOKUP_ENTRY_SIZE) {
+            log.warn("Commit-graph is truncated, ignoring it: file={}", file);
+            return Optional.empty();
+        }
+        long fanoutOffset = -1;
+        long lookupOffset = -1;
+        long commitDataOffset = -1;
+        for (int i = 0; i < chunkCount; i++) {
+            int entry = HEADER_SIZE + i * CHUNK_LOOKUP_ENTRY_SIZE;
+            int chunkId = buffer.getInt(entry);
+            long chunkOffset = buffer.getLong(entry + 4);
+            if (chunkId == CHUNK_OID_FANOUT) {
+                fanoutOffset = chunkOffset;
+            } else if (chunkId == CHUNK_OID_LOOKUP) {
+                lookupOffset = chunkOffset;
+            } else if (chunkId == CHUNK_COMMIT_DATA) {
+                commitDataOffset = chunkOffset;
+            }
+        }
+        if (fanoutOffset < 0 || lookupOffset < 0 || commitDataOffset < 0
+                || fanoutOffset + FANOUT_ENTRIES * 4L > buffer.limit()) {
+            log.warn("Commit-graph has no required chunks, ignoring it: file={}", file);
+            return Optional.empty();
+        }
+
+        long commitCount = buffer.getInt((int) fanoutOffset + (FANOUT_ENTRIES - 1) * 4) & UNSIGNED_INT_MASK;
+        if (lookupOffset + commitCount * HASH_SIZE > buffer.limit()
+                || commitDataOffset + commitCount * COMMIT_DATA_SIZE > buffer.limit()) {
+            log.warn("Commit-graph is truncated, ignoring it: file={}", file);
+            return Optional.empty();
+        }
+        return Optional.of(new CommitGraph(buffer, (int) fanoutOffset, (int) lookupOffset,
+                (int) commitDataOffset, (int) commitCount));
+    }
+
+    /**
+     * Количество коммитов в commit-graph
+     */
+    public int getCommitCount() {
+        return commitCount;
+    }
+
+    /**
+     * Получить время коммита (committer time) из commit-graph
+     *
+     * @param commitId идентификатор коммита
+     * @return время коммита в секундах или пустой OptionalLong, если коммита нет в commit-graph
+     */
+    public OptionalLong findCommitTime(@Nonnull AnyObjectId commitId) {
+        int position = findPosition(requireNonNull(commitId, "commitId"));
+        if (position < 0) {
+            return OptionalLong.empty();
+        }
+        int dataOffset = commitDataOffset + position * COMMIT_DATA_SIZE + COMMIT_TIME_OFFSET;
+        long high = buffer.getInt(dataOffset) & COMMIT_TIME_HIGH_BITS_MASK;
+        long low = buffer.getInt(dataOffset + 4) & UNSIGNED_INT_MASK;
+        return OptionalLong.of(high << 32 | low);
+    }
+
+    private int findPosition(AnyObjectId commitId) {
+        byte[] id = new byte[HASH_SIZE];
+        commitId.copyRawTo(id, 0);
+
+        int firstByte = id[0] & 0xFF;
+        int low = firstByte == 0 ? 0 : buffer.getInt(fanoutOffset + (firstByte - 1) * 4);
+        int high = buffer.getInt(fanoutOffset + firstByte * 4) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int compare = compareId(lookupOffset + middle * HASH_SIZE, id);
+            if (compare < 0) {
+                low = middle + 1;
+            } else if (compare > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int compareId(int offset, byte[] id) {
+        for (int i = 0; i < HASH_SIZE; i++) {
+            int compare = Integer.compare(buffer.get(offset + i) & 0xFF, id[i] & 0xFF);
+            if (compare != 0) {
+                return compare;
+            }
+        }
+        return 0;
+    }
+}
@@ -43,6 +43,7 @@ import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.transport.FetchResult;
 import org.eclipse.jgit.transport.JschConfigSessionFactory;
 import org.eclipse.jgit.transport.OpenSshConfig;
+import org.eclipse.jgit.transport.PushResult;
 import org.eclipse.jgit.transport.SshTransport;
 import org.eclipse.jgit.util.FS;
 import org.eclipse.jgit.util.StringUtils;
@@ -73,13 +74,26 @@ public class GitRepo implements AutoCloseable {
      * @return сообщение об ошибке, в случае неуспешного выполнения
      */
     public Optional<String> push(Consumer<PushCommand> command) {
+        return push(command, pushResults -> { });
+    }
+
+    /**
+     * Прокси для вызова {@link PushCommand} с получением результатов обновления ref'ов
+     *
+     * @param command        команда для выполнения
+     * @param resultsHandler обработчик результатов push, по которым можно получить статус обновления каждого ref'а,
+     *                       вызывается, если команда выполнилась без исключения
+     * @return сообщение об ошибке, в случае неуспешного выполнения
+     */
+    public Optional<String> push(Consumer<PushCommand> command, Consumer<Iterable<PushResult>> resultsHandler) {
         Objects.requireNonNull(command, "command");
+        Objects.requireNonNull(resultsHandler, "resultsHandler");
         try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
             PushCommand pushCommand = git.push();
             command.accept(pushCommand);
             configureTransport(pushCommand, settings);
             pushCommand.setOutputStream(out);
-            pushCommand.call();
+            resultsHandler.accept(pushCommand.call());
             String resultMessage = out.toString();
             if (StringUtils.isEmptyOrNull(resultMessage) ||
                     resultMessage.contains("Create pull request") ||
@@ -93,6 +107,24 @@ public class GitRepo implements AutoCloseable {
         }
     }
 
+    /**
+     * Прокси для вызова {@link FetchCommand}
+     *
+     * @param command команда для выполнения
+     * @return результат fetch с обновленными ref'ами
+     */
+    public FetchResult fetch(Consumer<FetchCommand> command) {
+        Objects.requireNonNull(command, "command");
+        FetchCommand fetchCommand = git.fetch();
+        command.accept(fetchCommand);
+        configureTransport(fetchCommand, settings);
+        try {
+            return fetchCommand.call();
+        } catch (GitAPIException exc) {
+            throw new RuntimeException("Can't fetch", exc);
+        }
+    }
+
     /**
      * Получение коммита, на который указывает head
      *
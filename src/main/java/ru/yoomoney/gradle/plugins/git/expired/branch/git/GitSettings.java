@@ -2,6 +2,7 @@ package ru.yoomoney.gradle.plugins.git.expired.branch.git;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.Serializable;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -11,7 +12,9 @@ import java.util.Optional;
  * @author Oleg Kandaurov
  * @since 30.01.2019
  */
-public class GitSettings {
+public class GitSettings implements Serializable {
+    private static final long serialVersionUID = 1L;
+
 
     private final String username;
     private final String email;
@@ -0,0 +1,199 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.git;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Координаты удаленного репозитория: хостинг, хост, проект и имя репозитория.
+ * <p>
+ * Координаты разбираются из clone url один раз и не изменяются. Поддерживаются url вида:
+ * <ul>
+ * <li>{@code ssh://git@host[:port]/project/repo.git}</li>
+ * <li>{@code git@host:group/subgroup/repo.git} (scp-формат)</li>
+ * <li>{@code https://host/scm/project/repo.git}, {@code https://host/group/repo.git}</li>
+ * </ul>
+ * Хостинг определяется по url: github.com - GitHub, хост с "gitlab" в имени - GitLab,
+ * ssh:// url и https url с префиксом /scm/ - Bitbucket Server, остальные scp и https url - GitLab.
+ * Для Bitbucket Server ssh порт из url сохраняется в хосте и в ссылке на страницу веток,
+ * для GitLab и GitHub порт отбрасывается.
+ * Для нераспознанных url (например, локальных путей) проект и репозиторий пустые.
+ */
+public class RepositoryCoordinates {
+    private static final Logger log = Logging.getLogger(RepositoryCoordinates.class);
+
+    private static final Pattern SSH_URL =
+            Pattern.compile("ssh://(?:[^@/]+@)?(?<host>[^/:]+)(?<port>:\\d+)?/(?<path>.+?)(?:\\.git)?/?");
+    private static final Pattern SCP_URL =
+            Pattern.compile("(?:[^@/]+@)?(?<host>[^/:\\\\]{2,}):(?<path>[^/\\\\].*?)(?:\\.git)?/?");
+    private static final Pattern HTTP_URL =
+            Pattern.compile("https?://(?:[^@/]+@)?(?<host>[^/]+)/(?<path>.+?)(?:\\.git)?/?");
+    private static final String BITBUCKET_HTTP_PREFIX = "scm/";
+
+    private final String cloneUrl;
+    private final Hosting hosting;
+    private final String host;
+    private final String project;
+    private final String repository;
+
+    private RepositoryCoordinates(String cloneUrl, Hosting hosting, String host, String project, String repository) {
+        this.cloneUrl = cloneUrl;
+        this.hosting = hosting;
+        this.host = host;
+        this.project = project;
+        this.repository = repository;
+    }
+
+    /**
+     * Разобрать координаты репозитория из clone url
+     *
+     * @param cloneUrl clone url репозитория, null если url не задан
+     * @return координаты репозитория, для нераспознанного url - с пустыми проектом и репозиторием
+     */
+    @Nonnull
+    public static RepositoryCoordinates parse(@Nullable String cloneUrl) {
+        if (cloneUrl == null) {
+            return unknown("");
+        }
+        Matcher ssh = SSH_URL.matcher(cloneUrl);
+        if (ssh.matches()) {
+            String host = ssh.group("host");
+            Hosting hosting = hostingByHost(host, Hosting.BITBUCKET);
+            if (hosting == Hosting.BITBUCKET && ssh.group("port") != null) {
+                host += ssh.group("port");
+            }
+            return fromPath(cloneUrl, hosting, host, ssh.group("path"));
+        }
+        Matcher http = HTTP_URL.matcher(cloneUrl);
+        if (http.matches()) {
+            String host = http.group("host");
+            String path = http.group("path");
+            if (path.startsWith(BITBUCKET_HTTP_PREFIX)) {
+                return fromPath(cloneUrl, Hosting.BITBUCKET, host, path.substring(BITBUCKET_HTTP_PREFIX.length()));
+            }
+            return fromPath(cloneUrl, hostingByHost(host, Hosting.GITLAB), host, path);
+        }
+        Matcher scp = SCP_URL.matcher(cloneUrl);
+        if (scp.matches()) {
+            String host = scp.group("host");
+            return fromPath(cloneUrl, hostingByHost(host, Hosting.GITLAB), host, scp.group("path"));
+        }
+        return unknown(cloneUrl);
+    }
+
+    private static Hosting hostingByHost(String host, Hosting defaultHosting) {
+        String lowerHost = host.toLowerCase(Locale.ROOT);
+        if (lowerHost.equals("github.com") || lowerHost.endsWith(".github.com")) {
+            return Hosting.GITHUB;
+        }
+        if (lowerHost.contains("gitlab")) {
+            return Hosting.GITLAB;
+        }
+        return defaultHosting;
+    }
+
+    private static RepositoryCoordinates fromPath(String cloneUrl, Hosting hosting, String host, String path) {
+        int lastSlash = path.lastIndexOf('/');
+        if (lastSlash <= 0 || lastSlash == path.length() - 1) {
+            return unknown(cloneUrl);
+        }
+        return new RepositoryCoordinates(cloneUrl, hosting, host,
+                path.substring(0, lastSlash), path.substring(lastSlash + 1));
+    }
+
+    private static RepositoryCoordinates unknown(String cloneUrl) {
+        log.warn("Unrecognized clone url, repository links will be empty: cloneUrl={}", cloneUrl);
+        return new RepositoryCoordinates(cloneUrl, Hosting.UNKNOWN, "", "", "");
+    }
+
+    /**
+     * Url страницы веток репозитория.
+     * Для нераспознанного url возвращается url Bitbucket Server с пустыми проектом и репозиторием
+     *
+     * @return url страницы веток
+     */
+    @Nonnull
+    public String getBranchesUrl() {
+        switch (hosting) {
+            case GITHUB:
+                return String.format("https://%s/%s/%s/branches", host, project, repository);
+            case GITLAB:
+                return String.format("https://%s/%s/%s/-/branches", host, project, repository);
+            case BITBUCKET:
+            case UNKNOWN:
+            default:
+                return String.format("https://%s/projects/%s/repos/%s/branches", host, project, repository);
+        }
+    }
+
+    @Nonnull
+    public String getCloneUrl() {
+        return cloneUrl;
+    }
+
+    @Nonnull
+    public Hosting getHosting() {
+        return hosting;
+    }
+
+    /**
+     * Хост сервера, для Bitbucket Server - с ssh портом из url, пустой для нераспознанного url
+     */
+    @Nonnull
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Проект Bitbucket, группа GitLab (с подгруппами через "/") или владелец репозитория GitHub
+     */
+    @Nonnull
+    public String getProject() {
+        return project;
+    }
+
+    /**
+     * Имя репозитория без суффикса .git
+     */
+    @Nonnull
+    public String getRepository() {
+        return repository;
+    }
+
+    @Override
+    public String toString() {
+        return "RepositoryCoordinates{" +
+                "hosting=" + hosting +
+                ", host='" + host + '\'' +
+                ", project='" + project + '\'' +
+                ", repository='" + repository + '\'' +
+                '}';
+    }
+
+    /**
+     * Хостинг git-репозиториев
+     */
+    public enum Hosting {
+        /**
+         * Bitbucket Server
+         */
+        BITBUCKET,
+        /**
+         * GitLab
+         */
+        GITLAB,
+        /**
+         * GitHub
+         */
+        GITHUB,
+        /**
+         * Хостинг не определен
+         */
+        UNKNOWN
+    }
+}
@@ -0,0 +1,206 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.helper;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.transport.PushResult;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
+import org.eclipse.jgit.transport.URIish;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import ru.yoomoney.gradle.plugins.git.expired.branch.git.GitRepo;
+import ru.yoomoney.gradle.plugins.git.expired.branch.git.GitRepoFactory;
+import ru.yoomoney.gradle.plugins.git.expired.branch.git.GitSettings;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Сессия записи в архивный репозиторий.
+ * <p>
+ * На весь запуск создается один временный bare-репозиторий. Для каждой архивируемой ветки в нем создается
+ * коммит без родителей с одним файлом, объекты записываются напрямую через {@link ObjectInserter}
+ * без рабочей директории. Все ветки отправляются в архивный репозиторий одним push при вызове {@link #push()}.
+ * Временный репозиторий удаляется при закрытии сессии.
+ */
+public class ArchiveSession implements AutoCloseable {
+    private static final Logger log = Logging.getLogger(ArchiveSession.class);
+
+    private static final String REMOTE_NAME = "origin";
+    private static final String COMMIT_MESSAGE = "add new file";
+
+    private final File directory;
+    private final GitRepo archiveRepo;
+    private final ObjectInserter inserter;
+    private final PersonIdent author;
+    private final List<String> branchNames = new ArrayList<>();
+
+    private ArchiveSession(File directory, GitRepo archiveRepo, GitSettings gitSettings) {
+        this.directory = directory;
+        this.archiveRepo = archiveRepo;
+        this.inserter = archiveRepo.getRepository().newObjectInserter();
+        this.author = new PersonIdent(gitSettings.getUsername(), gitSettings.getEmail());
+    }
+
+    /**
+     * Открыть сессию записи в архивный репозиторий
+     *
+     * @param archiveRepositoryUrl адрес архивного репозитория
+     * @param gitSettings          настройки подключения к git
+     * @return сессия записи в архивный репозиторий
+     */
+    public static ArchiveSession open(@Nonnull String archiveRepositoryUrl, @Nonnull GitSettings gitSettings) {
+        requireNonNull(archiveRepositoryUrl, "archiveRepositoryUrl");
+        requireNonNull(gitSettings, "gitSettings");
+        File directory;
+        try {
+            directory = Files.createTempDirectory("git-archive").toFile();
+        } catch (IOException exc) {
+            throw new RuntimeException("Can't create archive repository directory", exc);
+        }
+        GitRepo archiveRepo = null;
+        try {
+            archiveRepo = new GitRepoFactory(gitSettings)
+                    .createGitRepo(Git.init().setBare(true).setDirectory(directory));
+            archiveRepo.remoteAdd()
+                    .setName(REMOTE_NAME)
+                    .setUri(new URIish(archiveRepositoryUrl))
+                    .call();
+            return new ArchiveSession(directory, archiveRepo, gitSettings);
+        } catch (URISyntaxException | GitAPIException | RuntimeException exc) {
+            if (archiveRepo != null) {
+                archiveRepo.close();
+            }
+            FileUtils.deleteQuietly(directory);
+            throw new RuntimeException(format("Can't open archive repository: url=%s", archiveRepositoryUrl), exc);
+        }
+    }
+
+    /**
+     * Создать ветку с одним файлом. Ветка будет отправлена в архивный репозиторий при вызове {@link #push()}
+     *
+     * @param branchName название ветки
+     * @param fileName   имя файла
+     * @param content    содержимое файла
+     */
+    public void addFile(@Nonnull String branchName, @Nonnull String fileName, @Nonnull byte[] content) {
+        try {
+            addBlob(branchName, fileName, inserter.insert(Constants.OBJ_BLOB, content));
+        } catch (IOException exc) {
+            throw new RuntimeException(format("Can't add file into archive branch: branchName=%s", branchName), exc);
+        }
+    }
+
+    /**
+     * Создать ветку с одним файлом, содержимое которого читается потоком из локального файла.
+     * Ветка будет отправлена в архивный репозиторий при вызове {@link #push()}
+     *
+     * @param branchName  название ветки
+     * @param fileName    имя файла
+     * @param contentFile файл с содержимым
+     */
+    public void addFile(@Nonnull String branchName, @Nonnull String fileName, @Nonnull File contentFile) {
+        try (InputStream content = Files.newInputStream(contentFile.toPath())) {
+            addBlob(branchName, fileName, inserter.insert(Constants.OBJ_BLOB, contentFile.length(), content));
+        } catch (IOException exc) {
+            throw new RuntimeException(format("Can't add file into archive branch: branchName=%s", branchName), exc);
+        }
+    }
+
+    private void addBlob(String branchName, String fileName, ObjectId blobId) throws IOException {
+        TreeFormatter tree = new TreeFormatter();
+        tree.append(fileName, FileMode.REGULAR_FILE, blobId);
+        ObjectId treeId = inserter.insert(tree);
+
+        CommitBuilder commit = new CommitBuilder();
+        commit.setTreeId(treeId);
+        commit.setAuthor(author);
+        commit.setCommitter(author);
+        commit.setMessage(COMMIT_MESSAGE);
+        ObjectId commitId = inserter.insert(commit);
+        inserter.flush();
+
+        RefUpdate refUpdate = archiveRepo.getRepository().updateRef(Constants.R_HEADS + branchName);
+        refUpdate.setNewObjectId(commitId);
+        refUpdate.setExpectedOldObjectId(ObjectId.zeroId());
+        RefUpdate.Result result = refUpdate.update();
+        if (result != RefUpdate.Result.NEW) {
+            throw new IOException(format("Can't create archive branch: branchName=%s, result=%s", branchName, result));
+        }
+        branchNames.add(branchName);
+    }
+
+    /**
+     * Отправить все созданные ветки в архивный репозиторий одним push
+     *
+     * @return статус отправки для каждой ветки, в порядке создания веток
+     * @throws RuntimeException если push не удался целиком
+     */
+    public Map<String, RemoteRefUpdate.Status> push() {
+        Map<String, RemoteRefUpdate.Status> statuses = new LinkedHashMap<>();
+        if (branchNames.isEmpty()) {
+            return statuses;
+        }
+        List<RefSpec> refSpecs = new ArrayList<>();
+        for (String branchName : branchNames) {
+            refSpecs.add(new RefSpec(Constants.R_HEADS + branchName + ':' + Constants.R_HEADS + branchName));
+            statuses.put(branchName, RemoteRefUpdate.Status.NOT_ATTEMPTED);
+        }
+        log.lifecycle("push branches into archive repository: count={}", branchNames.size());
+
+        archiveRepo.push(pushCommand -> pushCommand
+                        .setRefSpecs(refSpecs)
+                        .setRemote(REMOTE_NAME),
+                pushResults -> updateArchiveStatuses(pushResults, statuses))
+                .ifPresent(resultMessage -> {
+                    throw new RuntimeException(format(
+                            "Can't push branches into archive repository: branchNames=%s, message=%s",
+                            branchNames, resultMessage));
+                });
+        branchNames.clear();
+        return statuses;
+    }
+
+    private static void updateArchiveStatuses(Iterable<PushResult> pushResults,
+                                              Map<String, RemoteRefUpdate.Status> statuses) {
+        for (PushResult pushResult : pushResults) {
+            for (RemoteRefUpdate update : pushResult.getRemoteUpdates()) {
+                String branchName = update.getRemoteName().substring(Constants.R_HEADS.length());
+                if (statuses.containsKey(branchName)) {
+                    statuses.put(branchName, update.getStatus());
+                    if (update.getStatus() != RemoteRefUpdate.Status.OK) {
+                        log.warn("Branch was not archived: branchName={}, status={}, message={}",
+                                branchName, update.getStatus(), update.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        inserter.close();
+        archiveRepo.close();
+        FileUtils.deleteQuietly(directory);
+    }
+}
@@ -0,0 +1,72 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.helper;
+
+import javax.annotation.Nonnull;
+import java.util.Locale;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Каноническая личность автора коммитов.
+ * <p>
+ * Личности сравниваются только по нормализованному email, поэтому коммиты одного автора с разным временем
+ * и разным написанием имени попадают в одну группу и автор получает одно письмо.
+ */
+public class AuthorIdentity {
+    private final String name;
+    private final String email;
+
+    /**
+     * Конструктор
+     *
+     * @param name  имя автора
+     * @param email email автора, приводится к нижнему регистру без пробелов по краям
+     */
+    public AuthorIdentity(@Nonnull String name, @Nonnull String email) {
+        this.name = requireNonNull(name, "name");
+        this.email = normalizeEmail(requireNonNull(email, "email"));
+    }
+
+    /**
+     * Привести email к виду, в котором сравниваются личности авторов
+     *
+     * @param email email автора
+     * @return email в нижнем регистре без пробелов по краям
+     */
+    static String normalizeEmail(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    @Nonnull
+    public String getEmail() {
+        return email;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return email.equals(((AuthorIdentity) o).email);
+    }
+
+    @Override
+    public int hashCode() {
+        return email.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "AuthorIdentity{" +
+                "name='" + name + '\'' +
+                ", email='" + email + '\'' +
+                '}';
+    }
+}
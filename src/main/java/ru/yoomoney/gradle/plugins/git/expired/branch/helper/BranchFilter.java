@@ -0,0 +1,193 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.helper;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Фильтр веток по списку паттернов игнорирования.
+ * <p>
+ * Паттерны разбираются один раз при создании фильтра:
+ * <ul>
+ * <li>паттерны, совпадающие только с одним именем (например, {@code ^refs/remotes/origin/master$}),
+ * попадают в хэш-множество имен;</li>
+ * <li>паттерны вида {@code ^refs/remotes/origin/release/.*} попадают в префиксное дерево;</li>
+ * <li>остальные паттерны объединяются в одно регулярное выражение-альтернативу.</li>
+ * </ul>
+ * Паттерны с флагами и обратными ссылками, а также паттерны, которые не удалось объединить,
+ * проверяются по отдельности. Ветка игнорируется, если ее имя целиком совпадает хотя бы с одним паттерном,
+ * как при проверке через {@link java.util.regex.Matcher#matches()}.
+ */
+public class BranchFilter {
+    private static final Logger log = Logging.getLogger(BranchFilter.class);
+
+    private static final String REGEX_META_CHARS = "\\^$.|?*+()[]{}";
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\(?:[1-9]|k<)");
+
+    private final Set<String> exactNames;
+    private final PrefixNode prefixes;
+    @Nullable
+    private final Pattern combinedPattern;
+    private final List<Pattern> separatePatterns;
+
+    private BranchFilter(Set<String> exactNames, PrefixNode prefixes, @Nullable Pattern combinedPattern,
+                         List<Pattern> separatePatterns) {
+        this.exactNames = exactNames;
+        this.prefixes = prefixes;
+        this.combinedPattern = combinedPattern;
+        this.separatePatterns = separatePatterns;
+    }
+
+    /**
+     * Создать фильтр по паттернам игнорирования веток
+     *
+     * @param ignorePatterns паттерны веток, которые нужно игнорировать
+     * @return фильтр веток
+     */
+    public static BranchFilter compile(@Nonnull Collection<Pattern> ignorePatterns) {
+        requireNonNull(ignorePatterns, "ignorePatterns");
+        Set<String> exactNames = new HashSet<>();
+        PrefixNode prefixes = new PrefixNode();
+        List<Pattern> combinable = new ArrayList<>();
+        List<Pattern> separatePatterns = new ArrayList<>();
+
+        for (Pattern pattern : ignorePatterns) {
+            if (pattern.flags() != 0 || BACK_REFERENCE.matcher(pattern.pattern()).find()) {
+                separatePatterns.add(pattern);
+                continue;
+            }
+            String body = stripAnchors(pattern.pattern());
+            String exactName = unescapeLiteral(body);
+            if (exactName != null) {
+                exactNames.add(exactName);
+                continue;
+            }
+            String prefix = body.endsWith(".*") ? unescapeLiteral(body.substring(0, body.length() - 2)) : null;
+            if (prefix != null) {
+                prefixes.add(prefix);
+                continue;
+            }
+            combinable.add(pattern);
+        }
+
+        Pattern combinedPattern = null;
+        if (!combinable.isEmpty()) {
+            try {
+                combinedPattern = Pattern.compile(combinable.stream()
+                        .map(pattern -> "(?:" + pattern.pattern() + ")")
+                        .collect(Collectors.joining("|")));
+            } catch (PatternSyntaxException exc) {
+                log.info("Can't combine ignore branches patterns, patterns will be checked separately", exc);
+                separatePatterns.addAll(combinable);
+            }
+        }
+        return new BranchFilter(exactNames, prefixes, combinedPattern, separatePatterns);
+    }
+
+    /**
+     * Проверить, нужно ли игнорировать ветку
+     *
+     * @param refName имя ref'а ветки
+     * @return true, если имя ветки совпадает с одним из паттернов игнорирования
+     */
+    public boolean isIgnored(@Nonnull String refName) {
+        if (exactNames.contains(refName) || prefixes.matchesPrefixOf(refName)) {
+            return true;
+        }
+        if (combinedPattern != null && combinedPattern.matcher(refName).matches()) {
+            return true;
+        }
+        for (Pattern pattern : separatePatterns) {
+            if (pattern.matcher(refName).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripAnchors(String regex) {
+        String body = regex.startsWith("^") ? regex.substring(1) : regex;
+        if (body.endsWith("$") && !isEscaped(body, body.length() - 1)) {
+            body = body.substring(0, body.length() - 1);
+        }
+        return body;
+    }
+
+    private static boolean isEscaped(String regex, int index) {
+        int backslashes = 0;
+        for (int i = index - 1; i >= 0 && regex.charAt(i) == '\\'; i--) {
+            backslashes++;
+        }
+        return backslashes % 2 == 1;
+    }
+
+    /**
+     * Получить строку, с которой совпадает регулярное выражение без специальных конструкций
+     *
+     * @return строка или null, если в выражении есть специальные конструкции
+     */
+    @Nullable
+    private static String unescapeLiteral(String regex) {
+        StringBuilder literal = new StringBuilder(regex.length());
+        for (int i = 0; i < regex.length(); i++) {
+            char ch = regex.charAt(i);
+            if (ch == '\\') {
+                if (i + 1 == regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                    return null;
+                }
+                literal.append(regex.charAt(++i));
+            } else if (REGEX_META_CHARS.indexOf(ch) >= 0) {
+                return null;
+            } else {
+                literal.append(ch);
+            }
+        }
+        return literal.toString();
+    }
+
+    /**
+     * Узел префиксного дерева
+     */
+    private static class PrefixNode {
+        private final Map<Character, PrefixNode> children = new HashMap<>();
+        private boolean terminal;
+
+        void add(String prefix) {
+            PrefixNode node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), key -> new PrefixNode());
+            }
+            node.terminal = true;
+        }
+
+        boolean matchesPrefixOf(String value) {
+            PrefixNode node = this;
+            for (int i = 0; ; i++) {
+                if (node.terminal) {
+                    return true;
+                }
+                if (i == value.length()) {
+                    return false;
+                }
+                node = node.children.get(value.charAt(i));
+                if (node == null) {
+                    return false;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.helper;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import ru.yoomoney.gradle.plugins.git.expired.branch.BranchInfo;
+import ru.yoomoney.gradle.plugins.git.expired.branch.git.CommitGraph;
+import ru.yoomoney.gradle.plugins.git.expired.branch.report.RunMetrics;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Сбор информации о последних коммитах веток.
+ * <p>
+ * Список ref'ов делится на шарды, каждый шард обрабатывается отдельным потоком.
+ * У каждого потока свои {@link ObjectReader} и {@link RevWalk} поверх общего {@link Repository},
+ * поэтому потоки не разделяют изменяемое состояние. Результаты шардов объединяются в исходном порядке ref'ов.
+ * <p>
+ * Для определения устаревания нужно только время последнего коммита. Если в репозитории есть commit-graph,
+ * время берется из него без чтения объектов коммитов. Коммиты устаревших веток разбираются тем же {@link RevWalk}
+ * шарда целиком, чтобы автор и сообщение были известны сразу, тело коммитов актуальных веток освобождается.
+ * <p>
+ * Если передан {@link BranchTipCache}, ref'ы, которые указывают на тот же коммит, что и в прошлый запуск,
+ * обрабатываются без обращения к базе объектов, из репозитория читаются только новые и сдвинутые ref'ы.
+ * Автор и сообщение коммитов устаревших веток сохраняются в кэш. При сборе устаревших веток
+ * ({@link #collectStale(List, long)}) из кэша удаляются записи ref'ов, которых больше нет среди переданных.
+ */
+public class BranchInfoCollector {
+    private static final Logger log = Logging.getLogger(BranchInfoCollector.class);
+
+    private final Repository repository;
+    private final int threads;
+    @Nullable
+    private final BranchTipCache branchTipCache;
+    private final RunMetrics metrics;
+
+    /**
+     * Конструктор
+     *
+     * @param repository репозиторий, из которого читаются коммиты
+     * @param threads    количество потоков, значения меньше 1 трактуются как 1
+     */
+    public BranchInfoCollector(Repository repository, int threads) {
+        this(repository, threads, null);
+    }
+
+    /**
+     * Конструктор
+     *
+     * @param repository     репозиторий, из которого читаются коммиты
+     * @param threads        количество потоков, значения меньше 1 трактуются как 1
+     * @param branchTipCache кэш последних коммитов веток, null если кэш не используется
+     */
+    public BranchInfoCollector(Repository repository, int threads, @Nullable BranchTipCache branchTipCache) {
+        this(repository, threads, branchTipCache, new RunMetrics());
+    }
+
+    /**
+     * Конструктор
+     *
+     * @param repository     репозиторий, из которого читаются коммиты
+     * @param threads        количество потоков, значения меньше 1 трактуются как 1
+     * @param branchTipCache кэш последних коммитов веток, null если кэш не используется
+     * @param metrics        метрики, в которых учитывается количество прочитанных коммитов
+     */
+    public BranchInfoCollector(Repository repository, int threads, @Nullable BranchTipCache branchTipCache,
+                               RunMetrics metrics) {
+        this.repository = repository;
+        this.threads = Math.max(1, threads);
+        this.branchTipCache = branchTipCache;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Получение последних коммитов для набора веток
+     *
+     * @param branches ref'ы веток
+     * @return информация о ветках в порядке переданных ref'ов
+     */
+    public List<BranchInfo> collect(List<Ref> branches) {
+        return collectShards(branches, Long.MAX_VALUE);
+    }
+
+    /**
+     * Получение устаревших веток.
+     * Если используется кэш, из него удаляются записи ref'ов, которых нет среди переданных,
+     * поэтому передаваться должны все отслеживаемые ref'ы репозитория
+     *
+     * @param branches         ref'ы веток
+     * @param staleTimeSeconds время в секундах, ветки с последним коммитом раньше которого считаются устаревшими
+     * @return информация об устаревших ветках в порядке переданных ref'ов
+     */
+    public List<BranchInfo> collectStale(List<Ref> branches, long staleTimeSeconds) {
+        List<BranchInfo> staleBranches = collectShards(branches, staleTimeSeconds).stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        if (branchTipCache != null) {
+            int removed = branchTipCache.retainAll(branches.stream()
+                    .map(Ref::getName)
+                    .collect(Collectors.toSet()));
+            log.info("Removed branch tip cache entries of deleted branches: removed={}", removed);
+        }
+        return staleBranches;
+    }
+
+    private List<BranchInfo> collectShards(List<Ref> branches, long staleTimeSeconds) {
+        Optional<CommitGraph> commitGraph = CommitGraph.open(repository);
+        int shardCount = Math.min(threads, branches.size());
+        if (shardCount <= 1) {
+            return collectShard(branches, commitGraph, staleTimeSeconds);
+        }
+
+        int shardSize = (branches.size() + shardCount - 1) / shardCount;
+        ExecutorService executor = Executors.newFixedThreadPool(shardCount, new CollectorThreadFactory());
+        try {
+            List<Future<List<BranchInfo>>> shards = new ArrayList<>(shardCount);
+            for (int from = 0; from < branches.size(); from += shardSize) {
+                List<Ref> shard = branches.subList(from, Math.min(from + shardSize, branches.size()));
+                shards.add(executor.submit(() -> collectShard(shard, commitGraph, staleTimeSeconds)));
+            }
+
+            List<BranchInfo> result = new ArrayList<>(branches.size());
+            for (Future<List<BranchInfo>> shard : shards) {
+                result.addAll(shard.get());
+            }
+            return result;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while collecting latest commits", ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException("Can't get latest commits", ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Обработка шарда ref'ов одним {@link RevWalk}
+     *
+     * @return информация об устаревших ветках, выровненная по ref'ам шарда, null для актуальных веток
+     */
+    private List<BranchInfo> collectShard(List<Ref> shard, Optional<CommitGraph> commitGraph, long staleTimeSeconds) {
+        if (shard.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<BranchInfo> result = new ArrayList<>(shard.size());
+        long parsedCommits = 0;
+        try (ObjectReader reader = repository.newObjectReader();
+             RevWalk walk = new RevWalk(reader)) {
+            for (Ref branch : shard) {
+                ObjectId tipId = branch.getObjectId();
+                Optional<BranchTipCache.Entry> cached = branchTipCache == null
+                        ? Optional.empty()
+                        : branchTipCache.get(branch.getName(), tipId);
+                if (cached.isPresent() && isResolved(cached.get(), staleTimeSeconds)) {
+                    result.add(cached.get().getCommitTime() < staleTimeSeconds ? fromCache(branch, cached.get()) : null);
+                    continue;
+                }
+
+                OptionalLong knownCommitTime = cached.isPresent()
+                        ? OptionalLong.of(cached.get().getCommitTime())
+                        : commitGraph.map(graph -> graph.findCommitTime(tipId)).orElse(OptionalLong.empty());
+                if (knownCommitTime.isPresent() && knownCommitTime.getAsLong() >= staleTimeSeconds) {
+                    putToCache(branch, knownCommitTime.getAsLong());
+                    result.add(null);
+                    continue;
+                }
+
+                RevCommit commit = walk.parseCommit(tipId);
+                parsedCommits++;
+                if (commit.getCommitTime() >= staleTimeSeconds) {
+                    commit.disposeBody();
+                    putToCache(branch, commit.getCommitTime());
+                    result.add(null);
+                    continue;
+                }
+                if (branchTipCache != null) {
+                    branchTipCache.put(branch.getName(), tipId, commit.getCommitTime(),
+                            commit.getAuthorIdent(), commit.getShortMessage());
+                }
+                result.add(new BranchInfo(branch, commit));
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Can't get latest commits", ex);
+        } finally {
+            metrics.increment(RunMetrics.Counter.OBJECTS_READ, parsedCommits);
+        }
+        return result;
+    }
+
+    /**
+     * Можно ли обработать ref по записи кэша без чтения коммита: ветка актуальна,
+     * либо для устаревшей ветки в кэше уже есть автор и сообщение коммита
+     */
+    private static boolean isResolved(BranchTipCache.Entry entry, long staleTimeSeconds) {
+        return entry.getCommitTime() >= staleTimeSeconds || entry.hasCommitDetails();
+    }
+
+    private void putToCache(Ref branch, long commitTime) {
+        if (branchTipCache != null) {
+            branchTipCache.put(branch.getName(), branch.getObjectId(), commitTime);
+        }
+    }
+
+    /**
+     * Информация о ветке из записи кэша с автором и сообщением коммита.
+     * Сам коммит читается из репозитория только при явном обращении к {@link BranchInfo#getLastCommit()}.
+     */
+    private BranchInfo fromCache(Ref branch, BranchTipCache.Entry entry) {
+        return new BranchInfo(branch, entry.getCommitTime(), entry.getAuthorIdent(), entry.getShortMessage(),
+                () -> loadCommit(entry.getTipId()));
+    }
+
+    private RevCommit loadCommit(ObjectId commitId) {
+        try (RevWalk walk = new RevWalk(repository)) {
+            metrics.increment(RunMetrics.Counter.OBJECTS_READ, 1);
+            return walk.parseCommit(commitId);
+        } catch (IOException ex) {
+            throw new RuntimeException("Can't get latest commit: commitId=" + commitId.getName(), ex);
+        }
+    }
+
+    /**
+     * Фабрика daemon-потоков сборщика, чтобы незавершенный сбор не блокировал остановку gradle
+     */
+    private static class CollectorThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "git-expired-branch-collector-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.helper;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import static java.util.Objects.requireNonNull;
+import static ru.yoomoney.gradle.plugins.git.expired.branch.helper.StoreFiles.readString;
+import static ru.yoomoney.gradle.plugins.git.expired.branch.helper.StoreFiles.writeString;
+
+/**
+ * Хранимый между запусками кэш последних коммитов веток.
+ * <p>
+ * Хранит для имени ref'а идентификатор последнего коммита, время коммита и, если коммит уже загружался, автора
+ * и короткое сообщение. Пока ref указывает на тот же коммит, данные берутся из кэша без обращения к базе объектов.
+ * Размер кэша ограничен, при переполнении вытесняются записи, к которым дольше всего не обращались.
+ * Поврежденный файл кэша удаляется, кэш в этом случае начинает работу с пустого состояния.
+ * Методы кэша потокобезопасны.
+ */
+public class BranchTipCache {
+    private static final Logger log = Logging.getLogger(BranchTipCache.class);
+
+    private static final int MAGIC = 0x47454243;
+    private static final int VERSION = 1;
+
+    private final File file;
+    private final Map<String, Entry> entries;
+    private boolean modified;
+
+    private BranchTipCache(File file, int maxEntries) {
+        this.file = file;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Загрузить кэш из файла
+     *
+     * @param file       файл кэша, может не существовать
+     * @param maxEntries максимальное количество записей в кэше
+     * @return кэш
+     */
+    public static BranchTipCache load(@Nonnull File file, int maxEntries) {
+        requireNonNull(file, "file");
+        BranchTipCache cache = new BranchTipCache(file, Math.max(1, maxEntries));
+        if (!file.isFile()) {
+            return cache;
+        }
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            cache.read(in);
+        } catch (IOException | RuntimeException exc) {
+            log.warn("Branch tip cache is corrupted and will be rebuilt: file={}", file, exc);
+            cache.entries.clear();
+            cache.modified = true;
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException deleteExc) {
+                log.warn("Can't delete corrupted branch tip cache: file={}", file, deleteExc);
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Получить запись для ref'а, если он указывает на тот же коммит, что и при сохранении записи
+     *
+     * @param refName имя ref'а
+     * @param tipId   текущий идентификатор объекта, на который указывает ref
+     * @return запись кэша
+     */
+    public synchronized Optional<Entry> get(@Nonnull String refName, @Nonnull AnyObjectId tipId) {
+        Entry entry = entries.get(refName);
+        if (entry == null || !entry.getTipId().equals(tipId)) {
+            return Optional.empty();
+        }
+        return Optional.of(entry);
+    }
+
+    /**
+     * Сохранить время коммита ref'а
+     *
+     * @param refName    имя ref'а
+     * @param tipId      идентификатор объекта, на который указывает ref
+     * @param commitTime время коммита в секундах
+     */
+    public synchronized void put(@Nonnull String refName, @Nonnull AnyObjectId tipId, long commitTime) {
+        put(refName, new Entry(tipId.copy(), commitTime, null, null));
+    }
+
+    /**
+     * Сохранить время, автора и сообщение коммита ref'а
+     *
+     * @param refName      имя ref'а
+     * @param tipId        идентификатор объекта, на который указывает ref
+     * @param commitTime   время коммита в секундах
+     * @param authorIdent  автор коммита
+     * @param shortMessage короткое сообщение коммита
+     */
+    public synchronized void put(@Nonnull String refName, @Nonnull AnyObjectId tipId, long commitTime,
+                                 @Nonnull PersonIdent authorIdent, @Nonnull String shortMessage) {
+        put(refName, new Entry(tipId.copy(), commitTime, authorIdent, shortMessage));
+    }
+
+    private void put(String refName, Entry entry) {
+        Entry previous = entries.put(requireNonNull(refName, "refName"), entry);
+        if (!entry.equals(previous)) {
+            modified = true;
+        }
+    }
+
+    /**
+     * Удалить записи ref'ов, которых больше нет в репозитории
+     *
+     * @param refNames имена существующих ref'ов
+     * @return количество удаленных записей
+     */
+    public synchronized int retainAll(@Nonnull Collection<String> refNames) {
+        requireNonNull(refNames, "refNames");
+        Set<String> retained = refNames instanceof Set ? (Set<String>) refNames : new HashSet<>(refNames);
+        int sizeBefore = entries.size();
+        entries.keySet().retainAll(retained);
+        int removed = sizeBefore - entries.size();
+        if (removed > 0) {
+            modified = true;
+        }
+        return removed;
+    }
+
+    /**
+     * Количество записей в кэше
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Сохранить кэш в файл, если он изменился
+     */
+    public synchronized void save() {
+        if (!modified) {
+            return;
+        }
+        try {
+            StoreFiles.writeAtomically(file, this::write);
+            modified = false;
+        } catch (IOException exc) {
+            log.warn("Can't save branch tip cache: file={}", file, exc);
+        }
+    }
+
+    private void read(InputStream in) throws IOException {
+        CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(in), new CRC32());
+        DataInputStream data = new DataInputStream(checked);
+        if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+            throw new IOException("Unknown branch tip cache format");
+        }
+        int count = data.readInt();
+        byte[] rawId = new byte[Constants.OBJECT_ID_LENGTH];
+        for (int i = 0; i < count; i++) {
+            String refName = readString(data);
+            data.readFully(rawId);
+            long commitTime = data.readLong();
+            PersonIdent authorIdent = null;
+            String shortMessage = null;
+            if (data.readBoolean()) {
+                authorIdent = new PersonIdent(readString(data), readString(data), data.readLong(), data.readInt());
+                shortMessage = readString(data);
+            }
+            entries.put(refName, new Entry(ObjectId.fromRaw(rawId), commitTime, authorIdent, shortMessage));
+        }
+        long checksum = checked.getChecksum().getValue();
+        if (data.readLong() != checksum) {
+            throw new IOException("Branch tip cache checksum mismatch");
+        }
+    }
+
+    private void write(OutputStream out) throws IOException {
+        CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(out), new CRC32());
+        DataOutputStream data = new DataOutputStream(checked);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(entries.size());
+        byte[] rawId = new byte[Constants.OBJECT_ID_LENGTH];
+        for (Map.Entry<String, Entry> cacheEntry : entries.entrySet()) {
+            Entry entry = cacheEntry.getValue();
+            writeString(data, cacheEntry.getKey());
+            entry.getTipId().copyRawTo(rawId, 0);
+            data.write(rawId);
+            data.writeLong(entry.getCommitTime());
+            PersonIdent authorIdent = entry.getAuthorIdent();
+            data.writeBoolean(authorIdent != null);
+            if (authorIdent != null) {
+                writeString(data, authorIdent.getName());
+                writeString(data, authorIdent.getEmailAddress());
+                data.writeLong(authorIdent.getWhen().getTime());
+                data.writeInt(authorIdent.getTimeZoneOffset());
+                writeString(data, entry.getShortMessage());
+            }
+        }
+        data.flush();
+        data.writeLong(checked.getChecksum().getValue());
+        data.flush();
+    }
+
+    /**
+     * Запись кэша
+     */
+    public static class Entry {
+        private final ObjectId tipId;
+        private final long commitTime;
+        @Nullable
+        private final PersonIdent authorIdent;
+        @Nullable
+        private final String shortMessage;
+
+        Entry(ObjectId tipId, long commitTime, @Nullable PersonIdent authorIdent, @Nullable String shortMessage) {
+            this.tipId = tipId;
+            this.commitTime = commitTime;
+            this.authorIdent = authorIdent;
+            this.shortMessage = shortMessage;
+        }
+
+        /**
+         * Идентификатор объекта, на который указывал ref
+         */
+        public ObjectId getTipId() {
+            return tipId;
+        }
+
+        /**
+         * Время коммита в секундах
+         */
+        public long getCommitTime() {
+            return commitTime;
+        }
+
+        /**
+         * Автор коммита, null если коммит еще не загружался
+         */
+        @Nullable
+        public PersonIdent getAuthorIdent() {
+            return authorIdent;
+        }
+
+        /**
+         * Короткое сообщение коммита, null если коммит еще не загружался
+         */
+        @Nullable
+        public String getShortMessage() {
+            return shortMessage;
+        }
+
+        /**
+         * Есть ли в записи автор и сообщение коммита
+         */
+        public boolean hasCommitDetails() {
+            return authorIdent != null && shortMessage != null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Entry entry = (Entry) o;
+            return commitTime == entry.commitTime
+                    && tipId.equals(entry.tipId)
+                    && Objects.equals(authorIdent, entry.authorIdent)
+                    && Objects.equals(shortMessage, entry.shortMessage);
+        }
+
+        @Override
+        public int hashCode() {
+            return tipId.hashCode();
+        }
+    }
+}
@@ -1,36 +1,57 @@
 package ru.yoomoney.gradle.plugins.git.expired.branch.helper;
 
-import org.eclipse.jgit.api.ListBranchCommand;
 import org.eclipse.jgit.api.LogCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.DiffFormatter;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.transport.FetchResult;
+import org.eclipse.jgit.transport.PushResult;
+import org.eclipse.jgit.transport.RefLeaseSpec;
 import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.RemoteConfig;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
+import org.eclipse.jgit.transport.TagOpt;
 import org.eclipse.jgit.transport.URIish;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
 import ru.yoomoney.gradle.plugins.git.expired.branch.BitbucketRepoInfo;
+import ru.yoomoney.gradle.plugins.git.expired.branch.BranchInfo;
 import ru.yoomoney.gradle.plugins.git.expired.branch.git.GitRepo;
 import ru.yoomoney.gradle.plugins.git.expired.branch.git.GitSettings;
 import ru.yoomoney.gradle.plugins.git.expired.branch.git.GitRepoFactory;
+import ru.yoomoney.gradle.plugins.git.expired.branch.git.RepositoryCoordinates;
+import ru.yoomoney.gradle.plugins.git.expired.branch.report.RunMetrics;
 
+import javax.annotation.Nullable;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.StreamSupport;
 
 import static java.lang.String.format;
@@ -44,39 +65,44 @@ import static java.lang.String.format;
 public class GitManager {
     private final Logger log = Logging.getLogger(GitManager.class);
 
-    private static final Pattern BITBUCKET_GIT_CLONE_URL =
-        Pattern.compile("ssh://git@(?<bitbucketUrl>.+)/(?<project>.+)/(?<repo>.+)\\.git");
+    private static final String ORIGIN = "origin";
+    private static final String ORIGIN_REFS_PREFIX = Constants.R_REMOTES + ORIGIN + "/";
 
     private final GitRepo git;
+    private final RunMetrics metrics;
+    @Nullable
+    private RepositoryCoordinates repositoryCoordinates;
 
     public GitManager(File projectDir, GitSettings gitSettings) {
+        this(projectDir, gitSettings, new RunMetrics());
+    }
+
+    /**
+     * Конструктор
+     *
+     * @param projectDir  локальная папка с репозиторием
+     * @param gitSettings настройки git
+     * @param metrics     метрики, в которых учитываются время операций с репозиторием и прочитанные объекты
+     */
+    public GitManager(File projectDir, GitSettings gitSettings, RunMetrics metrics) {
         GitRepoFactory gitRepoFactory = new GitRepoFactory(gitSettings);
         this.git = gitRepoFactory.createFromExistingDirectory(projectDir);
+        this.metrics = metrics;
     }
 
     /**
      * Получение информации из cloneUrl
      *
-     * @param cloneUrl ssh clone урл
-     * @return информация
+     * @param cloneUrl clone урл
+     * @return информация, пустая для нераспознанного урла
      */
     public BitbucketRepoInfo getInfoFromBitbucketCloneUrl(String cloneUrl) {
-        Matcher matcher = BITBUCKET_GIT_CLONE_URL.matcher(cloneUrl);
-
-        if (!matcher.matches()) {
-            log.lifecycle("Wrong cloneUrl: " + cloneUrl);
-            return new BitbucketRepoInfo("", "", "");
-        }
-
-        return new BitbucketRepoInfo(
-            matcher.group("bitbucketUrl"),
-            matcher.group("project"),
-            matcher.group("repo")
-        );
+        RepositoryCoordinates coordinates = RepositoryCoordinates.parse(cloneUrl);
+        return new BitbucketRepoInfo(coordinates.getHost(), coordinates.getProject(), coordinates.getRepository());
     }
 
     public String getBitbucketBranchesUrlFromCloneUrl(String cloneUrl) {
-        return getBitbucketUrlFromCloneUrl("https://%s/projects/%s/repos/%s/branches", cloneUrl);
+        return RepositoryCoordinates.parse(cloneUrl).getBranchesUrl();
     }
 
     /**
@@ -103,6 +129,76 @@ public class GitManager {
 
     }
 
+    /**
+     * Получение последних коммитов для набора веток.
+     * Все коммиты читаются одним {@link RevWalk} с общим {@link ObjectReader}.
+     *
+     * @param branches ref'ы веток
+     * @return информация о ветках в порядке переданных ref'ов
+     */
+    public List<BranchInfo> getLastCommitsFromBranches(Collection<Ref> branches) {
+        return getLastCommitsFromBranches(branches, 1);
+    }
+
+    /**
+     * Получение последних коммитов для набора веток в несколько потоков.
+     * Ref'ы делятся на шарды, каждый поток читает свой шард собственным {@link RevWalk}.
+     *
+     * @param branches ref'ы веток
+     * @param threads  количество потоков
+     * @return информация о ветках в порядке переданных ref'ов
+     * @see BranchInfoCollector
+     */
+    public List<BranchInfo> getLastCommitsFromBranches(Collection<Ref> branches, int threads) {
+        return getLastCommitsFromBranches(branches, threads, null);
+    }
+
+    /**
+     * Получение последних коммитов для набора веток в несколько потоков с использованием кэша.
+     * Ветки, которые указывают на тот же коммит, что и в кэше, не читаются из базы объектов.
+     *
+     * @param branches       ref'ы веток
+     * @param threads        количество потоков
+     * @param branchTipCache кэш последних коммитов веток, null если кэш не используется
+     * @return информация о ветках в порядке переданных ref'ов
+     * @see BranchInfoCollector
+     */
+    public List<BranchInfo> getLastCommitsFromBranches(Collection<Ref> branches, int threads,
+                                                       @Nullable BranchTipCache branchTipCache) {
+        return metrics.time(RunMetrics.Phase.COMMIT_PARSING, () ->
+                new BranchInfoCollector(git.getRepository(), threads, branchTipCache, metrics)
+                        .collect(new ArrayList<>(branches)));
+    }
+
+    /**
+     * Получение устаревших веток.
+     * Время коммита берется из кэша или commit-graph, если оно там есть, целиком разбираются только коммиты
+     * устаревших веток, чтобы автор и сообщение коммита были загружены тем же {@link RevWalk}.
+     * Записи кэша веток, которых нет среди переданных, удаляются.
+     *
+     * @param branches         ref'ы веток
+     * @param staleTimeSeconds время в секундах, ветки с последним коммитом раньше которого считаются устаревшими
+     * @param threads          количество потоков
+     * @param branchTipCache   кэш последних коммитов веток, null если кэш не используется
+     * @return информация об устаревших ветках в порядке переданных ref'ов
+     * @see BranchInfoCollector#collectStale(List, long)
+     */
+    public List<BranchInfo> getStaleBranches(Collection<Ref> branches, long staleTimeSeconds, int threads,
+                                             @Nullable BranchTipCache branchTipCache) {
+        return metrics.time(RunMetrics.Phase.COMMIT_PARSING, () ->
+                new BranchInfoCollector(git.getRepository(), threads, branchTipCache, metrics)
+                        .collectStale(new ArrayList<>(branches), staleTimeSeconds));
+    }
+
+    /**
+     * Получение файла кэша последних коммитов веток. Файл хранится в директории .git репозитория.
+     *
+     * @return файл кэша
+     */
+    public File getBranchTipCacheFile() {
+        return new File(git.getRepository().getDirectory(), "expired-branch/branch-tips.cache");
+    }
+
     /**
      * Получение RemoteConfig
      *
@@ -120,17 +216,36 @@ public class GitManager {
         return remoteConfig;
     }
 
+    /**
+     * Получение url удаленного репозитория origin
+     *
+     * @return url origin, null если origin не настроен
+     */
+    @Nullable
+    public String getRemoteUrl() {
+        return git.getRepository().getConfig().getString("remote", ORIGIN, "url");
+    }
+
+    /**
+     * Получение координат удаленного репозитория origin.
+     * Координаты разбираются из clone url при первом обращении и переиспользуются
+     *
+     * @return координаты удаленного репозитория
+     */
+    public synchronized RepositoryCoordinates getRepositoryCoordinates() {
+        if (repositoryCoordinates == null) {
+            repositoryCoordinates = RepositoryCoordinates.parse(getRemoteConfig().getURIs().get(0).toString());
+        }
+        return repositoryCoordinates;
+    }
+
     /**
      * Получение имени репозитория в битбакете
      *
      * @return имя удаленного репозитория
      */
     public String getRepositoryName() {
-        RemoteConfig remoteConfig = getRemoteConfig();
-        String cloneUrl = remoteConfig.getURIs().get(0).toString();
-        BitbucketRepoInfo info = getInfoFromBitbucketCloneUrl(cloneUrl);
-
-        return info.getRepo();
+        return getRepositoryCoordinates().getRepository();
     }
 
     /**
@@ -139,11 +254,7 @@ public class GitManager {
      * @return имя проекта
      */
     public String getProjectName() {
-        RemoteConfig remoteConfig = getRemoteConfig();
-        String cloneUrl = remoteConfig.getURIs().get(0).toString();
-        BitbucketRepoInfo info = getInfoFromBitbucketCloneUrl(cloneUrl);
-
-        return info.getProject();
+        return getRepositoryCoordinates().getProject();
     }
 
     /**
@@ -152,43 +263,133 @@ public class GitManager {
      * @return url проекта в битбакете
      */
     public String getBitbucketProjectBranchesUrl() {
-        RemoteConfig remoteConfig = getRemoteConfig();
-        String url = remoteConfig.getURIs().get(0).toString();
+        return getRepositoryCoordinates().getBranchesUrl();
+    }
+
+    /**
+     * Получить список всех remote бранчей
+     *
+     * @return список бранчей, отсортированный по имени
+     */
+    public List<Ref> getRemoteBranches() {
+        return getRemoteBranches(null);
+    }
 
-        return getBitbucketBranchesUrlFromCloneUrl(url);
+    /**
+     * Получить список remote бранчей.
+     * <p>
+     * Читаются только ref'ы с заданными префиксами, ref'ы вне этих префиксов не загружаются из репозитория.
+     * Префиксы, вложенные в другие префиксы, не читаются повторно.
+     *
+     * @param includePrefixes префиксы ref'ов веток (например, "refs/remotes/origin/feature/"),
+     *                        если не заданы, читаются все ветки из refs/remotes/
+     * @return список бранчей, отсортированный по имени
+     */
+    public List<Ref> getRemoteBranches(@Nullable Collection<String> includePrefixes) {
+        List<Ref> branches = metrics.time(RunMetrics.Phase.REF_LISTING, () -> readRemoteBranches(includePrefixes));
+        metrics.increment(RunMetrics.Counter.REFS_SCANNED, branches.size());
+        return branches;
     }
 
     /**
-     * Возвращает адрес до битбакета
+     * Обновить ветки из origin.
+     * <p>
+     * Забираются только ветки из префиксов includePrefixes и master, теги не забираются.
+     * Ветки, удаленные в origin, удаляются локально. Неглубокий и частичный fetch в JGit 5 не поддерживаются,
+     * поэтому забирается история веток, но только объекты, которых еще нет в локальном репозитории.
      *
-     * @param format формат
-     * @param cloneUrl ssh урл
-     * @return url в битбакете
+     * @param includePrefixes префиксы ref'ов веток, если не заданы, забираются все ветки
+     * @return количество обновленных и удаленных ref'ов
      */
-    private String getBitbucketUrlFromCloneUrl(String format, String cloneUrl) {
-        BitbucketRepoInfo info = getInfoFromBitbucketCloneUrl(cloneUrl);
+    public int fetchRemoteBranches(@Nullable Collection<String> includePrefixes) {
+        List<RefSpec> refSpecs = getFetchRefSpecs(includePrefixes);
+        FetchResult result = metrics.time(RunMetrics.Phase.FETCH, () -> git.fetch(fetchCommand -> fetchCommand
+                .setRemote(ORIGIN)
+                .setRefSpecs(refSpecs)
+                .setRemoveDeletedRefs(true)
+                .setTagOpt(TagOpt.NO_TAGS)));
+        int updatedRefs = result.getTrackingRefUpdates().size();
+        log.lifecycle("Fetched branches from origin: refSpecs={}, updatedRefs={}", refSpecs, updatedRefs);
+        return updatedRefs;
+    }
 
-        return String.format(
-                format,
-                info.getBitbucketUrl(),
-                info.getProject(),
-                info.getRepo()
-        );
+    /**
+     * Получить refspec'и для обновления веток из origin по префиксам ref'ов веток.
+     * Если префикс не сводится к ветке origin (например, refs/remotes/), забираются все ветки
+     */
+    static List<RefSpec> getFetchRefSpecs(@Nullable Collection<String> includePrefixes) {
+        RefSpec allBranches = new RefSpec("+" + Constants.R_HEADS + "*:" + ORIGIN_REFS_PREFIX + "*");
+        if (includePrefixes == null || includePrefixes.isEmpty()) {
+            return Collections.singletonList(allBranches);
+        }
+        Set<RefSpec> refSpecs = new LinkedHashSet<>();
+        refSpecs.add(new RefSpec("+" + Constants.R_HEADS + Constants.MASTER + ":"
+                + ORIGIN_REFS_PREFIX + Constants.MASTER));
+        for (String prefix : includePrefixes) {
+            if (prefix.startsWith(ORIGIN_REFS_PREFIX) && prefix.length() > ORIGIN_REFS_PREFIX.length()
+                    && prefix.endsWith("/")) {
+                String branchPrefix = prefix.substring(ORIGIN_REFS_PREFIX.length());
+                refSpecs.add(new RefSpec("+" + Constants.R_HEADS + branchPrefix + "*:" + prefix + "*"));
+            } else if (ORIGIN_REFS_PREFIX.startsWith(prefix) || prefix.startsWith(ORIGIN_REFS_PREFIX)) {
+                return Collections.singletonList(allBranches);
+            }
+        }
+        return new ArrayList<>(refSpecs);
     }
 
     /**
-     * Получить список remote бранчей.
+     * Загрузить соответствие псевдонимов авторов из .mailmap репозитория
      *
-     * @return список бранчей
+     * @return соответствие псевдонимов авторов, пустое если в репозитории нет .mailmap
      */
-    public List<Ref> getRemoteBranches() {
-        ListBranchCommand listOperation = git.branchList()
-            .setListMode(ListBranchCommand.ListMode.REMOTE);
+    public MailMap loadMailMap() {
+        return MailMap.load(git.getRepository());
+    }
+
+    /**
+     * Получить ветку по полному имени ref'а
+     *
+     * @param refName имя ref'а, например refs/remotes/origin/feature/BACKEND-1
+     * @return ref ветки, пустой если ветка не найдена
+     */
+    public Optional<Ref> findBranch(String refName) {
         try {
-            return listOperation.call();
-        } catch (GitAPIException ex) {
+            return Optional.ofNullable(git.getRepository().exactRef(refName));
+        } catch (IOException ex) {
+            throw new RuntimeException("Can't read ref: refName=" + refName, ex);
+        }
+    }
+
+    private List<Ref> readRemoteBranches(@Nullable Collection<String> includePrefixes) {
+        Map<String, Ref> branches = new TreeMap<>();
+        try {
+            RefDatabase refDatabase = git.getRepository().getRefDatabase();
+            for (String prefix : normalizeBranchPrefixes(includePrefixes)) {
+                for (Ref ref : refDatabase.getRefsByPrefix(prefix)) {
+                    branches.putIfAbsent(ref.getName(), ref);
+                }
+            }
+        } catch (IOException ex) {
             throw new RuntimeException("Can't get remote branches", ex);
         }
+        return new ArrayList<>(branches.values());
+    }
+
+    private static Collection<String> normalizeBranchPrefixes(@Nullable Collection<String> includePrefixes) {
+        if (includePrefixes == null || includePrefixes.isEmpty()) {
+            return Collections.singletonList(Constants.R_REMOTES);
+        }
+        List<String> result = new ArrayList<>();
+        for (String prefix : new TreeSet<>(includePrefixes)) {
+            if (!prefix.startsWith(Constants.R_REMOTES)) {
+                throw new IllegalArgumentException(
+                        format("Branch prefix must start with %s: prefix=%s", Constants.R_REMOTES, prefix));
+            }
+            if (result.isEmpty() || !prefix.startsWith(result.get(result.size() - 1))) {
+                result.add(prefix);
+            }
+        }
+        return result;
     }
 
     /**
@@ -216,6 +417,121 @@ public class GitManager {
         }
     }
 
+    /**
+     * Удалить ветки локально и в удалённом репозитории.
+     * Ветки удаляются пачками, все удаления пачки отправляются одним push,
+     * поэтому соединение с удалённым репозиторием и получение списка его ref'ов выполняются один раз на пачку.
+     *
+     * @param branchNames названия веток для удаления (например, "feature/BACKEND-1")
+     * @param batchSize   количество веток в одном push, значения меньше 1 означают удаление всех веток одним push
+     * @return статус удаления в удалённом репозитории для каждой ветки, в порядке переданных веток.
+     * Ветки пачки, push которой не удался целиком, получают статус REJECTED_OTHER_REASON,
+     * остальные пачки при этом обрабатываются
+     */
+    public Map<String, RemoteRefUpdate.Status> deleteRemoteBranches(Collection<String> branchNames, int batchSize) {
+        return deleteRemoteBranches(branchNames, Collections.emptyMap(), batchSize);
+    }
+
+    /**
+     * Удалить ветки локально и в удалённом репозитории с проверкой последних коммитов веток.
+     * Ветка удаляется в удалённом репозитории, только если она указывает на ожидаемый коммит,
+     * иначе её удаление отклоняется со статусом REJECTED_REMOTE_CHANGED.
+     * Проверка выполняется удалённым репозиторием при push, поэтому не зависит от актуальности локальных ref'ов origin
+     *
+     * @param branchNames  названия веток для удаления (например, "feature/BACKEND-1")
+     * @param expectedTips ожидаемые идентификаторы последних коммитов по названию ветки,
+     *                     ветки без ожидаемого коммита удаляются без проверки
+     * @param batchSize    количество веток в одном push, значения меньше 1 означают удаление всех веток одним push
+     * @return статус удаления в удалённом репозитории для каждой ветки, в порядке переданных веток.
+     * Ветки пачки, push которой не удался целиком, получают статус REJECTED_OTHER_REASON,
+     * остальные пачки при этом обрабатываются
+     */
+    public Map<String, RemoteRefUpdate.Status> deleteRemoteBranches(Collection<String> branchNames,
+                                                                    Map<String, String> expectedTips,
+                                                                    int batchSize) {
+        return metrics.time(RunMetrics.Phase.DELETE_PUSH,
+                () -> deleteRemoteBranchesInBatches(branchNames, expectedTips, batchSize));
+    }
+
+    private Map<String, RemoteRefUpdate.Status> deleteRemoteBranchesInBatches(Collection<String> branchNames,
+                                                                              Map<String, String> expectedTips,
+                                                                              int batchSize) {
+        List<String> names = new ArrayList<>(branchNames);
+        int chunkSize = batchSize < 1 ? Math.max(1, names.size()) : batchSize;
+        Map<String, RemoteRefUpdate.Status> statuses = new LinkedHashMap<>();
+        for (int from = 0; from < names.size(); from += chunkSize) {
+            statuses.putAll(deleteRemoteBranchesChunk(
+                    names.subList(from, Math.min(from + chunkSize, names.size())), expectedTips));
+        }
+        return statuses;
+    }
+
+    private Map<String, RemoteRefUpdate.Status> deleteRemoteBranchesChunk(List<String> branchNames,
+                                                                          Map<String, String> expectedTips) {
+        log.lifecycle("delete branches: from={}", branchNames);
+        Map<String, RemoteRefUpdate.Status> statuses = new LinkedHashMap<>();
+        List<RefSpec> refSpecs = new ArrayList<>();
+        List<RefLeaseSpec> refLeaseSpecs = new ArrayList<>();
+        for (String branchName : branchNames) {
+            try {
+                git.branchDelete().setBranchNames(branchName).call();
+            } catch (GitAPIException ex) {
+                log.warn("Can't delete local branch, skip remote deletion: branchName={}", branchName, ex);
+                statuses.put(branchName, RemoteRefUpdate.Status.REJECTED_OTHER_REASON);
+                continue;
+            }
+            //аналог команды git push origin :branchName
+            refSpecs.add(new RefSpec()
+                    .setSource(null)
+                    .setDestination(Constants.R_HEADS + branchName));
+            String expectedTip = expectedTips.get(branchName);
+            if (expectedTip != null) {
+                refLeaseSpecs.add(new RefLeaseSpec(Constants.R_HEADS + branchName, expectedTip));
+            }
+            statuses.put(branchName, RemoteRefUpdate.Status.NOT_ATTEMPTED);
+        }
+        if (refSpecs.isEmpty()) {
+            return statuses;
+        }
+
+        AtomicBoolean pushed = new AtomicBoolean();
+        Optional<String> resultMessage = git.push(deletePushCommand -> deletePushCommand
+                        .setRefSpecs(refSpecs)
+                        .setRefLeaseSpecs(refLeaseSpecs)
+                        .setRemote("origin"),
+                pushResults -> {
+                    pushed.set(true);
+                    updateDeletionStatuses(pushResults, statuses);
+                });
+        if (pushed.get()) {
+            // статусы ref'ов получены от удалённого репозитория, сообщение содержит только его вывод
+            resultMessage.ifPresent(message -> log.info("Branches deletion push message: message={}", message));
+        } else {
+            log.warn("Can't push branches deletion: branchNames={}, message={}", branchNames,
+                    resultMessage.orElse(null));
+            statuses.replaceAll((branchName, status) -> status == RemoteRefUpdate.Status.NOT_ATTEMPTED
+                    ? RemoteRefUpdate.Status.REJECTED_OTHER_REASON
+                    : status);
+        }
+        return statuses;
+    }
+
+    private void updateDeletionStatuses(Iterable<PushResult> pushResults,
+                                        Map<String, RemoteRefUpdate.Status> statuses) {
+        for (PushResult pushResult : pushResults) {
+            for (RemoteRefUpdate update : pushResult.getRemoteUpdates()) {
+                String branchName = Repository.shortenRefName(update.getRemoteName());
+                if (statuses.containsKey(branchName)) {
+                    statuses.put(branchName, update.getStatus());
+                    if (update.getStatus() != RemoteRefUpdate.Status.OK) {
+                        log.warn("Branch was not deleted: branchName={}, status={}, message={}",
+                                branchName, update.getStatus(), update.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Сформировать diff для ветки branchName относительно HEAD
      * <p>
@@ -230,10 +546,36 @@ public class GitManager {
      * @see <a href="https://stackoverflow.com/q/53569/1756750">https://stackoverflow.com/q/53569/1756750</a>
      */
     public String makeDiffBranch(String branchName) {
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+            writeDiffBranch(branchName, baos, 0);
+            return baos.toString();
+        } catch (IOException ex) {
+            throw new RuntimeException(format("Can't get diff between HEAD and branch, branchName:%s", branchName), ex);
+        }
+    }
+
+    /**
+     * Записать diff для ветки branchName относительно HEAD в поток, не накапливая его в памяти.
+     * Если размер diff превышает maxBytes, diff обрезается и в конец дописывается маркер обрезки.
+     *
+     * @param branchName - название ветки, для которой требуется diff
+     * @param out        - поток, в который записывается diff
+     * @param maxBytes   - максимальный размер diff в байтах, значения меньше 1 означают отсутствие ограничения
+     * @return true, если diff был обрезан
+     * @see #makeDiffBranch(String)
+     */
+    public boolean writeDiffBranch(String branchName, OutputStream out, long maxBytes) {
+        return metrics.time(RunMetrics.Phase.DIFF, () -> writeLimitedDiffBranch(branchName, out, maxBytes));
+    }
+
+    private boolean writeLimitedDiffBranch(String branchName, OutputStream out, long maxBytes) {
         Repository repository = git.getRepository();
+        SizeLimitedOutputStream limitedOut = new SizeLimitedOutputStream(out,
+                maxBytes < 1 ? Long.MAX_VALUE : maxBytes,
+                format("%n# diff truncated: size limit of %d bytes exceeded%n", maxBytes).getBytes(StandardCharsets.UTF_8));
 
         try (ObjectReader reader = repository.newObjectReader();
-             ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+             DiffFormatter diffFormatter = new DiffFormatter(limitedOut)) {
 
             ObjectId from = repository.resolve("HEAD^{tree}");
             ObjectId to = repository.resolve(branchName + "^{tree}");
@@ -243,14 +585,17 @@ public class GitManager {
             CanonicalTreeParser newTreeIter = new CanonicalTreeParser();
             newTreeIter.reset(reader, to);
 
-            git.diff()
-                    .setNewTree(newTreeIter)
-                    .setOldTree(oldTreeIter)
-                    .setOutputStream(baos)
-                    .call();
-            return baos.toString();
-        } catch (IOException | GitAPIException ex) {
+            diffFormatter.setRepository(repository);
+            diffFormatter.format(oldTreeIter, newTreeIter);
+            diffFormatter.flush();
+            return false;
+        } catch (SizeLimitedOutputStream.SizeLimitExceededException ex) {
+            log.warn("Diff is too large and was truncated: branchName={}, maxBytes={}", branchName, maxBytes);
+            return true;
+        } catch (IOException ex) {
             throw new RuntimeException(format("Can't get diff between HEAD and branch, branchName:%s", branchName), ex);
+        } finally {
+            metrics.increment(RunMetrics.Counter.BYTES_DIFFED, limitedOut.getWritten());
         }
     }
 
@@ -271,8 +616,7 @@ public class GitManager {
      * @return - идентификатор коммита
      */
     public Optional<String> getGoodCommonAncestorsCommit(String baseBranchName, String branchName) {
-        try {
-            RevWalk walk = new RevWalk(git.getRepository());
+        try (RevWalk walk = new RevWalk(git.getRepository())) {
             RevCommit revBaseBranch = walk.lookupCommit(git.getRepository().findRef(baseBranchName).getObjectId());
             RevCommit revBranch = walk.lookupCommit(git.getRepository().findRef(branchName).getObjectId());
             walk.setRevFilter(RevFilter.MERGE_BASE);
@@ -286,6 +630,53 @@ public class GitManager {
         }
     }
 
+    /**
+     * Найти наименьших общих предков с веткой {@code baseBranchName} сразу для нескольких веток.
+     * <p>
+     * Общий предок каждой ветки ищется фильтром {@link RevFilter#MERGE_BASE}, который обходит историю только
+     * до общего предка, а не всю историю ветки {@code baseBranchName}. Для всех веток используется один
+     * {@link RevWalk}, который сбрасывается между ветками, поэтому уже разобранные коммиты повторно не читаются.
+     *
+     * @param baseBranchName - ветка, от которой отводились ветки {@code branchNames}.
+     * @param branchNames    - ветки, для которых требуется узнать идентификатор родительского коммита.
+     * @return - идентификаторы коммитов по названиям веток, ветки без общего предка в результат не попадают
+     */
+    public Map<String, String> getGoodCommonAncestorsCommits(String baseBranchName, Collection<String> branchNames) {
+        return metrics.time(RunMetrics.Phase.MERGE_BASE, () -> findGoodCommonAncestorsCommits(baseBranchName, branchNames));
+    }
+
+    private Map<String, String> findGoodCommonAncestorsCommits(String baseBranchName, Collection<String> branchNames) {
+        Map<String, String> commonAncestors = new LinkedHashMap<>();
+        Repository repository = git.getRepository();
+        try (RevWalk walk = new RevWalk(repository)) {
+            walk.setRetainBody(false);
+            walk.setRevFilter(RevFilter.MERGE_BASE);
+            Ref baseBranch = repository.findRef(baseBranchName);
+            if (baseBranch == null) {
+                log.warn("Base branch not found: baseBranchName={}", baseBranchName);
+                return commonAncestors;
+            }
+            RevCommit baseCommit = walk.parseCommit(baseBranch.getObjectId());
+            for (String branchName : branchNames) {
+                Ref branch = repository.findRef(branchName);
+                if (branch == null) {
+                    log.warn("Branch not found: branchName={}", branchName);
+                    continue;
+                }
+                walk.reset();
+                walk.markStart(baseCommit);
+                walk.markStart(walk.parseCommit(branch.getObjectId()));
+                RevCommit mergeBase = walk.next();
+                if (mergeBase != null) {
+                    commonAncestors.put(branchName, mergeBase.getId().getName());
+                }
+            }
+            return commonAncestors;
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Can't find common ancestors: baseBranchName=%s", baseBranchName), e);
+        }
+    }
+
     /**
      * Добавляет файлы, коммитит и пушит в указанную ветку
      *
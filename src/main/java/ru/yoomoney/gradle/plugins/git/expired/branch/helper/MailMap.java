@@ -0,0 +1,217 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.helper;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Соответствие псевдонимов авторов их каноническим именам и email из файла .mailmap репозитория.
+ * <p>
+ * Поддерживаются все форматы строк .mailmap:
+ * <pre>
+ * Proper Name &lt;commit@email&gt;
+ * &lt;proper@email&gt; &lt;commit@email&gt;
+ * Proper Name &lt;proper@email&gt; &lt;commit@email&gt;
+ * Proper Name &lt;proper@email&gt; Commit Name &lt;commit@email&gt;
+ * </pre>
+ * Файл разбирается один раз в хэш-индекс по email коммита, поэтому поиск канонической личности не зависит
+ * от размера файла. Email и имена коммитов сравниваются без учета регистра.
+ */
+public class MailMap {
+    private static final Logger log = Logging.getLogger(MailMap.class);
+
+    private static final String MAILMAP_FILE = ".mailmap";
+    private static final String ORIGIN_MASTER = Constants.R_REMOTES + "origin/" + Constants.MASTER;
+
+    private static final MailMap EMPTY = new MailMap(Collections.emptyMap());
+
+    private final Map<String, Entry> entriesByEmail;
+
+    private MailMap(Map<String, Entry> entriesByEmail) {
+        this.entriesByEmail = entriesByEmail;
+    }
+
+    /**
+     * Пустое соответствие, личность автора определяется только по email коммита
+     *
+     * @return пустое соответствие
+     */
+    public static MailMap empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Загрузить .mailmap репозитория.
+     * Файл читается из рабочей директории, а для bare-репозитория - из HEAD или origin/master.
+     *
+     * @param repository репозиторий
+     * @return соответствие псевдонимов авторов, пустое если в репозитории нет .mailmap
+     */
+    public static MailMap load(@Nonnull Repository repository) {
+        requireNonNull(repository, "repository");
+        try {
+            if (!repository.isBare()) {
+                File file = new File(repository.getWorkTree(), MAILMAP_FILE);
+                return file.isFile()
+                        ? parse(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8))
+                        : EMPTY;
+            }
+            for (String revision : new String[]{Constants.HEAD, ORIGIN_MASTER}) {
+                ObjectId blobId = repository.resolve(revision + ":" + MAILMAP_FILE);
+                if (blobId != null) {
+                    return parse(new String(repository.open(blobId, Constants.OBJ_BLOB).getBytes(),
+                            StandardCharsets.UTF_8));
+                }
+            }
+            return EMPTY;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Can't read .mailmap, authors will be grouped by commit email: repository={}",
+                    repository.getDirectory(), e);
+            return EMPTY;
+        }
+    }
+
+    /**
+     * Разобрать содержимое файла .mailmap
+     *
+     * @param content содержимое файла
+     * @return соответствие псевдонимов авторов
+     */
+    public static MailMap parse(@Nonnull String content) {
+        requireNonNull(content, "content");
+        Map<String, Entry> entriesByEmail = new HashMap<>();
+        for (String line : content.split("\r?\n")) {
+            parseLine(line, entriesByEmail);
+        }
+        return entriesByEmail.isEmpty() ? EMPTY : new MailMap(entriesByEmail);
+    }
+
+    private static void parseLine(String line, Map<String, Entry> entriesByEmail) {
+        if (line.trim().isEmpty() || line.trim().startsWith("#")) {
+            return;
+        }
+        int firstOpen = line.indexOf('<');
+        int firstClose = firstOpen < 0 ? -1 : line.indexOf('>', firstOpen);
+        if (firstClose < 0) {
+            return;
+        }
+        String firstName = emptyToNull(line.substring(0, firstOpen).trim());
+        String firstEmail = line.substring(firstOpen + 1, firstClose).trim();
+
+        int secondOpen = line.indexOf('<', firstClose);
+        int secondClose = secondOpen < 0 ? -1 : line.indexOf('>', secondOpen);
+        if (secondClose < 0) {
+            if (firstName != null) {
+                entriesByEmail.computeIfAbsent(AuthorIdentity.normalizeEmail(firstEmail), email -> new Entry())
+                        .setTarget(null, new Target(firstName, null));
+            }
+            return;
+        }
+        String commitName = emptyToNull(line.substring(firstClose + 1, secondOpen).trim());
+        String commitEmail = line.substring(secondOpen + 1, secondClose).trim();
+        entriesByEmail.computeIfAbsent(AuthorIdentity.normalizeEmail(commitEmail), email -> new Entry())
+                .setTarget(commitName, new Target(firstName, emptyToNull(firstEmail)));
+    }
+
+    @Nullable
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Определить каноническую личность автора коммита
+     *
+     * @param person автор коммита
+     * @return каноническая личность автора
+     */
+    public AuthorIdentity resolve(@Nonnull PersonIdent person) {
+        requireNonNull(person, "person");
+        return resolve(person.getName(), person.getEmailAddress());
+    }
+
+    /**
+     * Определить каноническую личность автора коммита
+     *
+     * @param name  имя автора коммита
+     * @param email email автора коммита
+     * @return каноническая личность автора
+     */
+    public AuthorIdentity resolve(@Nonnull String name, @Nonnull String email) {
+        requireNonNull(name, "name");
+        requireNonNull(email, "email");
+        Entry entry = entriesByEmail.get(AuthorIdentity.normalizeEmail(email));
+        Target target = entry == null ? null : entry.find(name);
+        if (target == null) {
+            return new AuthorIdentity(name, email);
+        }
+        return new AuthorIdentity(
+                target.name != null ? target.name : name,
+                target.email != null ? target.email : email);
+    }
+
+    /**
+     * Записи .mailmap для одного email коммита
+     */
+    private static class Entry {
+        @Nullable
+        private Target anyName;
+        private final Map<String, Target> byName = new HashMap<>();
+
+        void setTarget(@Nullable String commitName, Target target) {
+            if (commitName == null) {
+                anyName = merge(anyName, target);
+            } else {
+                byName.merge(commitName.toLowerCase(Locale.ROOT), target, MailMap.Entry::merge);
+            }
+        }
+
+        @Nullable
+        Target find(String commitName) {
+            Target target = byName.isEmpty() ? null : byName.get(commitName.toLowerCase(Locale.ROOT));
+            return target != null ? target : anyName;
+        }
+
+        /**
+         * Строки .mailmap для одного email дополняют друг друга, как в git:
+         * например, одна строка задает каноническое имя, другая - канонический email
+         */
+        private static Target merge(@Nullable Target previous, Target next) {
+            if (previous == null) {
+                return next;
+            }
+            return new Target(next.name != null ? next.name : previous.name,
+                    next.email != null ? next.email : previous.email);
+        }
+    }
+
+    /**
+     * Каноническое имя и email, null если не заменяются
+     */
+    private static class Target {
+        @Nullable
+        private final String name;
+        @Nullable
+        private final String email;
+
+        Target(@Nullable String name, @Nullable String email) {
+            this.name = name;
+            this.email = email;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.helper;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Обработка нескольких репозиториев в одном запуске задачи.
+ * <p>
+ * Репозитории обрабатываются пулом из ограниченного количества потоков. Ошибка обработки одного репозитория
+ * не прерывает обработку остальных: она логируется и возвращается в результатах вместе с результатами
+ * успешно обработанных репозиториев.
+ */
+public class RepositoryScanner {
+    private static final Logger log = Logging.getLogger(RepositoryScanner.class);
+
+    private RepositoryScanner() {
+    }
+
+    /**
+     * Обработать репозитории
+     *
+     * @param repoDirs локальные папки с репозиториями
+     * @param threads  количество одновременно обрабатываемых репозиториев
+     * @param action   обработка одного репозитория
+     * @param <T>      тип результата обработки репозитория
+     * @return результаты обработки в порядке переданных репозиториев
+     */
+    public static <T> Results<T> scan(@Nonnull Collection<File> repoDirs, int threads,
+                                      @Nonnull Function<File, T> action) {
+        requireNonNull(repoDirs, "repoDirs");
+        requireNonNull(action, "action");
+        List<File> repositories = new ArrayList<>(repoDirs);
+        Map<File, T> results = new LinkedHashMap<>();
+        Map<File, RuntimeException> failures = new LinkedHashMap<>();
+        if (repositories.size() == 1) {
+            File repoDir = repositories.get(0);
+            try {
+                results.put(repoDir, action.apply(repoDir));
+            } catch (RuntimeException e) {
+                log.error("Can't process repository: repoDir={}", repoDir, e);
+                failures.put(repoDir, e);
+            }
+            return new Results<>(results, failures);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(threads, repositories.size())), new ScannerThreadFactory());
+        try {
+            Map<File, Future<T>> futures = new LinkedHashMap<>();
+            for (File repoDir : repositories) {
+                futures.put(repoDir, executor.submit(() -> action.apply(repoDir)));
+            }
+            for (Map.Entry<File, Future<T>> future : futures.entrySet()) {
+                try {
+                    results.put(future.getKey(), future.getValue().get());
+                } catch (ExecutionException e) {
+                    RuntimeException failure = e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause()
+                            : new RuntimeException("Can't process repository", e.getCause());
+                    log.error("Can't process repository: repoDir={}", future.getKey(), failure);
+                    failures.put(future.getKey(), failure);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while processing repositories", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        return new Results<>(results, failures);
+    }
+
+    /**
+     * Результаты обработки репозиториев
+     *
+     * @param <T> тип результата обработки репозитория
+     */
+    public static class Results<T> {
+        private final Map<File, T> results;
+        private final Map<File, RuntimeException> failures;
+
+        Results(Map<File, T> results, Map<File, RuntimeException> failures) {
+            this.results = Collections.unmodifiableMap(results);
+            this.failures = Collections.unmodifiableMap(failures);
+        }
+
+        /**
+         * Результаты успешно обработанных репозиториев
+         */
+        public Map<File, T> getResults() {
+            return results;
+        }
+
+        /**
+         * Ошибки обработки репозиториев
+         */
+        public Map<File, RuntimeException> getFailures() {
+            return failures;
+        }
+
+        /**
+         * Выбросить исключение, если какой-либо репозиторий не удалось обработать
+         */
+        public void throwIfFailed() {
+            if (failures.isEmpty()) {
+                return;
+            }
+            RuntimeException exception = new RuntimeException("Can't process repositories: " + failures.keySet());
+            failures.values().forEach(exception::addSuppressed);
+            throw exception;
+        }
+    }
+
+    /**
+     * Фабрика daemon-потоков, чтобы незавершенная обработка не блокировала остановку gradle
+     */
+    private static class ScannerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "git-expired-branch-repository-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.helper;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Поток, пропускающий не больше заданного количества байт.
+ * При превышении лимита в поток дописывается маркер обрезки и выбрасывается {@link SizeLimitExceededException},
+ * чтобы прервать дальнейшее формирование данных.
+ */
+class SizeLimitedOutputStream extends FilterOutputStream {
+
+    private final long maxBytes;
+    private final byte[] truncationMarker;
+    private long written;
+    private boolean truncated;
+
+    /**
+     * Конструктор
+     *
+     * @param out              поток, в который пишутся данные
+     * @param maxBytes         максимальное количество байт данных
+     * @param truncationMarker маркер, который дописывается при обрезке данных
+     */
+    SizeLimitedOutputStream(OutputStream out, long maxBytes, byte[] truncationMarker) {
+        super(out);
+        this.maxBytes = maxBytes;
+        this.truncationMarker = truncationMarker.clone();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (written >= maxBytes) {
+            truncate();
+        }
+        out.write(b);
+        written++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        long remaining = maxBytes - written;
+        if (len <= remaining) {
+            out.write(b, off, len);
+            written += len;
+            return;
+        }
+        if (remaining > 0) {
+            out.write(b, off, (int) remaining);
+            written += remaining;
+        }
+        truncate();
+    }
+
+    /**
+     * Количество записанных байт данных без учета маркера обрезки
+     */
+    long getWritten() {
+        return written;
+    }
+
+    private void truncate() throws IOException {
+        if (!truncated) {
+            truncated = true;
+            out.write(truncationMarker);
+        }
+        throw new SizeLimitExceededException(maxBytes);
+    }
+
+    /**
+     * Превышен лимит на размер данных
+     */
+    static class SizeLimitExceededException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        SizeLimitExceededException(long maxBytes) {
+            super("Size limit exceeded: maxBytes=" + maxBytes);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.helper;
+
+import javax.annotation.Nonnull;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Общие операции с файлами, в которых плагин хранит состояние между запусками
+ */
+public final class StoreFiles {
+    private static final int MAX_STRING_LENGTH = 1024 * 1024;
+
+    private StoreFiles() {
+    }
+
+    /**
+     * Записать файл атомарно: содержимое пишется во временный файл рядом с целевым, который затем заменяет целевой.
+     * При падении во время записи прежнее содержимое файла не теряется
+     *
+     * @param file    целевой файл
+     * @param content запись содержимого файла
+     * @throws IOException ошибка записи
+     */
+    public static void writeAtomically(@Nonnull File file, @Nonnull Content content) throws IOException {
+        requireNonNull(file, "file");
+        requireNonNull(content, "content");
+        Path target = file.toPath().toAbsolutePath();
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                content.writeTo(out);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException exc) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Прочитать строку, записанную {@link #writeString(DataOutputStream, String)}
+     *
+     * @param data поток
+     * @return строка
+     * @throws IOException ошибка чтения или некорректная длина строки
+     */
+    public static String readString(@Nonnull DataInputStream data) throws IOException {
+        int length = data.readInt();
+        if (length < 0 || length > MAX_STRING_LENGTH) {
+            throw new IOException("Invalid string length: length=" + length);
+        }
+        byte[] bytes = new byte[length];
+        data.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Записать строку в UTF-8 с префиксом длины
+     *
+     * @param data  поток
+     * @param value строка
+     * @throws IOException ошибка записи
+     */
+    public static void writeString(@Nonnull DataOutputStream data, @Nonnull String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    /**
+     * Запись содержимого файла
+     */
+    @FunctionalInterface
+    public interface Content {
+        /**
+         * Записать содержимое
+         *
+         * @param out поток временного файла
+         * @throws IOException ошибка записи
+         */
+        void writeTo(OutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,381 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.notification;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import ru.yoomoney.gradle.plugins.git.expired.branch.helper.StoreFiles;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import static java.util.Objects.requireNonNull;
+import static ru.yoomoney.gradle.plugins.git.expired.branch.helper.StoreFiles.readString;
+import static ru.yoomoney.gradle.plugins.git.expired.branch.helper.StoreFiles.writeString;
+
+/**
+ * Хранимые между запусками события об устаревших ветках для отправки писем-сводок.
+ * <p>
+ * Каждый запуск заменяет события просканированного репозитория текущим набором устаревших веток,
+ * поэтому ветки, которые были обновлены или удалены, не попадают в сводку. События репозиториев,
+ * которые не удалось просканировать, сохраняются до следующего успешного сканирования.
+ * Окно сводки начинается с первого запуска после отправки предыдущей сводки.
+ * Если сводка доставлена не всем авторам, события остальных авторов сохраняются, а окно остается закрытым
+ * до доставки сводки всем авторам: следующий запуск повторяет отправку только недоставленных сводок.
+ * Поврежденный файл удаляется, накопление событий в этом случае начинается заново.
+ * Хранилище не потокобезопасно.
+ */
+public class DigestStore {
+    private static final Logger log = Logging.getLogger(DigestStore.class);
+
+    private static final int MAGIC = 0x47454244;
+    private static final int VERSION = 2;
+
+    private final File file;
+    private final Map<String, RepositoryEvents> repositories = new LinkedHashMap<>();
+    private final Set<String> deliveredAuthors = new LinkedHashSet<>();
+    private long windowStartMillis;
+    private boolean modified;
+
+    private DigestStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Загрузить события из файла
+     *
+     * @param file файл событий, может не существовать
+     * @return хранилище событий
+     */
+    public static DigestStore load(@Nonnull File file) {
+        requireNonNull(file, "file");
+        DigestStore store = new DigestStore(file);
+        if (!file.isFile()) {
+            return store;
+        }
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            store.read(in);
+        } catch (IOException | RuntimeException exc) {
+            log.warn("Notification digest store is corrupted and will be rebuilt: file={}", file, exc);
+            store.repositories.clear();
+            store.deliveredAuthors.clear();
+            store.windowStartMillis = 0L;
+            store.modified = true;
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException deleteExc) {
+                log.warn("Can't delete corrupted notification digest store: file={}", file, deleteExc);
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Заменить события репозитория текущим набором устаревших веток.
+     * Если окно сводки еще не начато, оно начинается с момента nowMillis.
+     * События авторов, которым сводка текущего окна уже доставлена, не сохраняются
+     *
+     * @param repositoryKey  ключ репозитория, например абсолютный путь к нему
+     * @param repositoryName имя репозитория, может быть null, если устаревших веток нет
+     * @param branchesUrl    url страницы веток репозитория, может быть null, если устаревших веток нет
+     * @param events         устаревшие ветки репозитория
+     * @param nowMillis      текущее время в миллисекундах
+     */
+    public void putRepository(@Nonnull String repositoryKey, @Nullable String repositoryName,
+                              @Nullable String branchesUrl, @Nonnull Collection<BranchEvent> events, long nowMillis) {
+        requireNonNull(repositoryKey, "repositoryKey");
+        if (windowStartMillis == 0L) {
+            windowStartMillis = nowMillis;
+        }
+        List<BranchEvent> pendingEvents = events.stream()
+                .filter(event -> !deliveredAuthors.contains(event.getAuthorEmail()))
+                .collect(Collectors.toList());
+        putEvents(repositoryKey, repositoryName, branchesUrl, pendingEvents);
+        modified = true;
+    }
+
+    private void putEvents(String repositoryKey, @Nullable String repositoryName, @Nullable String branchesUrl,
+                           List<BranchEvent> events) {
+        if (events.isEmpty()) {
+            repositories.remove(repositoryKey);
+        } else {
+            repositories.put(repositoryKey, new RepositoryEvents(repositoryKey,
+                    requireNonNull(repositoryName, "repositoryName"),
+                    requireNonNull(branchesUrl, "branchesUrl"),
+                    Collections.unmodifiableList(new ArrayList<>(events))));
+        }
+    }
+
+    /**
+     * Закрыто ли окно сводки, то есть пора ли отправлять сводку
+     *
+     * @param nowMillis  текущее время в миллисекундах
+     * @param windowDays длительность окна в днях
+     * @return true, если с начала окна прошло не меньше windowDays дней
+     */
+    public boolean isWindowClosed(long nowMillis, int windowDays) {
+        return windowStartMillis != 0L && nowMillis >= getWindowEndMillis(windowDays);
+    }
+
+    /**
+     * Время закрытия окна сводки в миллисекундах
+     *
+     * @param windowDays длительность окна в днях
+     * @return время закрытия окна
+     */
+    public long getWindowEndMillis(int windowDays) {
+        return windowStartMillis + TimeUnit.DAYS.toMillis(windowDays);
+    }
+
+    /**
+     * Накопленные события по репозиториям в порядке добавления
+     */
+    public Collection<RepositoryEvents> getRepositories() {
+        return Collections.unmodifiableCollection(repositories.values());
+    }
+
+    /**
+     * Количество накопленных событий
+     */
+    public int size() {
+        return repositories.values().stream().mapToInt(repository -> repository.getEvents().size()).sum();
+    }
+
+    /**
+     * Удалить события авторов, которым доставлена сводка.
+     * Если недоставленных событий не осталось, следующее окно начнется со следующего запуска,
+     * иначе окно остается закрытым, и следующий запуск повторит отправку сводок остальным авторам
+     *
+     * @param authorEmails канонические email авторов, которым доставлена сводка
+     */
+    public void removeDelivered(@Nonnull Collection<String> authorEmails) {
+        requireNonNull(authorEmails, "authorEmails");
+        deliveredAuthors.addAll(authorEmails);
+        new ArrayList<>(repositories.values()).forEach(repository -> putEvents(
+                repository.getRepositoryKey(), repository.getRepositoryName(), repository.getBranchesUrl(),
+                repository.getEvents().stream()
+                        .filter(event -> !deliveredAuthors.contains(event.getAuthorEmail()))
+                        .collect(Collectors.toList())));
+        if (repositories.isEmpty()) {
+            clear();
+        }
+        modified = true;
+    }
+
+    /**
+     * Удалить накопленные события после отправки сводки, следующее окно начнется со следующего запуска
+     */
+    public void clear() {
+        repositories.clear();
+        deliveredAuthors.clear();
+        windowStartMillis = 0L;
+        modified = true;
+    }
+
+    /**
+     * Сохранить события в файл, если они изменились
+     */
+    public void save() {
+        if (!modified) {
+            return;
+        }
+        try {
+            StoreFiles.writeAtomically(file, this::write);
+            modified = false;
+        } catch (IOException exc) {
+            throw new RuntimeException("Can't save notification digest store: file=" + file, exc);
+        }
+    }
+
+    private void read(InputStream in) throws IOException {
+        CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(in), new CRC32());
+        DataInputStream data = new DataInputStream(checked);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Unknown notification digest store format");
+        }
+        int version = data.readInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unknown notification digest store version: version=" + version);
+        }
+        windowStartMillis = data.readLong();
+        if (version >= 2) {
+            int deliveredCount = data.readInt();
+            for (int i = 0; i < deliveredCount; i++) {
+                deliveredAuthors.add(readString(data));
+            }
+        }
+        int repositoryCount = data.readInt();
+        byte[] rawId = new byte[Constants.OBJECT_ID_LENGTH];
+        for (int i = 0; i < repositoryCount; i++) {
+            String repositoryKey = readString(data);
+            String repositoryName = readString(data);
+            String branchesUrl = readString(data);
+            int eventCount = data.readInt();
+            List<BranchEvent> events = new ArrayList<>();
+            for (int j = 0; j < eventCount; j++) {
+                String refName = readString(data);
+                data.readFully(rawId);
+                events.add(new BranchEvent(refName, ObjectId.fromRaw(rawId), data.readLong(),
+                        readString(data), readString(data), readString(data)));
+            }
+            repositories.put(repositoryKey, new RepositoryEvents(repositoryKey, repositoryName, branchesUrl,
+                    Collections.unmodifiableList(events)));
+        }
+        long checksum = checked.getChecksum().getValue();
+        if (data.readLong() != checksum) {
+            throw new IOException("Notification digest store checksum mismatch");
+        }
+    }
+
+    private void write(OutputStream out) throws IOException {
+        CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(out), new CRC32());
+        DataOutputStream data = new DataOutputStream(checked);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeLong(windowStartMillis);
+        data.writeInt(deliveredAuthors.size());
+        for (String authorEmail : deliveredAuthors) {
+            writeString(data, authorEmail);
+        }
+        data.writeInt(repositories.size());
+        byte[] rawId = new byte[Constants.OBJECT_ID_LENGTH];
+        for (Map.Entry<String, RepositoryEvents> repository : repositories.entrySet()) {
+            writeString(data, repository.getKey());
+            writeString(data, repository.getValue().getRepositoryName());
+            writeString(data, repository.getValue().getBranchesUrl());
+            data.writeInt(repository.getValue().getEvents().size());
+            for (BranchEvent event : repository.getValue().getEvents()) {
+                writeString(data, event.getRefName());
+                event.getTipId().copyRawTo(rawId, 0);
+                data.write(rawId);
+                data.writeLong(event.getCommitTime());
+                writeString(data, event.getAuthorName());
+                writeString(data, event.getAuthorEmail());
+                writeString(data, event.getShortMessage());
+            }
+        }
+        data.flush();
+        data.writeLong(checked.getChecksum().getValue());
+        data.flush();
+    }
+
+    /**
+     * События одного репозитория
+     */
+    public static class RepositoryEvents {
+        private final String repositoryKey;
+        private final String repositoryName;
+        private final String branchesUrl;
+        private final List<BranchEvent> events;
+
+        RepositoryEvents(String repositoryKey, String repositoryName, String branchesUrl, List<BranchEvent> events) {
+            this.repositoryKey = repositoryKey;
+            this.repositoryName = repositoryName;
+            this.branchesUrl = branchesUrl;
+            this.events = events;
+        }
+
+        /**
+         * Ключ репозитория, переданный при добавлении событий
+         */
+        public String getRepositoryKey() {
+            return repositoryKey;
+        }
+
+        public String getRepositoryName() {
+            return repositoryName;
+        }
+
+        /**
+         * Url страницы веток репозитория
+         */
+        public String getBranchesUrl() {
+            return branchesUrl;
+        }
+
+        public List<BranchEvent> getEvents() {
+            return events;
+        }
+    }
+
+    /**
+     * Событие об устаревшей ветке
+     */
+    public static class BranchEvent {
+        private final String refName;
+        private final ObjectId tipId;
+        private final long commitTime;
+        private final String authorName;
+        private final String authorEmail;
+        private final String shortMessage;
+
+        /**
+         * Конструктор
+         *
+         * @param refName      имя ref'а ветки
+         * @param tipId        идентификатор последнего коммита ветки
+         * @param commitTime   время последнего коммита в секундах
+         * @param authorName   каноническое имя автора
+         * @param authorEmail  канонический email автора
+         * @param shortMessage короткое сообщение последнего коммита
+         */
+        public BranchEvent(@Nonnull String refName, @Nonnull ObjectId tipId, long commitTime,
+                           @Nonnull String authorName, @Nonnull String authorEmail, @Nonnull String shortMessage) {
+            this.refName = requireNonNull(refName, "refName");
+            this.tipId = requireNonNull(tipId, "tipId").copy();
+            this.commitTime = commitTime;
+            this.authorName = requireNonNull(authorName, "authorName");
+            this.authorEmail = requireNonNull(authorEmail, "authorEmail");
+            this.shortMessage = requireNonNull(shortMessage, "shortMessage");
+        }
+
+        public String getRefName() {
+            return refName;
+        }
+
+        public ObjectId getTipId() {
+            return tipId;
+        }
+
+        /**
+         * Время последнего коммита в секундах
+         */
+        public long getCommitTime() {
+            return commitTime;
+        }
+
+        public String getAuthorName() {
+            return authorName;
+        }
+
+        public String getAuthorEmail() {
+            return authorEmail;
+        }
+
+        public String getShortMessage() {
+            return shortMessage;
+        }
+    }
+}
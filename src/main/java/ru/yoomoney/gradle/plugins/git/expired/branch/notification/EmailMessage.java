@@ -0,0 +1,59 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.notification;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Подготовленное к отправке письмо
+ */
+public class EmailMessage {
+    private final String sender;
+    private final Set<String> recipients;
+    private final String subject;
+    private final String body;
+
+    /**
+     * Конструктор
+     *
+     * @param sender     email отправителя письма
+     * @param recipients список получателей
+     * @param subject    тема письма
+     * @param body       текст письма
+     */
+    public EmailMessage(@Nonnull String sender, @Nonnull Set<String> recipients,
+                        @Nonnull String subject, @Nonnull String body) {
+        this.sender = requireNonNull(sender, "sender");
+        this.recipients = Collections.unmodifiableSet(new LinkedHashSet<>(requireNonNull(recipients, "recipients")));
+        this.subject = requireNonNull(subject, "subject");
+        this.body = requireNonNull(body, "body");
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    public Set<String> getRecipients() {
+        return recipients;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    @Override
+    public String toString() {
+        return "EmailMessage{" +
+                "sender='" + sender + '\'' +
+                ", recipients=" + recipients +
+                ", subject='" + subject + '\'' +
+                '}';
+    }
+}
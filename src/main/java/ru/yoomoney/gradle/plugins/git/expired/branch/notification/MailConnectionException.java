@@ -0,0 +1,18 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.notification;
+
+/**
+ * Ошибка соединения с SMTP шлюзом до начала передачи письма.
+ * Письмо не было передано шлюзу, поэтому его отправку можно безопасно повторить
+ */
+public class MailConnectionException extends RuntimeException {
+
+    /**
+     * Конструктор
+     *
+     * @param message описание ошибки
+     * @param cause   исходная ошибка
+     */
+    public MailConnectionException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
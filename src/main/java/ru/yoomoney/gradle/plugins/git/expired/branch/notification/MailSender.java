@@ -15,7 +15,11 @@ import javax.mail.Transport;
 import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
@@ -23,13 +27,25 @@ import java.util.stream.Collectors;
 
 /**
  * Класс для отправки email
+ * <p>
+ * В режиме переиспользования соединений ({@link EmailConnectionSettings#isReuseConnection()}) письма отправляются
+ * через открытые один раз соединения с SMTP шлюзом. Соединения хранятся в пуле и используются повторно.
+ * Перед отправкой соединение из пула проверяется, разорванное соединение заменяется новым. Если отправка письма
+ * уже началась, при ошибке она не повторяется, чтобы не доставить письмо дважды, а соединение закрывается.
+ * Ошибка соединения с шлюзом до начала передачи письма выбрасывается как {@link MailConnectionException},
+ * только такую отправку можно повторить.
+ * Соединения закрываются методом {@link #close()}.
+ * Класс потокобезопасен.
  *
  * @author Vasily Sozykin
  *         Date: 09.03.2017.
  */
-public class MailSender {
+public class MailSender implements AutoCloseable {
     private final Logger log = Logging.getLogger(MailSender.class);
     private final EmailConnectionSettings settings;
+    private final Deque<Transport> idleTransports = new ArrayDeque<>();
+    private Session session;
+    private boolean closed;
 
     public MailSender(EmailConnectionSettings settings) {
         this.settings = settings;
@@ -42,20 +58,10 @@ public class MailSender {
      * @param recipients список получателей
      * @param subject    тема письма
      * @param body       текст письма
+     * @throws MailConnectionException не удалось соединиться с SMTP шлюзом, письмо не передавалось
      */
     public void sendEmail(String sender, Set<String> recipients, String subject, String body) {
-        Properties props = new Properties();
-        props.setProperty("mail.smtp.auth", "true");
-        props.setProperty("mail.smtp.starttls.enable", "false");
-        props.setProperty("mail.smtp.host", settings.getEmailHost());
-        props.setProperty("mail.smtp.port", String.valueOf(settings.getEmailPort()));
-
-        Session session = Session.getInstance(props, new Authenticator() {
-            @Override
-            protected PasswordAuthentication getPasswordAuthentication() {
-                return new PasswordAuthentication(settings.getEmailAuthUser(), settings.getEmailAuthPassword());
-            }
-        });
+        Session session = getSession();
 
         Set<Address> recipientSet = recipients.stream()
                 .map(recipient -> {
@@ -85,7 +91,27 @@ public class MailSender {
         }
     }
 
-    private static void sendEmail(
+    private synchronized Session getSession() {
+        if (session == null) {
+            Properties props = new Properties();
+            props.setProperty("mail.smtp.auth", "true");
+            props.setProperty("mail.smtp.starttls.enable", "false");
+            props.setProperty("mail.smtp.host", settings.getEmailHost());
+            if (settings.getEmailPort() != null) {
+                props.setProperty("mail.smtp.port", String.valueOf(settings.getEmailPort()));
+            }
+
+            session = Session.getInstance(props, new Authenticator() {
+                @Override
+                protected PasswordAuthentication getPasswordAuthentication() {
+                    return new PasswordAuthentication(settings.getEmailAuthUser(), settings.getEmailAuthPassword());
+                }
+            });
+        }
+        return session;
+    }
+
+    private void sendEmail(
             String sender,
             String subject,
             String body,
@@ -99,11 +125,93 @@ public class MailSender {
         message.setSubject(subject);
         message.setText(body);
 
-        Transport.send(message);
+        if (settings.isReuseConnection()) {
+            sendWithPooledTransport(message, session);
+        } else {
+            sendWithNewTransport(message, session);
+        }
+    }
+
+    private static void sendWithNewTransport(Message message, Session session) throws MessagingException {
+        message.saveChanges();
+        Transport transport = connect(session);
+        try {
+            transport.sendMessage(message, message.getAllRecipients());
+        } finally {
+            transport.close();
+        }
+    }
+
+    private void sendWithPooledTransport(Message message, Session session) throws MessagingException {
+        message.saveChanges();
+        Transport transport = borrowTransport(session);
+        try {
+            transport.sendMessage(message, message.getAllRecipients());
+        } catch (SendFailedException e) {
+            releaseTransport(transport);
+            throw e;
+        } catch (MessagingException | RuntimeException e) {
+            closeQuietly(transport);
+            throw e;
+        }
+        releaseTransport(transport);
     }
 
-    private static void retrySendEmailWithoutInvalidAddresses(String sender, String subject, String body, Session session,
-                                                              Set<Address> recipients, Address[] invalidAddresses) {
+    /**
+     * Получить соединение из пула или открыть новое.
+     * Соединение из пула проверяется до начала отправки письма, поэтому разрыв простаивавшего соединения
+     * не приводит к повторной отправке
+     */
+    private Transport borrowTransport(Session session) {
+        while (true) {
+            Transport transport;
+            synchronized (idleTransports) {
+                if (closed) {
+                    throw new IllegalStateException("MailSender is closed");
+                }
+                transport = idleTransports.pollFirst();
+            }
+            if (transport == null) {
+                return connect(session);
+            }
+            if (transport.isConnected()) {
+                return transport;
+            }
+            log.info("Smtp connection is closed, reconnecting: host={}", settings.getEmailHost());
+            closeQuietly(transport);
+        }
+    }
+
+    private static Transport connect(Session session) {
+        try {
+            Transport transport = session.getTransport("smtp");
+            transport.connect();
+            return transport;
+        } catch (MessagingException e) {
+            throw new MailConnectionException("Can't connect to smtp server", e);
+        }
+    }
+
+    private void releaseTransport(Transport transport) {
+        synchronized (idleTransports) {
+            if (!closed) {
+                idleTransports.addFirst(transport);
+                return;
+            }
+        }
+        closeQuietly(transport);
+    }
+
+    private void closeQuietly(Transport transport) {
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            log.info("Can't close smtp connection", e);
+        }
+    }
+
+    private void retrySendEmailWithoutInvalidAddresses(String sender, String subject, String body, Session session,
+                                                       Set<Address> recipients, Address[] invalidAddresses) {
         recipients.removeAll(Arrays.asList(invalidAddresses));
         try {
             sendEmail(sender, subject, body, session, recipients);
@@ -111,4 +219,18 @@ public class MailSender {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Закрыть открытые соединения с SMTP шлюзом
+     */
+    @Override
+    public void close() {
+        List<Transport> transports;
+        synchronized (idleTransports) {
+            closed = true;
+            transports = new ArrayList<>(idleTransports);
+            idleTransports.clear();
+        }
+        transports.forEach(this::closeQuietly);
+    }
 }
@@ -0,0 +1,262 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.notification;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Скомпилированный шаблон текста письма.
+ * <p>
+ * Синтаксис шаблона:
+ * <ul>
+ * <li>{@code {{name}}} - значение переменной, отсутствующая переменная выводится пустой строкой;</li>
+ * <li>{@code {{#name}}...{{/name}}} - секция: для списка выводится для каждого элемента,
+ * элемент списка - модель с собственными переменными; для true или непустого значения выводится один раз;</li>
+ * <li>{@code {{^name}}...{{/name}}} - инвертированная секция: выводится, если значение false, пустое или не задано.</li>
+ * </ul>
+ * Переменная ищется в модели текущего элемента списка, затем во внешних моделях.
+ * <p>
+ * Шаблон разбирается один раз в список инструкций и после создания не изменяется,
+ * поэтому один шаблон можно использовать для формирования писем в нескольких потоках.
+ * Текст формируется в буфер, который переиспользуется в рамках потока.
+ */
+public class MailTemplate {
+    private static final String OPEN_TAG = "{{";
+    private static final String CLOSE_TAG = "}}";
+    /**
+     * Буферы большего размера не переиспользуются, чтобы не удерживать память после формирования большого письма
+     */
+    private static final int MAX_REUSED_BUFFER_SIZE = 64 * 1024;
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(StringBuilder::new);
+
+    private final List<Instruction> instructions;
+
+    private MailTemplate(List<Instruction> instructions) {
+        this.instructions = instructions;
+    }
+
+    /**
+     * Скомпилировать шаблон
+     *
+     * @param template текст шаблона
+     * @return скомпилированный шаблон
+     * @throws IllegalArgumentException если в шаблоне незакрытый тег или секция
+     */
+    public static MailTemplate compile(@Nonnull String template) {
+        requireNonNull(template, "template");
+        Deque<SectionBuilder> sections = new ArrayDeque<>();
+        SectionBuilder root = new SectionBuilder(null, false);
+        sections.push(root);
+        int position = 0;
+        while (position < template.length()) {
+            int open = template.indexOf(OPEN_TAG, position);
+            if (open < 0) {
+                sections.peek().instructions.add(new Text(template.substring(position)));
+                break;
+            }
+            if (open > position) {
+                sections.peek().instructions.add(new Text(template.substring(position, open)));
+            }
+            int close = template.indexOf(CLOSE_TAG, open + OPEN_TAG.length());
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed tag: position=" + open);
+            }
+            String tag = template.substring(open + OPEN_TAG.length(), close).trim();
+            if (tag.startsWith("#") || tag.startsWith("^")) {
+                sections.push(new SectionBuilder(requireName(tag.substring(1), open), tag.startsWith("^")));
+            } else if (tag.startsWith("/")) {
+                String name = requireName(tag.substring(1), open);
+                SectionBuilder section = sections.pop();
+                if (section == root || !name.equals(section.name)) {
+                    throw new IllegalArgumentException("Unexpected section end: name=" + name + ", position=" + open);
+                }
+                sections.peek().instructions.add(section.build());
+            } else {
+                sections.peek().instructions.add(new Variable(requireName(tag, open)));
+            }
+            position = close + CLOSE_TAG.length();
+        }
+        if (sections.peek() != root) {
+            throw new IllegalArgumentException("Unclosed section: name=" + sections.peek().name);
+        }
+        return new MailTemplate(Collections.unmodifiableList(root.instructions));
+    }
+
+    private static String requireName(String name, int position) {
+        String trimmed = name.trim();
+        if (trimmed.isEmpty()) {
+            throw new IllegalArgumentException("Empty tag name: position=" + position);
+        }
+        return trimmed;
+    }
+
+    /**
+     * Сформировать текст по модели
+     *
+     * @param model значения переменных шаблона
+     * @return текст
+     */
+    public String render(@Nonnull Map<String, ?> model) {
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+        renderTo(model, buffer);
+        String result = buffer.toString();
+        if (buffer.capacity() > MAX_REUSED_BUFFER_SIZE) {
+            BUFFER.remove();
+        }
+        return result;
+    }
+
+    /**
+     * Сформировать текст по модели в переданный буфер
+     *
+     * @param model значения переменных шаблона
+     * @param out   буфер, в конец которого дописывается текст
+     */
+    public void renderTo(@Nonnull Map<String, ?> model, @Nonnull StringBuilder out) {
+        requireNonNull(model, "model");
+        requireNonNull(out, "out");
+        Scope scope = new Scope(model, null);
+        for (Instruction instruction : instructions) {
+            instruction.render(scope, out);
+        }
+    }
+
+    /**
+     * Инструкция шаблона
+     */
+    private interface Instruction {
+        void render(Scope scope, StringBuilder out);
+    }
+
+    /**
+     * Неизменяемый текст шаблона
+     */
+    private static class Text implements Instruction {
+        private final String text;
+
+        Text(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public void render(Scope scope, StringBuilder out) {
+            out.append(text);
+        }
+    }
+
+    /**
+     * Значение переменной
+     */
+    private static class Variable implements Instruction {
+        private final String name;
+
+        Variable(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void render(Scope scope, StringBuilder out) {
+            Object value = scope.get(name);
+            if (value != null) {
+                out.append(value);
+            }
+        }
+    }
+
+    /**
+     * Секция шаблона
+     */
+    private static class Section implements Instruction {
+        private final String name;
+        private final boolean inverted;
+        private final List<Instruction> body;
+
+        Section(String name, boolean inverted, List<Instruction> body) {
+            this.name = name;
+            this.inverted = inverted;
+            this.body = body;
+        }
+
+        @Override
+        public void render(Scope scope, StringBuilder out) {
+            Object value = scope.get(name);
+            if (inverted) {
+                if (isEmpty(value)) {
+                    renderBody(scope, out);
+                }
+            } else if (value instanceof Collection) {
+                for (Object item : (Collection<?>) value) {
+                    renderBody(item instanceof Map ? new Scope((Map<?, ?>) item, scope) : scope, out);
+                }
+            } else if (!isEmpty(value)) {
+                renderBody(scope, out);
+            }
+        }
+
+        private void renderBody(Scope scope, StringBuilder out) {
+            for (Instruction instruction : body) {
+                instruction.render(scope, out);
+            }
+        }
+
+        private static boolean isEmpty(@Nullable Object value) {
+            return value == null
+                    || Boolean.FALSE.equals(value)
+                    || value instanceof Collection && ((Collection<?>) value).isEmpty()
+                    || value instanceof CharSequence && ((CharSequence) value).length() == 0;
+        }
+    }
+
+    /**
+     * Секция в процессе разбора шаблона
+     */
+    private static class SectionBuilder {
+        @Nullable
+        private final String name;
+        private final boolean inverted;
+        private final List<Instruction> instructions = new ArrayList<>();
+
+        SectionBuilder(@Nullable String name, boolean inverted) {
+            this.name = name;
+            this.inverted = inverted;
+        }
+
+        Section build() {
+            return new Section(name, inverted, Collections.unmodifiableList(new ArrayList<>(instructions)));
+        }
+    }
+
+    /**
+     * Модель текущего элемента списка со ссылкой на внешнюю модель
+     */
+    private static class Scope {
+        private final Map<?, ?> model;
+        @Nullable
+        private final Scope parent;
+
+        Scope(Map<?, ?> model, @Nullable Scope parent) {
+            this.model = model;
+            this.parent = parent;
+        }
+
+        @Nullable
+        Object get(String name) {
+            for (Scope scope = this; scope != null; scope = scope.parent) {
+                Object value = scope.model.get(name);
+                if (value != null) {
+                    return value;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.notification;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import ru.yoomoney.gradle.plugins.git.expired.branch.report.RunMetrics;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Асинхронная отправка писем.
+ * <p>
+ * Письма отправляются пулом из ограниченного количества потоков, поэтому подготовка писем и обход git
+ * не ждут SMTP шлюз. Отправка, которая не удалась из-за ошибки соединения с шлюзом ({@link MailConnectionException}),
+ * повторяется с экспоненциально растущей задержкой. Ошибка во время передачи письма не повторяется,
+ * чтобы не доставить письмо дважды.
+ * Если письмо так и не удалось отправить, оно вместе с текстом ошибки пересылается на резервный адрес.
+ * Метод {@link #awaitCompletion()} дожидается отправки всех писем и возвращает итоги отправки.
+ */
+public class NotificationDispatcher implements AutoCloseable {
+    private static final Logger log = Logging.getLogger(NotificationDispatcher.class);
+
+    /**
+     * Максимальный множитель задержки между попытками отправки
+     */
+    private static final int MAX_BACKOFF_SHIFT = 10;
+
+    private final MailSender mailSender;
+    private final int maxAttempts;
+    private final long retryDelayMillis;
+    private final ScheduledExecutorService executor;
+    private final RunMetrics metrics;
+    private final List<CompletableFuture<Boolean>> pending = Collections.synchronizedList(new ArrayList<>());
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder redirected = new LongAdder();
+
+    /**
+     * Конструктор
+     *
+     * @param mailSender       отправщик писем
+     * @param threads          количество потоков отправки
+     * @param maxAttempts      количество попыток отправки письма
+     * @param retryDelayMillis задержка перед первой повторной попыткой, каждая следующая задержка увеличивается вдвое
+     */
+    public NotificationDispatcher(@Nonnull MailSender mailSender, int threads, int maxAttempts, long retryDelayMillis) {
+        this(mailSender, threads, maxAttempts, retryDelayMillis, new RunMetrics());
+    }
+
+    /**
+     * Конструктор
+     *
+     * @param mailSender       отправщик писем
+     * @param threads          количество потоков отправки
+     * @param maxAttempts      количество попыток отправки письма
+     * @param retryDelayMillis задержка перед первой повторной попыткой, каждая следующая задержка увеличивается вдвое
+     * @param metrics          метрики, в которых учитываются время отправки, отправленные письма и повторные попытки
+     */
+    public NotificationDispatcher(@Nonnull MailSender mailSender, int threads, int maxAttempts, long retryDelayMillis,
+                                  @Nonnull RunMetrics metrics) {
+        this.metrics = requireNonNull(metrics, "metrics");
+        this.mailSender = requireNonNull(mailSender, "mailSender");
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryDelayMillis = Math.max(0L, retryDelayMillis);
+        ScheduledThreadPoolExecutor scheduledExecutor =
+                new ScheduledThreadPoolExecutor(Math.max(1, threads), new DispatcherThreadFactory());
+        scheduledExecutor.setRemoveOnCancelPolicy(true);
+        this.executor = scheduledExecutor;
+    }
+
+    /**
+     * Поставить письмо в очередь на отправку
+     *
+     * @param message           письмо
+     * @param fallbackRecipient адрес, на который пересылается письмо, если его не удалось отправить
+     * @return признак того, что письмо доставлено исходным получателям
+     */
+    public CompletableFuture<Boolean> submit(@Nonnull EmailMessage message, @Nullable String fallbackRecipient) {
+        requireNonNull(message, "message");
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        pending.add(result);
+        executor.execute(() -> send(message, fallbackRecipient, 1, result));
+        return result;
+    }
+
+    private void send(EmailMessage message, @Nullable String fallbackRecipient, int attempt,
+                      CompletableFuture<Boolean> result) {
+        try {
+            metrics.time(RunMetrics.Phase.SMTP, () -> mailSender.sendEmail(
+                    message.getSender(), message.getRecipients(), message.getSubject(), message.getBody()));
+            metrics.increment(RunMetrics.Counter.MAILS_SENT, 1);
+            delivered.increment();
+            result.complete(true);
+        } catch (MailConnectionException e) {
+            if (attempt < maxAttempts) {
+                long delay = retryDelayMillis << Math.min(attempt - 1, MAX_BACKOFF_SHIFT);
+                log.info("Can't send email, retrying: message={}, attempt={}, delayMillis={}", message, attempt, delay, e);
+                metrics.increment(RunMetrics.Counter.RETRIES, 1);
+                executor.schedule(() -> send(message, fallbackRecipient, attempt + 1, result),
+                        delay, TimeUnit.MILLISECONDS);
+                return;
+            }
+            fail(message, fallbackRecipient, attempt, result, e);
+        } catch (RuntimeException e) {
+            // передача письма могла начаться, повторная отправка может доставить письмо дважды
+            fail(message, fallbackRecipient, attempt, result, e);
+        } catch (Error e) {
+            result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private void fail(EmailMessage message, @Nullable String fallbackRecipient, int attempt,
+                      CompletableFuture<Boolean> result, RuntimeException error) {
+        failed.increment();
+        log.warn("Can't send email: message={}, attempts={}", message, attempt, error);
+        sendToFallbackRecipient(message, fallbackRecipient, error);
+        result.complete(false);
+    }
+
+    private void sendToFallbackRecipient(EmailMessage message, @Nullable String fallbackRecipient, Exception error) {
+        if (fallbackRecipient == null) {
+            return;
+        }
+        try {
+            metrics.time(RunMetrics.Phase.SMTP, () -> mailSender.sendEmail(
+                    message.getSender(),
+                    Collections.singleton(fallbackRecipient),
+                    message.getSubject(),
+                    message.getBody() + "\n" + error.getMessage()
+            ));
+            metrics.increment(RunMetrics.Counter.MAILS_SENT, 1);
+            redirected.increment();
+        } catch (RuntimeException e) {
+            log.error("Can't send email to fallback recipient: message={}, fallbackRecipient={}",
+                    message, fallbackRecipient, e);
+        }
+    }
+
+    /**
+     * Дождаться отправки всех писем
+     *
+     * @return итоги отправки
+     */
+    public Summary awaitCompletion() {
+        List<CompletableFuture<Boolean>> futures;
+        synchronized (pending) {
+            futures = new ArrayList<>(pending);
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        Summary summary = new Summary(delivered.sum(), failed.sum(), redirected.sum());
+        log.lifecycle("Notifications sent: delivered={}, failed={}, redirected={}",
+                summary.getDelivered(), summary.getFailed(), summary.getRedirected());
+        return summary;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Итоги отправки писем
+     */
+    public static class Summary {
+        private final long delivered;
+        private final long failed;
+        private final long redirected;
+
+        Summary(long delivered, long failed, long redirected) {
+            this.delivered = delivered;
+            this.failed = failed;
+            this.redirected = redirected;
+        }
+
+        /**
+         * Количество писем, доставленных получателям
+         */
+        public long getDelivered() {
+            return delivered;
+        }
+
+        /**
+         * Количество писем, которые не удалось доставить получателям
+         */
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * Количество недоставленных писем, пересланных на резервный адрес
+         */
+        public long getRedirected() {
+            return redirected;
+        }
+    }
+
+    private static class DispatcherThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "git-expired-branch-notifier-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.notification;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import ru.yoomoney.gradle.plugins.git.expired.branch.helper.StoreFiles;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import static java.util.Objects.requireNonNull;
+import static ru.yoomoney.gradle.plugins.git.expired.branch.helper.StoreFiles.readString;
+import static ru.yoomoney.gradle.plugins.git.expired.branch.helper.StoreFiles.writeString;
+
+/**
+ * Хранимый между запусками журнал уведомлений об устаревших ветках.
+ * <p>
+ * Для ветки репозитория хранит идентификатор последнего коммита, о котором было отправлено уведомление,
+ * и время отправки. Журнал читается в хэш-таблицу, поэтому проверка ветки не зависит от размера журнала.
+ * <p>
+ * Файл журнала дописывается записями об отправленных уведомлениях, каждая запись защищена контрольной суммой.
+ * Поврежденный хвост файла, например после прерванной записи, отбрасывается. Когда мертвых записей в файле
+ * становится больше, чем живых, файл атомарно перезаписывается только живыми записями. Записи, отправленные
+ * раньше интервала повторного уведомления, на результат проверки не влияют и при сохранении удаляются.
+ * Журнал не потокобезопасен.
+ */
+public class NotificationLedger {
+    private static final Logger log = Logging.getLogger(NotificationLedger.class);
+
+    private static final int MAGIC = 0x4745424c;
+    private static final int VERSION = 1;
+    private static final char KEY_SEPARATOR = '\n';
+    /**
+     * Минимальное количество записей в файле, при котором выполняется сжатие
+     */
+    private static final int MIN_RECORDS_TO_COMPACT = 1024;
+
+    private final File file;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Set<String> appendedKeys = new LinkedHashSet<>();
+    private int fileRecords;
+    private boolean rewriteRequired;
+
+    private NotificationLedger(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Загрузить журнал из файла
+     *
+     * @param file файл журнала, может не существовать
+     * @return журнал уведомлений
+     */
+    public static NotificationLedger load(@Nonnull File file) {
+        requireNonNull(file, "file");
+        NotificationLedger ledger = new NotificationLedger(file);
+        if (!file.isFile()) {
+            ledger.rewriteRequired = true;
+            return ledger;
+        }
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            ledger.read(in);
+        } catch (IOException | RuntimeException exc) {
+            log.warn("Notification ledger is corrupted and will be rebuilt: file={}", file, exc);
+            ledger.entries.clear();
+            ledger.fileRecords = 0;
+            ledger.rewriteRequired = true;
+        }
+        return ledger;
+    }
+
+    /**
+     * Было ли уведомление о ветке с тем же последним коммитом отправлено в пределах интервала повторного уведомления
+     *
+     * @param repositoryKey          ключ репозитория, например абсолютный путь к нему
+     * @param refName                имя ref'а ветки
+     * @param tipId                  текущий идентификатор последнего коммита ветки
+     * @param nowMillis              текущее время в миллисекундах
+     * @param renotifyIntervalMillis интервал повторного уведомления в миллисекундах
+     * @return true, если уведомление отправлять не нужно
+     */
+    public boolean isNotified(@Nonnull String repositoryKey, @Nonnull String refName, @Nonnull AnyObjectId tipId,
+                              long nowMillis, long renotifyIntervalMillis) {
+        Entry entry = entries.get(toKey(repositoryKey, refName));
+        return entry != null
+                && entry.tipId.equals(tipId)
+                && !entry.isExpired(nowMillis, renotifyIntervalMillis);
+    }
+
+    /**
+     * Отметить отправку уведомления о ветке
+     *
+     * @param repositoryKey    ключ репозитория
+     * @param refName          имя ref'а ветки
+     * @param tipId            идентификатор последнего коммита ветки
+     * @param notifiedAtMillis время отправки уведомления в миллисекундах
+     */
+    public void markNotified(@Nonnull String repositoryKey, @Nonnull String refName, @Nonnull AnyObjectId tipId,
+                             long notifiedAtMillis) {
+        String key = toKey(repositoryKey, refName);
+        entries.put(key, new Entry(tipId.copy(), notifiedAtMillis));
+        appendedKeys.add(key);
+    }
+
+    /**
+     * Количество веток в журнале
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Сохранить журнал: удалить устаревшие записи и дописать новые записи в файл
+     * или перезаписать файл, если в нем накопилось слишком много мертвых записей
+     *
+     * @param nowMillis              текущее время в миллисекундах
+     * @param renotifyIntervalMillis интервал повторного уведомления в миллисекундах
+     */
+    public void save(long nowMillis, long renotifyIntervalMillis) {
+        entries.values().removeIf(entry -> entry.isExpired(nowMillis, renotifyIntervalMillis));
+        int records = fileRecords + appendedKeys.size();
+        try {
+            if (rewriteRequired || records >= MIN_RECORDS_TO_COMPACT && records > 2 * entries.size()) {
+                StoreFiles.writeAtomically(file, this::writeAll);
+                fileRecords = entries.size();
+                rewriteRequired = false;
+            } else if (!appendedKeys.isEmpty()) {
+                try (OutputStream out = Files.newOutputStream(file.toPath(), StandardOpenOption.APPEND)) {
+                    writeAppended(out);
+                }
+                fileRecords = records;
+            }
+            appendedKeys.clear();
+        } catch (IOException exc) {
+            throw new RuntimeException("Can't save notification ledger: file=" + file, exc);
+        }
+    }
+
+    private static String toKey(String repositoryKey, String refName) {
+        return requireNonNull(repositoryKey, "repositoryKey") + KEY_SEPARATOR + requireNonNull(refName, "refName");
+    }
+
+    private void read(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        DataInputStream raw = new DataInputStream(buffered);
+        if (raw.readInt() != MAGIC || raw.readInt() != VERSION) {
+            throw new IOException("Unknown notification ledger format");
+        }
+        CheckedInputStream checked = new CheckedInputStream(buffered, new CRC32());
+        DataInputStream data = new DataInputStream(checked);
+        byte[] rawId = new byte[Constants.OBJECT_ID_LENGTH];
+        while (true) {
+            buffered.mark(1);
+            if (buffered.read() < 0) {
+                return;
+            }
+            buffered.reset();
+            checked.getChecksum().reset();
+            try {
+                String key = readString(data);
+                data.readFully(rawId);
+                long notifiedAtMillis = data.readLong();
+                long checksum = checked.getChecksum().getValue();
+                if ((raw.readInt() & 0xFFFFFFFFL) != checksum) {
+                    throw new IOException("Notification ledger record checksum mismatch");
+                }
+                entries.put(key, new Entry(ObjectId.fromRaw(rawId), notifiedAtMillis));
+                fileRecords++;
+            } catch (IOException exc) {
+                log.warn("Notification ledger tail is corrupted and will be dropped: file={}, records={}",
+                        file, fileRecords, exc);
+                rewriteRequired = true;
+                return;
+            }
+        }
+    }
+
+    private void writeAll(OutputStream out) throws IOException {
+        BufferedOutputStream buffered = new BufferedOutputStream(out);
+        DataOutputStream raw = new DataOutputStream(buffered);
+        raw.writeInt(MAGIC);
+        raw.writeInt(VERSION);
+        CRC32 crc = new CRC32();
+        DataOutputStream data = new DataOutputStream(new CheckedOutputStream(buffered, crc));
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            writeRecord(entry.getKey(), entry.getValue(), data, raw, crc);
+        }
+        raw.flush();
+    }
+
+    private void writeAppended(OutputStream out) throws IOException {
+        BufferedOutputStream buffered = new BufferedOutputStream(out);
+        DataOutputStream raw = new DataOutputStream(buffered);
+        CRC32 crc = new CRC32();
+        DataOutputStream data = new DataOutputStream(new CheckedOutputStream(buffered, crc));
+        for (String key : appendedKeys) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                writeRecord(key, entry, data, raw, crc);
+            }
+        }
+        raw.flush();
+    }
+
+    private static void writeRecord(String key, Entry entry, DataOutputStream data, DataOutputStream raw, CRC32 crc)
+            throws IOException {
+        byte[] rawId = new byte[Constants.OBJECT_ID_LENGTH];
+        crc.reset();
+        writeString(data, key);
+        entry.tipId.copyRawTo(rawId, 0);
+        data.write(rawId);
+        data.writeLong(entry.notifiedAtMillis);
+        raw.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Запись журнала
+     */
+    private static class Entry {
+        private final ObjectId tipId;
+        private final long notifiedAtMillis;
+
+        Entry(ObjectId tipId, long notifiedAtMillis) {
+            this.tipId = tipId;
+            this.notifiedAtMillis = notifiedAtMillis;
+        }
+
+        boolean isExpired(long nowMillis, long renotifyIntervalMillis) {
+            return nowMillis - notifiedAtMillis >= renotifyIntervalMillis;
+        }
+    }
+}
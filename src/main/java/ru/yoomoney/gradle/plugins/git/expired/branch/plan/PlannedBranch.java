@@ -0,0 +1,104 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.plan;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Optional;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Ветка, которая будет удалена по плану удаления
+ */
+public class PlannedBranch {
+    private final String refName;
+    private final String tipId;
+    private final long commitTime;
+    private final String authorName;
+    private final String authorEmail;
+    private final String shortMessage;
+    @Nullable
+    private final String mergeBase;
+    private final long diffSizeBytes;
+    private final boolean diffTruncated;
+
+    /**
+     * Конструктор
+     *
+     * @param refName       имя ref'а ветки, например refs/remotes/origin/feature/BACKEND-1
+     * @param tipId         идентификатор последнего коммита ветки на момент составления плана
+     * @param commitTime    время последнего коммита ветки в секундах
+     * @param authorName    имя автора последнего коммита
+     * @param authorEmail   email автора последнего коммита, получатель уведомления об удалении
+     * @param shortMessage  заголовок сообщения последнего коммита
+     * @param mergeBase     общий предок ветки с origin/master, null если он не найден
+     * @param diffSizeBytes размер diff ветки, который будет сохранен в архивный репозиторий
+     * @param diffTruncated признак того, что diff будет обрезан по настройке archiveDiffMaxSizeBytes
+     */
+    public PlannedBranch(@Nonnull String refName, @Nonnull String tipId, long commitTime,
+                         @Nonnull String authorName, @Nonnull String authorEmail, @Nonnull String shortMessage,
+                         @Nullable String mergeBase, long diffSizeBytes, boolean diffTruncated) {
+        this.refName = requireNonNull(refName, "refName");
+        this.tipId = requireNonNull(tipId, "tipId");
+        this.commitTime = commitTime;
+        this.authorName = requireNonNull(authorName, "authorName");
+        this.authorEmail = requireNonNull(authorEmail, "authorEmail");
+        this.shortMessage = requireNonNull(shortMessage, "shortMessage");
+        this.mergeBase = mergeBase;
+        this.diffSizeBytes = diffSizeBytes;
+        this.diffTruncated = diffTruncated;
+    }
+
+    @Nonnull
+    public String getRefName() {
+        return refName;
+    }
+
+    @Nonnull
+    public String getTipId() {
+        return tipId;
+    }
+
+    public long getCommitTime() {
+        return commitTime;
+    }
+
+    @Nonnull
+    public String getAuthorName() {
+        return authorName;
+    }
+
+    @Nonnull
+    public String getAuthorEmail() {
+        return authorEmail;
+    }
+
+    @Nonnull
+    public String getShortMessage() {
+        return shortMessage;
+    }
+
+    @Nonnull
+    public Optional<String> getMergeBase() {
+        return Optional.ofNullable(mergeBase);
+    }
+
+    public long getDiffSizeBytes() {
+        return diffSizeBytes;
+    }
+
+    public boolean isDiffTruncated() {
+        return diffTruncated;
+    }
+
+    @Override
+    public String toString() {
+        return "PlannedBranch{" +
+                "refName='" + refName + '\'' +
+                ", tipId='" + tipId + '\'' +
+                ", authorEmail='" + authorEmail + '\'' +
+                ", mergeBase='" + mergeBase + '\'' +
+                ", diffSizeBytes=" + diffSizeBytes +
+                ", diffTruncated=" + diffTruncated +
+                '}';
+    }
+}
@@ -0,0 +1,267 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.plan;
+
+import ru.yoomoney.gradle.plugins.git.expired.branch.helper.StoreFiles;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * План удаления устаревших веток.
+ * <p>
+ * План составляется задачей planExpiredGitBranchesRemoval без изменения удаленных репозиториев и отправки писем
+ * и сохраняется в файл. Задача removeExpiredGitBranches, которой передан файл плана, удаляет ветки по плану
+ * без повторного сбора веток. Ветки, которые сдвинулись после составления плана, не удаляются.
+ * <p>
+ * План хранится в текстовом файле в UTF-8, одна запись в строке, поля разделены табуляцией:
+ * <pre>
+ * removal-plan    версия    время составления    staleDaysToDelete
+ * repository      путь      url origin           имя проекта
+ * branch          ref       коммит    время коммита    автор    email    заголовок    общий предок    размер diff    diff обрезан
+ * </pre>
+ * Строки branch относятся к предшествующей строке repository. Табуляция, перевод строки и обратный слеш
+ * в значениях экранируются, отсутствующее значение записывается пустой строкой.
+ */
+public class RemovalPlan {
+    private static final int VERSION = 1;
+    private static final String PLAN_RECORD = "removal-plan";
+    private static final String REPOSITORY_RECORD = "repository";
+    private static final String BRANCH_RECORD = "branch";
+
+    private final long createdAtMillis;
+    private final long staleDaysToDelete;
+    private final List<RepositoryRemovalPlan> repositories;
+
+    /**
+     * Конструктор
+     *
+     * @param createdAtMillis   время составления плана
+     * @param staleDaysToDelete количество дней без коммитов, после которого ветка удаляется
+     * @param repositories      планы удаления веток репозиториев
+     */
+    public RemovalPlan(long createdAtMillis, long staleDaysToDelete, @Nonnull List<RepositoryRemovalPlan> repositories) {
+        this.createdAtMillis = createdAtMillis;
+        this.staleDaysToDelete = staleDaysToDelete;
+        this.repositories = Collections.unmodifiableList(new ArrayList<>(requireNonNull(repositories, "repositories")));
+    }
+
+    public long getCreatedAtMillis() {
+        return createdAtMillis;
+    }
+
+    public long getStaleDaysToDelete() {
+        return staleDaysToDelete;
+    }
+
+    @Nonnull
+    public List<RepositoryRemovalPlan> getRepositories() {
+        return repositories;
+    }
+
+    /**
+     * Найти план удаления веток репозитория.
+     * Репозиторий ищется по абсолютному пути, а если план составлялся на другом агенте -
+     * по url origin, если он однозначно определяет репозиторий в плане.
+     *
+     * @param repoDir   локальная папка с репозиторием
+     * @param remoteUrl url origin репозитория, null если origin не настроен
+     * @return план удаления веток репозитория
+     */
+    @Nonnull
+    public Optional<RepositoryRemovalPlan> findRepository(@Nonnull File repoDir, @Nullable String remoteUrl) {
+        requireNonNull(repoDir, "repoDir");
+        File absoluteDir = repoDir.getAbsoluteFile().toPath().normalize().toFile();
+        Optional<RepositoryRemovalPlan> byPath = repositories.stream()
+                .filter(repository -> repository.getRepoDir().getAbsoluteFile().toPath().normalize().toFile()
+                        .equals(absoluteDir))
+                .findFirst();
+        if (byPath.isPresent() || remoteUrl == null) {
+            return byPath;
+        }
+        List<RepositoryRemovalPlan> byRemoteUrl = repositories.stream()
+                .filter(repository -> remoteUrl.equals(repository.getRemoteUrl().orElse(null)))
+                .collect(Collectors.toList());
+        return byRemoteUrl.size() == 1 ? Optional.of(byRemoteUrl.get(0)) : Optional.empty();
+    }
+
+    /**
+     * Сохранить план в файл
+     *
+     * @param file файл плана
+     */
+    public void write(@Nonnull File file) {
+        requireNonNull(file, "file");
+        try {
+            StoreFiles.writeAtomically(file, out -> {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                writeRecord(writer, PLAN_RECORD, String.valueOf(VERSION), String.valueOf(createdAtMillis),
+                        String.valueOf(staleDaysToDelete));
+                for (RepositoryRemovalPlan repository : repositories) {
+                    writeRecord(writer, REPOSITORY_RECORD, repository.getRepoDir().getPath(),
+                            repository.getRemoteUrl().orElse(""), repository.getProjectName());
+                    for (PlannedBranch branch : repository.getBranches()) {
+                        writeRecord(writer, BRANCH_RECORD, branch.getRefName(), branch.getTipId(),
+                                String.valueOf(branch.getCommitTime()), branch.getAuthorName(),
+                                branch.getAuthorEmail(), branch.getShortMessage(),
+                                branch.getMergeBase().orElse(""), String.valueOf(branch.getDiffSizeBytes()),
+                                String.valueOf(branch.isDiffTruncated()));
+                    }
+                }
+                writer.flush();
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("Can't write removal plan: file=" + file, e);
+        }
+    }
+
+    /**
+     * Прочитать план из файла
+     *
+     * @param file файл плана
+     * @return план удаления веток
+     */
+    @Nonnull
+    public static RemovalPlan read(@Nonnull File file) {
+        requireNonNull(file, "file");
+        try {
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            if (lines.isEmpty()) {
+                throw new IOException("Removal plan is empty");
+            }
+            List<String> header = readRecord(lines.get(0), PLAN_RECORD, 4);
+            if (Integer.parseInt(header.get(1)) != VERSION) {
+                throw new IOException("Unsupported removal plan version: version=" + header.get(1));
+            }
+            List<RepositoryRemovalPlan> repositories = new ArrayList<>();
+            List<String> repository = null;
+            List<PlannedBranch> branches = new ArrayList<>();
+            for (String line : lines.subList(1, lines.size())) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.startsWith(REPOSITORY_RECORD + '\t')) {
+                    if (repository != null) {
+                        repositories.add(toRepositoryPlan(repository, branches));
+                    }
+                    repository = readRecord(line, REPOSITORY_RECORD, 4);
+                    branches = new ArrayList<>();
+                } else if (repository != null) {
+                    branches.add(toPlannedBranch(readRecord(line, BRANCH_RECORD, 10)));
+                } else {
+                    throw new IOException("Branch record without repository: line=" + line);
+                }
+            }
+            if (repository != null) {
+                repositories.add(toRepositoryPlan(repository, branches));
+            }
+            return new RemovalPlan(Long.parseLong(header.get(2)), Long.parseLong(header.get(3)), repositories);
+        } catch (IOException | RuntimeException e) {
+            throw new RuntimeException("Can't read removal plan: file=" + file, e);
+        }
+    }
+
+    private static RepositoryRemovalPlan toRepositoryPlan(List<String> fields, List<PlannedBranch> branches) {
+        return new RepositoryRemovalPlan(new File(fields.get(1)), emptyToNull(fields.get(2)), fields.get(3),
+                branches);
+    }
+
+    private static PlannedBranch toPlannedBranch(List<String> fields) {
+        return new PlannedBranch(fields.get(1), fields.get(2), Long.parseLong(fields.get(3)), fields.get(4),
+                fields.get(5), fields.get(6), emptyToNull(fields.get(7)), Long.parseLong(fields.get(8)),
+                Boolean.parseBoolean(fields.get(9)));
+    }
+
+    @Nullable
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private static void writeRecord(Writer writer, String... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write('\t');
+            }
+            writer.write(escape(fields[i]));
+        }
+        writer.write('\n');
+    }
+
+    private static List<String> readRecord(String line, String recordType, int fieldsCount) throws IOException {
+        String[] rawFields = line.split("\t", -1);
+        if (rawFields.length != fieldsCount || !rawFields[0].equals(recordType)) {
+            throw new IOException("Invalid removal plan record: expectedType=" + recordType + ", line=" + line);
+        }
+        List<String> fields = new ArrayList<>(rawFields.length);
+        for (String rawField : rawFields) {
+            fields.add(unescape(rawField));
+        }
+        return fields;
+    }
+
+    private static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '\\':
+                    escaped.append("\\\\");
+                    break;
+                case '\t':
+                    escaped.append("\\t");
+                    break;
+                case '\n':
+                    escaped.append("\\n");
+                    break;
+                case '\r':
+                    escaped.append("\\r");
+                    break;
+                default:
+                    escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static String unescape(String value) throws IOException {
+        StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '\\') {
+                unescaped.append(c);
+                continue;
+            }
+            if (++i == value.length()) {
+                throw new IOException("Invalid escape sequence: value=" + value);
+            }
+            switch (value.charAt(i)) {
+                case '\\':
+                    unescaped.append('\\');
+                    break;
+                case 't':
+                    unescaped.append('\t');
+                    break;
+                case 'n':
+                    unescaped.append('\n');
+                    break;
+                case 'r':
+                    unescaped.append('\r');
+                    break;
+                default:
+                    throw new IOException("Invalid escape sequence: value=" + value);
+            }
+        }
+        return unescaped.toString();
+    }
+}
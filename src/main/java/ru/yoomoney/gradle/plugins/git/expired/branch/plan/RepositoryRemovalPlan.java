@@ -0,0 +1,58 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.plan;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * План удаления веток одного репозитория
+ */
+public class RepositoryRemovalPlan {
+    private final File repoDir;
+    @Nullable
+    private final String remoteUrl;
+    private final String projectName;
+    private final List<PlannedBranch> branches;
+
+    /**
+     * Конструктор
+     *
+     * @param repoDir     локальная папка с репозиторием, для которой составлен план
+     * @param remoteUrl   url origin репозитория, null если origin не настроен
+     * @param projectName имя проекта, используется в теме письма об удалении веток
+     * @param branches    ветки, которые будут удалены
+     */
+    public RepositoryRemovalPlan(@Nonnull File repoDir, @Nullable String remoteUrl, @Nonnull String projectName,
+                                 @Nonnull List<PlannedBranch> branches) {
+        this.repoDir = requireNonNull(repoDir, "repoDir");
+        this.remoteUrl = remoteUrl;
+        this.projectName = requireNonNull(projectName, "projectName");
+        this.branches = Collections.unmodifiableList(new ArrayList<>(requireNonNull(branches, "branches")));
+    }
+
+    @Nonnull
+    public File getRepoDir() {
+        return repoDir;
+    }
+
+    @Nonnull
+    public Optional<String> getRemoteUrl() {
+        return Optional.ofNullable(remoteUrl);
+    }
+
+    @Nonnull
+    public String getProjectName() {
+        return projectName;
+    }
+
+    @Nonnull
+    public List<PlannedBranch> getBranches() {
+        return branches;
+    }
+}
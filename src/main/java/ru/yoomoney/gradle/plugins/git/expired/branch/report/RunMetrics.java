@@ -0,0 +1,222 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.report;
+
+import javax.annotation.Nonnull;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Таймеры этапов и счетчики одного запуска задачи.
+ * <p>
+ * Метрики могут обновляться одновременно из нескольких потоков: время этапов, выполняемых параллельно,
+ * суммируется, поэтому суммарное время этапа может превышать время выполнения задачи.
+ */
+public class RunMetrics {
+
+    /**
+     * Этапы выполнения задачи
+     */
+    public enum Phase {
+        /**
+         * Чтение ref'ов веток
+         */
+        REF_LISTING("refListing"),
+        /**
+         * Чтение последних коммитов веток
+         */
+        COMMIT_PARSING("commitParsing"),
+        /**
+         * Фильтрация веток по паттернам игнорирования
+         */
+        FILTERING("filtering"),
+        /**
+         * Поиск общих предков веток с основной веткой
+         */
+        MERGE_BASE("mergeBase"),
+        /**
+         * Формирование diff веток
+         */
+        DIFF("diff"),
+        /**
+         * Отправка diff веток в архивный репозиторий
+         */
+        ARCHIVE_PUSH("archivePush"),
+        /**
+         * Удаление веток в удаленном репозитории
+         */
+        DELETE_PUSH("deletePush"),
+        /**
+         * Отправка писем через SMTP шлюз
+         */
+        SMTP("smtp"),
+        /**
+         * Обновление веток из origin перед сбором устаревших веток
+         */
+        FETCH("fetch");
+
+        private final String reportName;
+
+        Phase(String reportName) {
+            this.reportName = reportName;
+        }
+
+        /**
+         * Название этапа в отчете
+         */
+        public String getReportName() {
+            return reportName;
+        }
+    }
+
+    /**
+     * Счетчики запуска задачи
+     */
+    public enum Counter {
+        /**
+         * Количество прочитанных ref'ов веток
+         */
+        REFS_SCANNED("refsScanned"),
+        /**
+         * Количество коммитов, прочитанных из базы объектов
+         */
+        OBJECTS_READ("objectsRead"),
+        /**
+         * Размер сформированных diff веток в байтах
+         */
+        BYTES_DIFFED("bytesDiffed"),
+        /**
+         * Количество отправленных писем
+         */
+        MAILS_SENT("mailsSent"),
+        /**
+         * Количество повторных попыток отправки писем
+         */
+        RETRIES("retries"),
+        /**
+         * Количество писем, отложенных до отправки сводки
+         */
+        MAILS_POSTPONED("mailsPostponed"),
+        /**
+         * Количество веток, уведомление о которых не отправлено, так как оно уже было отправлено о том же коммите
+         */
+        BRANCHES_SUPPRESSED("branchesSuppressed");
+
+        private final String reportName;
+
+        Counter(String reportName) {
+            this.reportName = reportName;
+        }
+
+        /**
+         * Название счетчика в отчете
+         */
+        public String getReportName() {
+            return reportName;
+        }
+    }
+
+    private final Map<Phase, LongAdder> phaseNanos = new EnumMap<>(Phase.class);
+    private final Map<Phase, LongAdder> phaseCalls = new EnumMap<>(Phase.class);
+    private final Map<Counter, LongAdder> counters = new EnumMap<>(Counter.class);
+
+    public RunMetrics() {
+        for (Phase phase : Phase.values()) {
+            phaseNanos.put(phase, new LongAdder());
+            phaseCalls.put(phase, new LongAdder());
+        }
+        for (Counter counter : Counter.values()) {
+            counters.put(counter, new LongAdder());
+        }
+    }
+
+    /**
+     * Выполнить действие, учитывая время его выполнения в этапе phase
+     *
+     * @param phase  этап
+     * @param action действие
+     * @param <T>    тип результата действия
+     * @return результат действия
+     */
+    public <T> T time(@Nonnull Phase phase, @Nonnull Supplier<T> action) {
+        requireNonNull(phase, "phase");
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            addTime(phase, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Выполнить действие, учитывая время его выполнения в этапе phase
+     *
+     * @param phase  этап
+     * @param action действие
+     */
+    public void time(@Nonnull Phase phase, @Nonnull Runnable action) {
+        time(phase, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Учесть в этапе phase одно выполнение длительностью nanos
+     *
+     * @param phase этап
+     * @param nanos длительность в наносекундах
+     */
+    public void addTime(@Nonnull Phase phase, long nanos) {
+        phaseNanos.get(phase).add(nanos);
+        phaseCalls.get(phase).increment();
+    }
+
+    /**
+     * Увеличить счетчик
+     *
+     * @param counter счетчик
+     * @param delta   величина увеличения
+     */
+    public void increment(@Nonnull Counter counter, long delta) {
+        counters.get(counter).add(delta);
+    }
+
+    /**
+     * Суммарное время этапа в наносекундах
+     */
+    public long getNanos(@Nonnull Phase phase) {
+        return phaseNanos.get(phase).sum();
+    }
+
+    /**
+     * Количество выполнений этапа
+     */
+    public long getCalls(@Nonnull Phase phase) {
+        return phaseCalls.get(phase).sum();
+    }
+
+    /**
+     * Значение счетчика
+     */
+    public long getCount(@Nonnull Counter counter) {
+        return counters.get(counter).sum();
+    }
+
+    /**
+     * Добавить значения метрик к метрикам total
+     *
+     * @param total метрики, к которым добавляются значения
+     */
+    void addTo(RunMetrics total) {
+        for (Phase phase : Phase.values()) {
+            total.phaseNanos.get(phase).add(getNanos(phase));
+            total.phaseCalls.get(phase).add(getCalls(phase));
+        }
+        for (Counter counter : Counter.values()) {
+            total.counters.get(counter).add(getCount(counter));
+        }
+    }
+}
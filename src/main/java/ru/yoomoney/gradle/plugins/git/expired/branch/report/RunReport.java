@@ -0,0 +1,191 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.report;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Отчет о запуске задачи в формате JSON.
+ * <p>
+ * Отчет содержит время выполнения и метрики задачи в целом и каждого обработанного репозитория,
+ * чтобы по нему можно было найти репозитории, которые замедляют выполнение задачи.
+ * Метрики, которые не относятся к одному репозиторию (например, отправка общих писем), учитываются
+ * в {@link #getTaskMetrics()}. Итоговые метрики задачи - сумма метрик задачи и всех репозиториев.
+ */
+public class RunReport {
+    private static final Logger log = Logging.getLogger(RunReport.class);
+
+    private final String taskName;
+    private final Instant startedAt = Instant.now();
+    private final long startNanos = System.nanoTime();
+    private final RunMetrics taskMetrics = new RunMetrics();
+    private final Map<File, RepositoryReport> repositories = new LinkedHashMap<>();
+
+    /**
+     * Конструктор
+     *
+     * @param taskName имя задачи
+     */
+    public RunReport(@Nonnull String taskName) {
+        this.taskName = requireNonNull(taskName, "taskName");
+    }
+
+    /**
+     * Метрики задачи, которые не относятся к одному репозиторию
+     */
+    public RunMetrics getTaskMetrics() {
+        return taskMetrics;
+    }
+
+    /**
+     * Обработать репозиторий, учитывая время обработки и ошибку обработки в отчете
+     *
+     * @param repoDir локальная папка с репозиторием
+     * @param action  обработка репозитория, получает метрики репозитория
+     * @param <T>     тип результата обработки
+     * @return результат обработки
+     */
+    public <T> T measureRepository(@Nonnull File repoDir, @Nonnull Function<RunMetrics, T> action) {
+        requireNonNull(repoDir, "repoDir");
+        RepositoryReport repository;
+        synchronized (repositories) {
+            repository = repositories.computeIfAbsent(repoDir, dir -> new RepositoryReport());
+        }
+        long start = System.nanoTime();
+        try {
+            return action.apply(repository.metrics);
+        } catch (RuntimeException e) {
+            repository.failed = true;
+            throw e;
+        } finally {
+            repository.nanos = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Записать отчет в файл. Ошибка записи отчета не прерывает выполнение задачи
+     *
+     * @param file файл отчета
+     */
+    public void writeTo(@Nonnull File file) {
+        requireNonNull(file, "file");
+        try {
+            File parent = file.getAbsoluteFile().getParentFile();
+            Files.createDirectories(parent.toPath());
+            Files.write(file.toPath(), toJson().getBytes(StandardCharsets.UTF_8));
+            log.lifecycle("Run report written: file={}", file);
+        } catch (IOException e) {
+            log.warn("Can't write run report: file={}", file, e);
+        }
+    }
+
+    /**
+     * Сформировать отчет в формате JSON
+     */
+    String toJson() {
+        List<Map.Entry<File, RepositoryReport>> repositoryReports;
+        synchronized (repositories) {
+            repositoryReports = new ArrayList<>(repositories.entrySet());
+        }
+        RunMetrics total = new RunMetrics();
+        taskMetrics.addTo(total);
+        repositoryReports.forEach(repository -> repository.getValue().metrics.addTo(total));
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"task\": ").append(quote(taskName)).append(",\n");
+        json.append("  \"startedAt\": ").append(quote(startedAt.toString())).append(",\n");
+        json.append("  \"durationMillis\": ").append(toMillis(System.nanoTime() - startNanos)).append(",\n");
+        appendMetrics(json, total, "  ");
+        json.append(",\n  \"repositories\": [");
+        for (int i = 0; i < repositoryReports.size(); i++) {
+            RepositoryReport repository = repositoryReports.get(i).getValue();
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\n");
+            json.append("      \"repoDir\": ").append(quote(repositoryReports.get(i).getKey().getPath())).append(",\n");
+            json.append("      \"failed\": ").append(repository.failed).append(",\n");
+            json.append("      \"durationMillis\": ").append(toMillis(repository.nanos)).append(",\n");
+            appendMetrics(json, repository.metrics, "      ");
+            json.append("\n    }");
+        }
+        json.append(repositoryReports.isEmpty() ? "]\n" : "\n  ]\n");
+        json.append("}\n");
+        return json.toString();
+    }
+
+    private static void appendMetrics(StringBuilder json, RunMetrics metrics, String indent) {
+        json.append(indent).append("\"phases\": {");
+        RunMetrics.Phase[] phases = RunMetrics.Phase.values();
+        for (int i = 0; i < phases.length; i++) {
+            json.append(i == 0 ? "\n" : ",\n").append(indent).append("  ")
+                    .append(quote(phases[i].getReportName())).append(": {\"millis\": ")
+                    .append(toMillis(metrics.getNanos(phases[i])))
+                    .append(", \"calls\": ").append(metrics.getCalls(phases[i])).append('}');
+        }
+        json.append('\n').append(indent).append("},\n");
+        json.append(indent).append("\"counters\": {");
+        RunMetrics.Counter[] counters = RunMetrics.Counter.values();
+        for (int i = 0; i < counters.length; i++) {
+            json.append(i == 0 ? "\n" : ",\n").append(indent).append("  ")
+                    .append(quote(counters[i].getReportName())).append(": ").append(metrics.getCount(counters[i]));
+        }
+        json.append('\n').append(indent).append('}');
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Отчет об обработке одного репозитория
+     */
+    private static class RepositoryReport {
+        private final RunMetrics metrics = new RunMetrics();
+        private volatile boolean failed;
+        private volatile long nanos;
+    }
+}
@@ -1,37 +1,50 @@
 package ru.yoomoney.gradle.plugins.git.expired.branch.settings;
 
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.ProviderFactory;
+
+import javax.inject.Inject;
+
 /**
  * Настройки подключения к Email шлюзу
  */
-@SuppressWarnings({"WeakerAccess", "PublicField"})
-public class EmailConnectionExtension {
+public abstract class EmailConnectionExtension {
+
+    /**
+     * Конструктор
+     *
+     * @param providers фабрика провайдеров, пользователь и пароль по-умолчанию читаются
+     *                  из переменных окружения EMAIL_USER и EMAIL_PASSWORD
+     */
+    @Inject
+    public EmailConnectionExtension(ProviderFactory providers) {
+        getEmailAuthUser().convention(providers.environmentVariable("EMAIL_USER"));
+        getEmailAuthPassword().convention(providers.environmentVariable("EMAIL_PASSWORD"));
+        getReuseConnection().convention(EmailConnectionSettings.DEFAULT_REUSE_CONNECTION);
+    }
 
     /**
      * Хост шлюза для отправки email
      */
-    public String emailHost;
+    public abstract Property<String> getEmailHost();
 
     /**
      * Порт шлюза для отправки email
      */
-    public int emailPort;
+    public abstract Property<Integer> getEmailPort();
 
     /**
      * Пользователь для авторзации в email шлюзе
      */
-    public String emailAuthUser;
+    public abstract Property<String> getEmailAuthUser();
 
     /**
      * Пароль для авторзации в email шлюзе
      */
-    public String emailAuthPassword;
+    public abstract Property<String> getEmailAuthPassword();
 
     /**
-     * Конструктор
+     * Переиспользовать соединение с шлюзом для отправки всех писем задачи
      */
-    @SuppressWarnings("CallToSystemGetenv")
-    public EmailConnectionExtension() {
-        emailAuthUser = System.getenv("EMAIL_USER");
-        emailAuthPassword = System.getenv("EMAIL_PASSWORD");
-    }
+    public abstract Property<Boolean> getReuseConnection();
 }
@@ -1,22 +1,34 @@
 package ru.yoomoney.gradle.plugins.git.expired.branch.settings;
 
+import java.io.Serializable;
+
 /**
  * Настройки подключения к хосту с Email
  *
  * @author Vasily Sozykin
  *         Date: 14.03.2017.
  */
-public class EmailConnectionSettings {
+public class EmailConnectionSettings implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Переиспользование соединения с шлюзом по-умолчанию, общее для билдера и расширения плагина
+     */
+    static final boolean DEFAULT_REUSE_CONNECTION = true;
+
     private final String emailHost;
     private final Integer emailPort;
     private final String emailAuthUser;
     private final String emailAuthPassword;
+    private final boolean reuseConnection;
 
-    private EmailConnectionSettings(String emailHost, Integer emailPort, String emailAuthUser, String emailAuthPassword) {
+    private EmailConnectionSettings(String emailHost, Integer emailPort, String emailAuthUser, String emailAuthPassword,
+                                    boolean reuseConnection) {
         this.emailHost = emailHost;
         this.emailPort = emailPort;
         this.emailAuthUser = emailAuthUser;
         this.emailAuthPassword = emailAuthPassword;
+        this.reuseConnection = reuseConnection;
     }
 
     public String getEmailHost() {
@@ -35,6 +47,10 @@ public class EmailConnectionSettings {
         return emailAuthPassword;
     }
 
+    public boolean isReuseConnection() {
+        return reuseConnection;
+    }
+
     /**
      * Билдер
      */
@@ -56,6 +72,10 @@ public class EmailConnectionSettings {
          * Пароль
          */
         String emailAuthPassword;
+        /**
+         * Переиспользовать соединение с шлюзом для отправки нескольких писем
+         */
+        boolean reuseConnection = DEFAULT_REUSE_CONNECTION;
 
         public Builder withEmailHost(String emailHost) {
             this.emailHost = emailHost;
@@ -77,8 +97,13 @@ public class EmailConnectionSettings {
             return this;
         }
 
+        public Builder withReuseConnection(boolean reuseConnection) {
+            this.reuseConnection = reuseConnection;
+            return this;
+        }
+
         public EmailConnectionSettings build() {
-            return new EmailConnectionSettings(emailHost, emailPort, emailAuthUser, emailAuthPassword);
+            return new EmailConnectionSettings(emailHost, emailPort, emailAuthUser, emailAuthPassword, reuseConnection);
         }
     }
 }
\ No newline at end of file
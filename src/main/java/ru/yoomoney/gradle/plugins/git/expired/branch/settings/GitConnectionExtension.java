@@ -1,9 +1,6 @@
 package ru.yoomoney.gradle.plugins.git.expired.branch.settings;
 
-import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
-
-import static java.util.Objects.requireNonNull;
+import org.gradle.api.provider.Property;
 
 /**
  * Настройки подключения к Git
@@ -11,60 +8,24 @@ import static java.util.Objects.requireNonNull;
  * @author horyukova
  * @since 22.04.2019
  */
-public class GitConnectionExtension {
+public abstract class GitConnectionExtension {
     /**
      *  Путь до приватного ssh ключа для доступа в git
      */
-    private String pathToGitPrivateSshKey;
-
-    @Nullable
-    public String getPathToGitPrivateSshKey() {
-        return pathToGitPrivateSshKey;
-    }
-
-    public void setPathToGitPrivateSshKey(String pathToGitPrivateSshKey) {
-        this.pathToGitPrivateSshKey = pathToGitPrivateSshKey;
-    }
+    public abstract Property<String> getPathToGitPrivateSshKey();
 
     /**
      *  Парольная фраза ssh ключа для доступа в git
      */
-    private String passphraseSshKey;
-
-    @Nullable
-    public String getPassphraseSshKey() {
-        return passphraseSshKey;
-    }
-
-    public void setPassphraseSshKey(String passphraseSshKey) {
-        this.passphraseSshKey = passphraseSshKey;
-    }
+    public abstract Property<String> getPassphraseSshKey();
 
     /**
      *  Пользователь, от имени которого будет производиться коммит в гит
      */
-    @Nonnull
-    private String username;
-
-    public String getUsername() {
-        return username;
-    }
-
-    public void setUsername(@Nonnull String username) {
-        this.username = requireNonNull(username);
-    }
+    public abstract Property<String> getUsername();
 
     /**
      *  Email пользователя, от имени которого будет производиться коммит в гит
      */
-    @Nonnull
-    private String email;
-
-    public String getEmail() {
-        return email;
-    }
-
-    public void setEmail(@Nonnull String email) {
-        this.email = requireNonNull(email);
-    }
+    public abstract Property<String> getEmail();
 }
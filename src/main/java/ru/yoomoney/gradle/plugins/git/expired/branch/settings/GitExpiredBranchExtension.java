@@ -1,66 +1,227 @@
 package ru.yoomoney.gradle.plugins.git.expired.branch.settings;
 
-import javax.annotation.Nullable;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+
+import javax.inject.Inject;
 import java.io.File;
-import java.util.Arrays;
-import java.util.Collection;
+
+import static ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchSettings.DEFAULT_ARCHIVE_DIFF_MAX_SIZE_BYTES;
+import static ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchSettings.DEFAULT_BRANCH_SCAN_THREADS;
+import static ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchSettings.DEFAULT_BRANCH_TIP_CACHE_ENABLED;
+import static ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchSettings.DEFAULT_BRANCH_TIP_CACHE_MAX_ENTRIES;
+import static ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchSettings.DEFAULT_DELETE_BRANCHES_BATCH_SIZE;
+import static ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchSettings.DEFAULT_DIGEST_WINDOW_DAYS;
+import static ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchSettings.DEFAULT_FETCH_BEFORE_SCAN;
+import static ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchSettings.DEFAULT_IGNORE_BRANCHES_PATTERNS;
+import static ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchSettings.DEFAULT_INCLUDE_BRANCHES_PREFIXES;
+import static ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchSettings.DEFAULT_NOTIFICATION_MAX_ATTEMPTS;
+import static ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchSettings.DEFAULT_NOTIFICATION_RETRY_DELAY_MILLIS;
+import static ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchSettings.DEFAULT_NOTIFICATION_THREADS;
+import static ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchSettings.DEFAULT_RENOTIFY_INTERVAL_DAYS;
+import static ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchSettings.DEFAULT_REPOSITORY_SCAN_THREADS;
+import static ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchSettings.DEFAULT_STALE_DAYS_TO_DELETE;
+import static ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchSettings.DEFAULT_STALE_DAYS_TO_NOTIFY;
 
 /**
- * Настройки плагина
+ * Настройки плагина.
+ * Настройки типа long имеют сеттеры, принимающие любое число, чтобы в build.gradle их можно было задать без суффикса L
  */
-@SuppressWarnings({"WeakerAccess", "PublicField"})
-public class GitExpiredBranchExtension {
+public abstract class GitExpiredBranchExtension {
+
+    private final Property<Long> staleDaysToNotify;
+    private final Property<Long> staleDaysToDelete;
+    private final Property<Long> archiveDiffMaxSizeBytes;
+    private final Property<Long> notificationRetryDelayMillis;
+
     /**
-     * Локальная папка с репозиторием
+     * Конструктор, задает значения настроек по-умолчанию.
+     * Значения совпадают со значениями по-умолчанию {@link GitExpiredBranchSettings.Builder}
+     *
+     * @param objects фабрика объектов для создания свойств
      */
-    @Nullable
-    public File repoDir = null;
+    @Inject
+    public GitExpiredBranchExtension(ObjectFactory objects) {
+        staleDaysToNotify = objects.property(Long.class).convention(DEFAULT_STALE_DAYS_TO_NOTIFY);
+        staleDaysToDelete = objects.property(Long.class).convention(DEFAULT_STALE_DAYS_TO_DELETE);
+        archiveDiffMaxSizeBytes = objects.property(Long.class).convention(DEFAULT_ARCHIVE_DIFF_MAX_SIZE_BYTES);
+        notificationRetryDelayMillis = objects.property(Long.class).convention(DEFAULT_NOTIFICATION_RETRY_DELAY_MILLIS);
+        getIgnoreBranchesPatterns().convention(DEFAULT_IGNORE_BRANCHES_PATTERNS);
+        getBranchScanThreads().convention(DEFAULT_BRANCH_SCAN_THREADS);
+        getBranchTipCacheEnabled().convention(DEFAULT_BRANCH_TIP_CACHE_ENABLED);
+        getBranchTipCacheMaxEntries().convention(DEFAULT_BRANCH_TIP_CACHE_MAX_ENTRIES);
+        getDeleteBranchesBatchSize().convention(DEFAULT_DELETE_BRANCHES_BATCH_SIZE);
+        getNotificationThreads().convention(DEFAULT_NOTIFICATION_THREADS);
+        getNotificationMaxAttempts().convention(DEFAULT_NOTIFICATION_MAX_ATTEMPTS);
+        getIncludeBranchesPrefixes().convention(DEFAULT_INCLUDE_BRANCHES_PREFIXES);
+        getRepositoryScanThreads().convention(DEFAULT_REPOSITORY_SCAN_THREADS);
+        getFetchBeforeScan().convention(DEFAULT_FETCH_BEFORE_SCAN);
+        getDigestWindowDays().convention(DEFAULT_DIGEST_WINDOW_DAYS);
+        getRenotifyIntervalDays().convention(DEFAULT_RENOTIFY_INTERVAL_DAYS);
+    }
+
+    /**
+     * Локальная папка с репозиторием, по-умолчанию - корневая папка gradle проекта
+     */
+    public abstract Property<File> getRepoDir();
 
     /**
      * Репозиторий для архивации диффов
      */
-    @Nullable
-    public String gitArchiveRepository;
+    public abstract Property<String> getGitArchiveRepository();
 
     /**
      * Адрес почты от которого придет уведомление об устареших ветках
      */
-    @Nullable
-    public String notifierEmail;
+    public abstract Property<String> getNotifierEmail();
 
     /**
      * Адрес почты от которого придет уведомление об удалении устаревших веток
      */
-    @Nullable
-    public String removerEmail;
+    public abstract Property<String> getRemoverEmail();
 
     /**
      * Адрес почты на который придет письмо при неуспехе отправки уведомлений
      */
-    @Nullable
-    public String adminEmail;
+    public abstract Property<String> getAdminEmail();
 
     /**
      * Количество дней по истечении которых начинаем пинговать авторов веток,
      * если в ветках не было коммитов
      */
-    @Nullable
-    public long staleDaysToNotify = 30L;
+    public Property<Long> getStaleDaysToNotify() {
+        return staleDaysToNotify;
+    }
+
+    /**
+     * Задать значение staleDaysToNotify числом любого типа, например, 30 без суффикса L
+     */
+    public void setStaleDaysToNotify(Number staleDaysToNotify) {
+        this.staleDaysToNotify.set(staleDaysToNotify.longValue());
+    }
 
     /**
      * Количество дней по истечении которых ветка удаляется,
      * а дифф переносится в архивный репозиторий
      */
-    @Nullable
-    public long staleDaysToDelete = 60L;
+    public Property<Long> getStaleDaysToDelete() {
+        return staleDaysToDelete;
+    }
+
+    /**
+     * Задать значение staleDaysToDelete числом любого типа, например, 30 без суффикса L
+     */
+    public void setStaleDaysToDelete(Number staleDaysToDelete) {
+        this.staleDaysToDelete.set(staleDaysToDelete.longValue());
+    }
 
     /**
      * Список паттернов веток, которые не нужно удалять
      */
-    @Nullable
-    public Collection<String> ignoreBranchesPatterns = Arrays.asList(new String[]{
-        "^refs/remotes/origin/dev$",
-        "^refs/remotes/origin/master$",
-        "^refs/remotes/origin/HEAD$"
-    });
+    public abstract ListProperty<String> getIgnoreBranchesPatterns();
+
+    /**
+     * Количество потоков для сбора информации о последних коммитах веток
+     */
+    public abstract Property<Integer> getBranchScanThreads();
+
+    /**
+     * Использовать хранимый между запусками кэш последних коммитов веток
+     */
+    public abstract Property<Boolean> getBranchTipCacheEnabled();
+
+    /**
+     * Максимальное количество записей в кэше последних коммитов веток
+     */
+    public abstract Property<Integer> getBranchTipCacheMaxEntries();
+
+    /**
+     * Количество веток, удаляемых в удаленном репозитории одним push.
+     * Значение меньше 1 означает удаление всех веток одним push
+     */
+    public abstract Property<Integer> getDeleteBranchesBatchSize();
+
+    /**
+     * Максимальный размер diff ветки в байтах, сохраняемого в архивный репозиторий.
+     * Diff большего размера обрезается, в конец файла дописывается маркер обрезки. Значение меньше 1 - без ограничения
+     */
+    public Property<Long> getArchiveDiffMaxSizeBytes() {
+        return archiveDiffMaxSizeBytes;
+    }
+
+    /**
+     * Задать значение archiveDiffMaxSizeBytes числом любого типа, например, 30 без суффикса L
+     */
+    public void setArchiveDiffMaxSizeBytes(Number archiveDiffMaxSizeBytes) {
+        this.archiveDiffMaxSizeBytes.set(archiveDiffMaxSizeBytes.longValue());
+    }
+
+    /**
+     * Количество потоков для отправки писем
+     */
+    public abstract Property<Integer> getNotificationThreads();
+
+    /**
+     * Количество попыток отправки письма, после неуспеха всех попыток письмо пересылается на adminEmail
+     */
+    public abstract Property<Integer> getNotificationMaxAttempts();
+
+    /**
+     * Задержка перед повторной отправкой письма в миллисекундах, каждая следующая задержка увеличивается вдвое
+     */
+    public Property<Long> getNotificationRetryDelayMillis() {
+        return notificationRetryDelayMillis;
+    }
+
+    /**
+     * Задать значение notificationRetryDelayMillis числом любого типа, например, 30 без суффикса L
+     */
+    public void setNotificationRetryDelayMillis(Number notificationRetryDelayMillis) {
+        this.notificationRetryDelayMillis.set(notificationRetryDelayMillis.longValue());
+    }
+
+    /**
+     * Префиксы ref'ов веток, среди которых ищутся устаревшие ветки.
+     * Ветки вне этих префиксов не читаются из репозитория
+     */
+    public abstract ListProperty<String> getIncludeBranchesPrefixes();
+
+    /**
+     * Локальные папки с репозиториями, которые обрабатываются одним запуском задачи.
+     * Если не заданы, обрабатывается только repoDir
+     */
+    public abstract ListProperty<File> getRepoDirs();
+
+    /**
+     * Количество репозиториев, обрабатываемых одновременно
+     */
+    public abstract Property<Integer> getRepositoryScanThreads();
+
+    /**
+     * Обновлять ветки из origin перед сбором устаревших веток, ветки, удаленные в origin, удаляются локально
+     */
+    public abstract Property<Boolean> getFetchBeforeScan();
+
+    /**
+     * Шаблон письма об устаревших ветках. Если не задан, используется шаблон по-умолчанию
+     */
+    public abstract Property<String> getStaleBranchesMailTemplate();
+
+    /**
+     * Шаблон письма об удаленных ветках. Если не задан, используется шаблон по-умолчанию
+     */
+    public abstract Property<String> getDeletedBranchesMailTemplate();
+
+    /**
+     * Длительность окна сводки уведомлений в днях. Устаревшие ветки накапливаются между запусками,
+     * и каждый автор получает одно письмо-сводку при закрытии окна. 0 - уведомления отправляются при каждом запуске
+     */
+    public abstract Property<Integer> getDigestWindowDays();
+
+    /**
+     * Интервал повторного уведомления в днях. Об устаревшей ветке, последний коммит которой не изменился,
+     * повторное уведомление отправляется не раньше, чем через этот интервал. 0 - уведомления отправляются при каждом запуске
+     */
+    public abstract Property<Integer> getRenotifyIntervalDays();
 }
@@ -1,14 +1,43 @@
 package ru.yoomoney.gradle.plugins.git.expired.branch.settings;
 
+import javax.annotation.Nullable;
 import java.io.File;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.regex.Pattern;
 
 /**
  * Настройки плагина
  */
-public class GitExpiredBranchSettings {
+public class GitExpiredBranchSettings implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // Значения настроек по-умолчанию, общие для билдера и расширения плагина
+    static final long DEFAULT_STALE_DAYS_TO_NOTIFY = 30L;
+    static final long DEFAULT_STALE_DAYS_TO_DELETE = 60L;
+    static final List<String> DEFAULT_IGNORE_BRANCHES_PATTERNS = Collections.unmodifiableList(Arrays.asList(
+            "^refs/remotes/origin/dev$",
+            "^refs/remotes/origin/master$",
+            "^refs/remotes/origin/HEAD$"
+    ));
+    static final int DEFAULT_BRANCH_SCAN_THREADS = Runtime.getRuntime().availableProcessors();
+    static final boolean DEFAULT_BRANCH_TIP_CACHE_ENABLED = true;
+    static final int DEFAULT_BRANCH_TIP_CACHE_MAX_ENTRIES = 100_000;
+    static final int DEFAULT_DELETE_BRANCHES_BATCH_SIZE = 100;
+    static final long DEFAULT_ARCHIVE_DIFF_MAX_SIZE_BYTES = 52_428_800L;
+    static final int DEFAULT_NOTIFICATION_THREADS = 4;
+    static final int DEFAULT_NOTIFICATION_MAX_ATTEMPTS = 3;
+    static final long DEFAULT_NOTIFICATION_RETRY_DELAY_MILLIS = 1000L;
+    static final List<String> DEFAULT_INCLUDE_BRANCHES_PREFIXES = Collections.singletonList("refs/remotes/");
+    static final int DEFAULT_REPOSITORY_SCAN_THREADS = 4;
+    static final boolean DEFAULT_FETCH_BEFORE_SCAN = false;
+    static final int DEFAULT_DIGEST_WINDOW_DAYS = 0;
+    static final int DEFAULT_RENOTIFY_INTERVAL_DAYS = 0;
+
     private final File repoDir;
     private final String gitArchiveRepository;
     private final String notifierEmail;
@@ -17,6 +46,24 @@ public class GitExpiredBranchSettings {
     private final long staleDaysToNotify;
     private final long staleDaysToDelete;
     private final Collection<Pattern> ignoreBranches;
+    private final int branchScanThreads;
+    private final boolean branchTipCacheEnabled;
+    private final int branchTipCacheMaxEntries;
+    private final int deleteBranchesBatchSize;
+    private final long archiveDiffMaxSizeBytes;
+    private final int notificationThreads;
+    private final int notificationMaxAttempts;
+    private final long notificationRetryDelayMillis;
+    private final Collection<String> includeBranchesPrefixes;
+    private final Collection<File> repoDirs;
+    private final int repositoryScanThreads;
+    private final boolean fetchBeforeScan;
+    @Nullable
+    private final String staleBranchesMailTemplate;
+    @Nullable
+    private final String deletedBranchesMailTemplate;
+    private final int digestWindowDays;
+    private final int renotifyIntervalDays;
 
     private GitExpiredBranchSettings(
             File repoDir,
@@ -26,7 +73,23 @@ public class GitExpiredBranchSettings {
             String adminEmail,
             long staleDaysToNotify,
             long staleDaysToDelete,
-            Collection<Pattern> ignoreBranches
+            Collection<Pattern> ignoreBranches,
+            int branchScanThreads,
+            boolean branchTipCacheEnabled,
+            int branchTipCacheMaxEntries,
+            int deleteBranchesBatchSize,
+            long archiveDiffMaxSizeBytes,
+            int notificationThreads,
+            int notificationMaxAttempts,
+            long notificationRetryDelayMillis,
+            Collection<String> includeBranchesPrefixes,
+            Collection<File> repoDirs,
+            int repositoryScanThreads,
+            boolean fetchBeforeScan,
+            @Nullable String staleBranchesMailTemplate,
+            @Nullable String deletedBranchesMailTemplate,
+            int digestWindowDays,
+            int renotifyIntervalDays
     ) {
         this.repoDir = repoDir;
         this.gitArchiveRepository = gitArchiveRepository;
@@ -36,6 +99,22 @@ public class GitExpiredBranchSettings {
         this.staleDaysToNotify = staleDaysToNotify;
         this.staleDaysToDelete = staleDaysToDelete;
         this.ignoreBranches = ignoreBranches;
+        this.branchScanThreads = branchScanThreads;
+        this.branchTipCacheEnabled = branchTipCacheEnabled;
+        this.branchTipCacheMaxEntries = branchTipCacheMaxEntries;
+        this.deleteBranchesBatchSize = deleteBranchesBatchSize;
+        this.archiveDiffMaxSizeBytes = archiveDiffMaxSizeBytes;
+        this.notificationThreads = notificationThreads;
+        this.notificationMaxAttempts = notificationMaxAttempts;
+        this.notificationRetryDelayMillis = notificationRetryDelayMillis;
+        this.includeBranchesPrefixes = includeBranchesPrefixes;
+        this.repoDirs = repoDirs;
+        this.repositoryScanThreads = repositoryScanThreads;
+        this.fetchBeforeScan = fetchBeforeScan;
+        this.staleBranchesMailTemplate = staleBranchesMailTemplate;
+        this.deletedBranchesMailTemplate = deletedBranchesMailTemplate;
+        this.digestWindowDays = digestWindowDays;
+        this.renotifyIntervalDays = renotifyIntervalDays;
     }
 
     public File getRepoDir() {
@@ -70,6 +149,87 @@ public class GitExpiredBranchSettings {
         return ignoreBranches;
     }
 
+    public int getBranchScanThreads() {
+        return branchScanThreads;
+    }
+
+    public boolean isBranchTipCacheEnabled() {
+        return branchTipCacheEnabled;
+    }
+
+    public int getBranchTipCacheMaxEntries() {
+        return branchTipCacheMaxEntries;
+    }
+
+    public int getDeleteBranchesBatchSize() {
+        return deleteBranchesBatchSize;
+    }
+
+    public long getArchiveDiffMaxSizeBytes() {
+        return archiveDiffMaxSizeBytes;
+    }
+
+    public int getNotificationThreads() {
+        return notificationThreads;
+    }
+
+    public int getNotificationMaxAttempts() {
+        return notificationMaxAttempts;
+    }
+
+    public long getNotificationRetryDelayMillis() {
+        return notificationRetryDelayMillis;
+    }
+
+    public Collection<String> getIncludeBranchesPrefixes() {
+        return includeBranchesPrefixes;
+    }
+
+    /**
+     * Локальные папки с репозиториями, которые обрабатываются одним запуском задачи
+     */
+    public Collection<File> getRepoDirs() {
+        return repoDirs;
+    }
+
+    public int getRepositoryScanThreads() {
+        return repositoryScanThreads;
+    }
+
+    public boolean isFetchBeforeScan() {
+        return fetchBeforeScan;
+    }
+
+    /**
+     * Шаблон письма об устаревших ветках, null - шаблон по-умолчанию
+     */
+    @Nullable
+    public String getStaleBranchesMailTemplate() {
+        return staleBranchesMailTemplate;
+    }
+
+    /**
+     * Шаблон письма об удаленных ветках, null - шаблон по-умолчанию
+     */
+    @Nullable
+    public String getDeletedBranchesMailTemplate() {
+        return deletedBranchesMailTemplate;
+    }
+
+    /**
+     * Длительность окна сводки уведомлений в днях, 0 - уведомления отправляются при каждом запуске
+     */
+    public int getDigestWindowDays() {
+        return digestWindowDays;
+    }
+
+    /**
+     * Интервал повторного уведомления об устаревшей ветке в днях, 0 - уведомления отправляются при каждом запуске
+     */
+    public int getRenotifyIntervalDays() {
+        return renotifyIntervalDays;
+    }
+
     /**
      * Билдер
      */
@@ -103,18 +263,104 @@ public class GitExpiredBranchSettings {
          * Количество дней по истечении которых начинаем пинговать авторов веток,
          * если в ветках не было коммитов
          */
-        private long staleDaysToNotify;
+        private long staleDaysToNotify = DEFAULT_STALE_DAYS_TO_NOTIFY;
 
         /**
          * Количество дней по истечении которых ветка удаляется,
          * а дифф переносится в архивный репозиторий
          */
-        private long staleDaysToDelete;
+        private long staleDaysToDelete = DEFAULT_STALE_DAYS_TO_DELETE;
 
         /**
          * Список паттернов веток, которые не нужно удалять
          */
-        private Collection<String> ignoreBranchesPatterns;
+        private Collection<String> ignoreBranchesPatterns = DEFAULT_IGNORE_BRANCHES_PATTERNS;
+
+        /**
+         * Количество потоков для сбора информации о последних коммитах веток
+         */
+        private int branchScanThreads = DEFAULT_BRANCH_SCAN_THREADS;
+
+        /**
+         * Использовать хранимый между запусками кэш последних коммитов веток
+         */
+        private boolean branchTipCacheEnabled = DEFAULT_BRANCH_TIP_CACHE_ENABLED;
+
+        /**
+         * Максимальное количество записей в кэше последних коммитов веток
+         */
+        private int branchTipCacheMaxEntries = DEFAULT_BRANCH_TIP_CACHE_MAX_ENTRIES;
+
+        /**
+         * Количество веток, удаляемых в удаленном репозитории одним push.
+         * Значение меньше 1 означает удаление всех веток одним push
+         */
+        private int deleteBranchesBatchSize = DEFAULT_DELETE_BRANCHES_BATCH_SIZE;
+
+        /**
+         * Максимальный размер diff ветки в байтах, сохраняемого в архивный репозиторий.
+         * Diff большего размера обрезается, в конец файла дописывается маркер обрезки. Значение меньше 1 - без ограничения
+         */
+        private long archiveDiffMaxSizeBytes = DEFAULT_ARCHIVE_DIFF_MAX_SIZE_BYTES;
+
+        /**
+         * Количество потоков для отправки писем
+         */
+        private int notificationThreads = DEFAULT_NOTIFICATION_THREADS;
+
+        /**
+         * Количество попыток отправки письма, после неуспеха всех попыток письмо пересылается на adminEmail
+         */
+        private int notificationMaxAttempts = DEFAULT_NOTIFICATION_MAX_ATTEMPTS;
+
+        /**
+         * Задержка перед повторной отправкой письма в миллисекундах, каждая следующая задержка увеличивается вдвое
+         */
+        private long notificationRetryDelayMillis = DEFAULT_NOTIFICATION_RETRY_DELAY_MILLIS;
+
+        /**
+         * Префиксы ref'ов веток, среди которых ищутся устаревшие ветки.
+         * Ветки вне этих префиксов не читаются из репозитория
+         */
+        private Collection<String> includeBranchesPrefixes = DEFAULT_INCLUDE_BRANCHES_PREFIXES;
+
+        /**
+         * Локальные папки с репозиториями, которые обрабатываются одним запуском задачи.
+         * Если не заданы, обрабатывается только repoDir
+         */
+        private Collection<File> repoDirs;
+
+        /**
+         * Количество репозиториев, обрабатываемых одновременно
+         */
+        private int repositoryScanThreads = DEFAULT_REPOSITORY_SCAN_THREADS;
+
+        /**
+         * Обновлять ветки из origin перед сбором устаревших веток, ветки, удаленные в origin, удаляются локально
+         */
+        private boolean fetchBeforeScan = DEFAULT_FETCH_BEFORE_SCAN;
+
+        /**
+         * Шаблон письма об устаревших ветках. Если не задан, используется шаблон по-умолчанию
+         */
+        private String staleBranchesMailTemplate;
+
+        /**
+         * Шаблон письма об удаленных ветках. Если не задан, используется шаблон по-умолчанию
+         */
+        private String deletedBranchesMailTemplate;
+
+        /**
+         * Длительность окна сводки уведомлений в днях. Устаревшие ветки накапливаются между запусками,
+         * и каждый автор получает одно письмо-сводку при закрытии окна. 0 - уведомления отправляются при каждом запуске
+         */
+        private int digestWindowDays = DEFAULT_DIGEST_WINDOW_DAYS;
+
+        /**
+         * Интервал повторного уведомления в днях. Об устаревшей ветке, последний коммит которой не изменился,
+         * повторное уведомление отправляется не раньше, чем через этот интервал. 0 - уведомления отправляются при каждом запуске
+         */
+        private int renotifyIntervalDays = DEFAULT_RENOTIFY_INTERVAL_DAYS;
 
         public Builder withRepoDir(File repoDir) {
             this.repoDir = repoDir;
@@ -156,6 +402,86 @@ public class GitExpiredBranchSettings {
             return this;
         }
 
+        public Builder withBranchScanThreads(int branchScanThreads) {
+            this.branchScanThreads = branchScanThreads;
+            return this;
+        }
+
+        public Builder withBranchTipCacheEnabled(boolean branchTipCacheEnabled) {
+            this.branchTipCacheEnabled = branchTipCacheEnabled;
+            return this;
+        }
+
+        public Builder withBranchTipCacheMaxEntries(int branchTipCacheMaxEntries) {
+            this.branchTipCacheMaxEntries = branchTipCacheMaxEntries;
+            return this;
+        }
+
+        public Builder withDeleteBranchesBatchSize(int deleteBranchesBatchSize) {
+            this.deleteBranchesBatchSize = deleteBranchesBatchSize;
+            return this;
+        }
+
+        public Builder withArchiveDiffMaxSizeBytes(long archiveDiffMaxSizeBytes) {
+            this.archiveDiffMaxSizeBytes = archiveDiffMaxSizeBytes;
+            return this;
+        }
+
+        public Builder withNotificationThreads(int notificationThreads) {
+            this.notificationThreads = notificationThreads;
+            return this;
+        }
+
+        public Builder withNotificationMaxAttempts(int notificationMaxAttempts) {
+            this.notificationMaxAttempts = notificationMaxAttempts;
+            return this;
+        }
+
+        public Builder withNotificationRetryDelayMillis(long notificationRetryDelayMillis) {
+            this.notificationRetryDelayMillis = notificationRetryDelayMillis;
+            return this;
+        }
+
+        public Builder withIncludeBranchesPrefixes(Collection<String> includeBranchesPrefixes) {
+            this.includeBranchesPrefixes = includeBranchesPrefixes;
+            return this;
+        }
+
+        public Builder withRepoDirs(Collection<File> repoDirs) {
+            this.repoDirs = repoDirs;
+            return this;
+        }
+
+        public Builder withRepositoryScanThreads(int repositoryScanThreads) {
+            this.repositoryScanThreads = repositoryScanThreads;
+            return this;
+        }
+
+        public Builder withFetchBeforeScan(boolean fetchBeforeScan) {
+            this.fetchBeforeScan = fetchBeforeScan;
+            return this;
+        }
+
+        public Builder withStaleBranchesMailTemplate(String staleBranchesMailTemplate) {
+            this.staleBranchesMailTemplate = staleBranchesMailTemplate;
+            return this;
+        }
+
+        public Builder withDeletedBranchesMailTemplate(String deletedBranchesMailTemplate) {
+            this.deletedBranchesMailTemplate = deletedBranchesMailTemplate;
+            return this;
+        }
+
+        public Builder withDigestWindowDays(int digestWindowDays) {
+            this.digestWindowDays = digestWindowDays;
+            return this;
+        }
+
+        public Builder withRenotifyIntervalDays(int renotifyIntervalDays) {
+            this.renotifyIntervalDays = renotifyIntervalDays;
+            return this;
+        }
+
         private Collection<Pattern> compilePatterns(Collection<String> patterns) {
             Collection<Pattern> result = new ArrayList<>();
 
@@ -171,6 +497,9 @@ public class GitExpiredBranchSettings {
          */
         public GitExpiredBranchSettings build() {
             Collection<Pattern> ignoreBranches = compilePatterns(ignoreBranchesPatterns);
+            Collection<File> allRepoDirs = repoDirs == null || repoDirs.isEmpty()
+                    ? Collections.singletonList(repoDir)
+                    : Collections.unmodifiableList(new ArrayList<>(repoDirs));
 
             return new GitExpiredBranchSettings(
                 repoDir,
@@ -180,7 +509,23 @@ public class GitExpiredBranchSettings {
                 adminEmail,
                 staleDaysToNotify,
                 staleDaysToDelete,
-                ignoreBranches
+                ignoreBranches,
+                branchScanThreads,
+                branchTipCacheEnabled,
+                branchTipCacheMaxEntries,
+                deleteBranchesBatchSize,
+                archiveDiffMaxSizeBytes,
+                notificationThreads,
+                notificationMaxAttempts,
+                notificationRetryDelayMillis,
+                includeBranchesPrefixes == null ? null : Collections.unmodifiableList(new ArrayList<>(includeBranchesPrefixes)),
+                allRepoDirs,
+                repositoryScanThreads,
+                fetchBeforeScan,
+                staleBranchesMailTemplate,
+                deletedBranchesMailTemplate,
+                digestWindowDays,
+                renotifyIntervalDays
             );
         }
     }
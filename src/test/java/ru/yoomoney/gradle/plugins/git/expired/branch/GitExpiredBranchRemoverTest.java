@@ -16,7 +16,6 @@ import ru.yoomoney.gradle.plugins.git.expired.branch.git.GitRepoFactory;
 import ru.yoomoney.gradle.plugins.git.expired.branch.git.GitSettings;
 import ru.yoomoney.gradle.plugins.git.expired.branch.helper.GitManager;
 import ru.yoomoney.gradle.plugins.git.expired.branch.notification.MailSender;
-import ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchExtension;
 import ru.yoomoney.gradle.plugins.git.expired.branch.settings.GitExpiredBranchSettings;
 
 import java.io.File;
@@ -26,6 +25,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
@@ -114,18 +114,16 @@ public class GitExpiredBranchRemoverTest {
                 .setName("origin")
                 .call();
 
-        GitExpiredBranchExtension expiredBranch = new GitExpiredBranchExtension();
-        expiredBranch.removerEmail = "bitbucket-stale-branch-delete@yoomoney.ru";
-
         expiredBranchSettings = new GitExpiredBranchSettings.Builder()
                 .withRepoDir(new File(originRepoFolder.toString()))
                 .withGitArchiveRepository(archiveRepoUri)
-                .withNotifierEmail(expiredBranch.notifierEmail)
-                .withRemoverEmail(expiredBranch.removerEmail)
-                .withAdminEmail(expiredBranch.adminEmail)
-                .withStaleDaysToNotify(expiredBranch.staleDaysToNotify)
-                .withStaleDaysToDelete(expiredBranch.staleDaysToDelete)
-                .withIgnoreBranchesPatterns(expiredBranch.ignoreBranchesPatterns)
+                .withRemoverEmail("bitbucket-stale-branch-delete@yoomoney.ru")
+                .withStaleDaysToNotify(30L)
+                .withStaleDaysToDelete(60L)
+                .withIgnoreBranchesPatterns(Arrays.asList(
+                        "^refs/remotes/origin/dev$",
+                        "^refs/remotes/origin/master$",
+                        "^refs/remotes/origin/HEAD$"))
                 .build();
     }
 
@@ -0,0 +1,88 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.git;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class CommitGraphTest {
+
+    private static final ObjectId FIRST_COMMIT = ObjectId.fromString("0a00000000000000000000000000000000000001");
+    private static final ObjectId SECOND_COMMIT = ObjectId.fromString("ff00000000000000000000000000000000000002");
+    private static final long FIRST_COMMIT_TIME = 1_600_000_000L;
+    /**
+     * Время, для хранения которого нужны старшие 2 бита из слова с номером поколения
+     */
+    private static final long SECOND_COMMIT_TIME = 0x2_0000_0010L;
+
+    @Test
+    public void should_read_commit_time_from_commit_graph() throws IOException {
+        File file = writeCommitGraph();
+
+        Optional<CommitGraph> commitGraph = CommitGraph.open(file);
+
+        assertTrue(commitGraph.isPresent());
+        assertEquals(commitGraph.get().getCommitCount(), 2);
+        assertEquals(commitGraph.get().findCommitTime(FIRST_COMMIT), OptionalLong.of(FIRST_COMMIT_TIME));
+        assertEquals(commitGraph.get().findCommitTime(SECOND_COMMIT), OptionalLong.of(SECOND_COMMIT_TIME));
+        assertFalse(commitGraph.get()
+                .findCommitTime(ObjectId.fromString("0a00000000000000000000000000000000000002")).isPresent());
+    }
+
+    @Test
+    public void should_ignore_unknown_file_format() throws IOException {
+        File file = File.createTempFile("commit-graph", "");
+        Files.write(file.toPath(), "not a commit graph".getBytes("UTF-8"));
+
+        assertFalse(CommitGraph.open(file).isPresent());
+        assertFalse(CommitGraph.open(new File(file.getParentFile(), "missing-commit-graph")).isPresent());
+    }
+
+    private static File writeCommitGraph() throws IOException {
+        int chunkTableSize = 4 * 12;
+        int fanoutOffset = 8 + chunkTableSize;
+        int lookupOffset = fanoutOffset + 256 * 4;
+        int dataOffset = lookupOffset + 2 * 20;
+        int endOffset = dataOffset + 2 * 36;
+
+        ByteBuffer buffer = ByteBuffer.allocate(endOffset);
+        buffer.putInt(0x43475048).put((byte) 1).put((byte) 1).put((byte) 3).put((byte) 0);
+        buffer.putInt(0x4f494446).putLong(fanoutOffset);
+        buffer.putInt(0x4f49444c).putLong(lookupOffset);
+        buffer.putInt(0x43444154).putLong(dataOffset);
+        buffer.putInt(0).putLong(endOffset);
+        for (int i = 0; i < 256; i++) {
+            buffer.putInt(i < 0x0a ? 0 : i < 0xff ? 1 : 2);
+        }
+        putCommitId(buffer, FIRST_COMMIT);
+        putCommitId(buffer, SECOND_COMMIT);
+        putCommitData(buffer, 1, FIRST_COMMIT_TIME);
+        putCommitData(buffer, 2, SECOND_COMMIT_TIME);
+
+        File file = File.createTempFile("commit-graph", "");
+        Files.write(file.toPath(), buffer.array());
+        return file;
+    }
+
+    private static void putCommitId(ByteBuffer buffer, ObjectId commitId) {
+        byte[] raw = new byte[20];
+        commitId.copyRawTo(raw, 0);
+        buffer.put(raw);
+    }
+
+    private static void putCommitData(ByteBuffer buffer, int generation, long commitTime) {
+        buffer.put(new byte[20]);
+        buffer.putInt(0x70000000).putInt(0x70000000);
+        buffer.putInt(generation << 2 | (int) (commitTime >>> 32));
+        buffer.putInt((int) commitTime);
+    }
+}
@@ -0,0 +1,59 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.git;
+
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class RepositoryCoordinatesTest {
+
+    @Test
+    public void should_parse_bitbucket_urls() {
+        String branchesUrl = "https://bitbucket.yooteam.ru/projects/BACKEND/repos/payments/branches";
+        assertCoordinates("ssh://git@bitbucket.yooteam.ru/BACKEND/payments.git", RepositoryCoordinates.Hosting.BITBUCKET,
+                "bitbucket.yooteam.ru", "BACKEND", "payments", branchesUrl);
+        assertCoordinates("ssh://git@bitbucket.yooteam.ru:7999/BACKEND/payments.git",
+                RepositoryCoordinates.Hosting.BITBUCKET, "bitbucket.yooteam.ru:7999", "BACKEND", "payments",
+                "https://bitbucket.yooteam.ru:7999/projects/BACKEND/repos/payments/branches");
+        assertCoordinates("https://user@bitbucket.yooteam.ru/scm/BACKEND/payments.git",
+                RepositoryCoordinates.Hosting.BITBUCKET, "bitbucket.yooteam.ru", "BACKEND", "payments", branchesUrl);
+    }
+
+    @Test
+    public void should_parse_gitlab_urls() {
+        assertCoordinates("git@gitlab.com:backend/core/payments.git", RepositoryCoordinates.Hosting.GITLAB,
+                "gitlab.com", "backend/core", "payments", "https://gitlab.com/backend/core/payments/-/branches");
+        assertCoordinates("ssh://git@gitlab.yooteam.ru:2222/backend/payments.git", RepositoryCoordinates.Hosting.GITLAB,
+                "gitlab.yooteam.ru", "backend", "payments", "https://gitlab.yooteam.ru/backend/payments/-/branches");
+        assertCoordinates("https://gitlab.com/backend/payments", RepositoryCoordinates.Hosting.GITLAB,
+                "gitlab.com", "backend", "payments", "https://gitlab.com/backend/payments/-/branches");
+    }
+
+    @Test
+    public void should_parse_github_urls() {
+        String branchesUrl = "https://github.com/yoomoney/git-expired-branch-plugin/branches";
+        assertCoordinates("git@github.com:yoomoney/git-expired-branch-plugin.git", RepositoryCoordinates.Hosting.GITHUB,
+                "github.com", "yoomoney", "git-expired-branch-plugin", branchesUrl);
+        assertCoordinates("https://github.com/yoomoney/git-expired-branch-plugin.git",
+                RepositoryCoordinates.Hosting.GITHUB, "github.com", "yoomoney", "git-expired-branch-plugin", branchesUrl);
+    }
+
+    @Test
+    public void should_return_empty_coordinates_for_unrecognized_urls() {
+        String branchesUrl = "https:///projects//repos//branches";
+        assertCoordinates("file:///tmp/origin/", RepositoryCoordinates.Hosting.UNKNOWN, "", "", "", branchesUrl);
+        assertCoordinates("origin", RepositoryCoordinates.Hosting.UNKNOWN, "", "", "", branchesUrl);
+        assertCoordinates(null, RepositoryCoordinates.Hosting.UNKNOWN, "", "", "", branchesUrl);
+    }
+
+    private static void assertCoordinates(String cloneUrl, RepositoryCoordinates.Hosting hosting, String host,
+                                          String project, String repository, String branchesUrl) {
+        RepositoryCoordinates coordinates = RepositoryCoordinates.parse(cloneUrl);
+
+        assertThat(coordinates.getHosting(), equalTo(hosting));
+        assertThat(coordinates.getHost(), equalTo(host));
+        assertThat(coordinates.getProject(), equalTo(project));
+        assertThat(coordinates.getRepository(), equalTo(repository));
+        assertThat(coordinates.getBranchesUrl(), equalTo(branchesUrl));
+    }
+}
@@ -0,0 +1,80 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.helper;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import ru.yoomoney.gradle.plugins.git.expired.branch.git.GitSettings;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class ArchiveSessionTest {
+
+    private final GitSettings gitSettings = GitSettings.builder()
+            .withUsername("username")
+            .withEmail("username@yoomoney.ru")
+            .build();
+
+    private Path archiveRepoFolder;
+    private String archiveRepoUri;
+
+    @BeforeMethod
+    public void setUp() throws IOException, GitAPIException {
+        archiveRepoFolder = Files.createTempDirectory("archive_session_test");
+        Git.init()
+                .setDirectory(archiveRepoFolder.toFile())
+                .setBare(true)
+                .call()
+                .close();
+        archiveRepoUri = "file://" + archiveRepoFolder.toAbsolutePath() + '/';
+    }
+
+    @Test
+    public void should_push_all_archive_branches() throws IOException {
+        Map<String, RemoteRefUpdate.Status> statuses;
+        try (ArchiveSession archiveSession = ArchiveSession.open(archiveRepoUri, gitSettings)) {
+            archiveSession.addFile("project_repo_feature/first-1", "first.diff", "first diff".getBytes(UTF_8));
+            archiveSession.addFile("project_repo_feature/second-1", "second.diff", "second diff".getBytes(UTF_8));
+            statuses = archiveSession.push();
+        }
+
+        assertThat(statuses.size(), equalTo(2));
+        assertThat(statuses.get("project_repo_feature/first-1"), equalTo(RemoteRefUpdate.Status.OK));
+        assertThat(statuses.get("project_repo_feature/second-1"), equalTo(RemoteRefUpdate.Status.OK));
+        try (Git archive = Git.open(archiveRepoFolder.toFile())) {
+            assertThat(readFile(archive.getRepository(), "project_repo_feature/first-1", "first.diff"),
+                    equalTo("first diff"));
+            assertThat(readFile(archive.getRepository(), "project_repo_feature/second-1", "second.diff"),
+                    equalTo("second diff"));
+        }
+    }
+
+    @Test(expectedExceptions = RuntimeException.class)
+    public void should_fail_when_archive_repository_is_unavailable() throws IOException {
+        try (ArchiveSession archiveSession = ArchiveSession.open(
+                "file://" + archiveRepoFolder.resolve("missing").toAbsolutePath() + '/', gitSettings)) {
+            archiveSession.addFile("project_repo_feature/first-1", "first.diff", "first diff".getBytes(UTF_8));
+            archiveSession.push();
+        }
+    }
+
+    private static String readFile(Repository repository, String branchName, String fileName) throws IOException {
+        RevCommit commit = repository.parseCommit(repository.resolve("refs/heads/" + branchName));
+        assertThat(commit.getParentCount(), equalTo(0));
+        assertThat(commit.getAuthorIdent().getEmailAddress(), equalTo("username@yoomoney.ru"));
+        try (TreeWalk treeWalk = TreeWalk.forPath(repository, fileName, commit.getTree())) {
+            return new String(repository.open(treeWalk.getObjectId(0)).getBytes(), UTF_8);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.helper;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class BranchFilterTest {
+
+    private static final List<Pattern> IGNORE_PATTERNS = Arrays.asList(
+            Pattern.compile("^refs/remotes/origin/dev$"),
+            Pattern.compile("^refs/remotes/origin/master$"),
+            Pattern.compile("refs/remotes/origin/HEAD"),
+            Pattern.compile("^refs/remotes/origin/release/.*"),
+            Pattern.compile("^refs/remotes/origin/hotfix/.*$"),
+            Pattern.compile("^refs/remotes/origin/team\\-a/.*"),
+            Pattern.compile("^refs/remotes/origin/(feature|bugfix)/KEEP-\\d+$"),
+            Pattern.compile("^refs/remotes/origin/v[0-9]+\\.[0-9]+$"),
+            Pattern.compile("^refs/remotes/origin/(\\w)-\\1$"),
+            Pattern.compile("^refs/remotes/origin/pinned$", Pattern.CASE_INSENSITIVE)
+    );
+
+    @Test
+    public void should_ignore_branches_matching_patterns() {
+        BranchFilter branchFilter = BranchFilter.compile(IGNORE_PATTERNS);
+
+        assertTrue(branchFilter.isIgnored("refs/remotes/origin/dev"));
+        assertTrue(branchFilter.isIgnored("refs/remotes/origin/HEAD"));
+        assertTrue(branchFilter.isIgnored("refs/remotes/origin/release/1.0"));
+        assertTrue(branchFilter.isIgnored("refs/remotes/origin/release/"));
+        assertTrue(branchFilter.isIgnored("refs/remotes/origin/hotfix/BACKEND-1"));
+        assertTrue(branchFilter.isIgnored("refs/remotes/origin/team-a/feature"));
+        assertTrue(branchFilter.isIgnored("refs/remotes/origin/feature/KEEP-12"));
+        assertTrue(branchFilter.isIgnored("refs/remotes/origin/v1.12"));
+        assertTrue(branchFilter.isIgnored("refs/remotes/origin/x-x"));
+        assertTrue(branchFilter.isIgnored("refs/remotes/origin/PINNED"));
+
+        assertFalse(branchFilter.isIgnored("refs/remotes/origin/develop"));
+        assertFalse(branchFilter.isIgnored("refs/remotes/origin/release"));
+        assertFalse(branchFilter.isIgnored("refs/remotes/origin/feature/KEEP-x"));
+        assertFalse(branchFilter.isIgnored("refs/remotes/origin/v1x12"));
+        assertFalse(branchFilter.isIgnored("refs/remotes/origin/x-y"));
+        assertFalse(branchFilter.isIgnored("refs/remotes/upstream/master"));
+    }
+
+    @Test
+    public void should_give_same_result_as_matching_every_pattern() {
+        BranchFilter branchFilter = BranchFilter.compile(IGNORE_PATTERNS);
+        List<String> refNames = Arrays.asList(
+                "refs/remotes/origin/master",
+                "refs/remotes/origin/master2",
+                "refs/remotes/origin/hotfix",
+                "refs/remotes/origin/hotfix/",
+                "refs/remotes/origin/bugfix/KEEP-1",
+                "refs/remotes/origin/bugfix/KEEP-",
+                "refs/remotes/origin/team-b/feature",
+                "refs/remotes/origin/Pinned",
+                "refs/remotes/origin/feature/BACKEND-1");
+
+        List<String> expected = refNames.stream()
+                .filter(refName -> IGNORE_PATTERNS.stream().anyMatch(pattern -> pattern.matcher(refName).matches()))
+                .collect(Collectors.toList());
+        List<String> actual = refNames.stream()
+                .filter(branchFilter::isIgnored)
+                .collect(Collectors.toList());
+
+        assertEquals(actual, expected);
+    }
+}
@@ -0,0 +1,98 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.helper;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Optional;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class BranchTipCacheTest {
+
+    private static final ObjectId FIRST_TIP = ObjectId.fromString("1111111111111111111111111111111111111111");
+    private static final ObjectId SECOND_TIP = ObjectId.fromString("2222222222222222222222222222222222222222");
+    private static final PersonIdent AUTHOR = new PersonIdent("Автор", "author@yoomoney.ru", 1_600_000_000_000L, 180);
+
+    private File cacheFile;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        cacheFile = new File(Files.createTempDirectory("branch_tip_cache_test").toFile(), "branch-tips.cache");
+    }
+
+    @Test
+    public void should_restore_saved_entries() {
+        BranchTipCache cache = BranchTipCache.load(cacheFile, 10);
+        cache.put("refs/remotes/origin/feature", FIRST_TIP, 100L);
+        cache.put("refs/remotes/origin/stale", SECOND_TIP, 200L, AUTHOR, "Короткое сообщение");
+        cache.save();
+
+        BranchTipCache restored = BranchTipCache.load(cacheFile, 10);
+
+        assertEquals(restored.size(), 2);
+        BranchTipCache.Entry feature = restored.get("refs/remotes/origin/feature", FIRST_TIP).get();
+        assertEquals(feature.getCommitTime(), 100L);
+        assertFalse(feature.hasCommitDetails());
+        BranchTipCache.Entry stale = restored.get("refs/remotes/origin/stale", SECOND_TIP).get();
+        assertEquals(stale.getCommitTime(), 200L);
+        assertEquals(stale.getAuthorIdent(), AUTHOR);
+        assertEquals(stale.getShortMessage(), "Короткое сообщение");
+    }
+
+    @Test
+    public void should_miss_when_branch_tip_changed() {
+        BranchTipCache cache = BranchTipCache.load(cacheFile, 10);
+        cache.put("refs/remotes/origin/feature", FIRST_TIP, 100L);
+
+        Optional<BranchTipCache.Entry> entry = cache.get("refs/remotes/origin/feature", SECOND_TIP);
+
+        assertFalse(entry.isPresent());
+    }
+
+    @Test
+    public void should_evict_least_recently_used_entries() {
+        BranchTipCache cache = BranchTipCache.load(cacheFile, 2);
+        cache.put("refs/remotes/origin/first", FIRST_TIP, 100L);
+        cache.put("refs/remotes/origin/second", FIRST_TIP, 100L);
+        cache.get("refs/remotes/origin/first", FIRST_TIP);
+        cache.put("refs/remotes/origin/third", FIRST_TIP, 100L);
+
+        assertEquals(cache.size(), 2);
+        assertTrue(cache.get("refs/remotes/origin/first", FIRST_TIP).isPresent());
+        assertFalse(cache.get("refs/remotes/origin/second", FIRST_TIP).isPresent());
+        assertTrue(cache.get("refs/remotes/origin/third", FIRST_TIP).isPresent());
+    }
+
+    @Test
+    public void should_drop_corrupted_cache() throws IOException {
+        BranchTipCache cache = BranchTipCache.load(cacheFile, 10);
+        cache.put("refs/remotes/origin/feature", FIRST_TIP, 100L);
+        cache.save();
+        byte[] content = Files.readAllBytes(cacheFile.toPath());
+        content[content.length - 1] ^= 1;
+        Files.write(cacheFile.toPath(), content);
+
+        BranchTipCache restored = BranchTipCache.load(cacheFile, 10);
+
+        assertEquals(restored.size(), 0);
+        assertFalse(cacheFile.exists());
+    }
+
+    @Test
+    public void should_drop_cache_of_unknown_format() throws IOException {
+        Files.write(cacheFile.toPath(), "garbage".getBytes(UTF_8));
+
+        BranchTipCache restored = BranchTipCache.load(cacheFile, 10);
+
+        assertEquals(restored.size(), 0);
+        assertFalse(cacheFile.exists());
+    }
+}
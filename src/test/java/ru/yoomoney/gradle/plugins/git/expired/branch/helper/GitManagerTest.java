@@ -4,23 +4,35 @@ import org.eclipse.jgit.api.CreateBranchCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.PushCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.StoredConfig;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
 import org.eclipse.jgit.transport.URIish;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
+import ru.yoomoney.gradle.plugins.git.expired.branch.BranchInfo;
 import ru.yoomoney.gradle.plugins.git.expired.branch.git.GitSettings;
 
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsEqual.equalTo;
@@ -72,6 +84,253 @@ public class GitManagerTest {
         assertThat(testCommit.getFullMessage(), equalTo("test.txt commit"));
     }
 
+    @Test
+    public void should_return_last_commits_for_all_branches() throws IOException, GitAPIException {
+        createBranch("origin/dev", "master");
+        File testFile = new File(projectDir.toAbsolutePath().toString(), "test.txt");
+        Files.write(Paths.get(testFile.getAbsolutePath()), Collections.singletonList("testing"),
+                Charset.forName("UTF-8"));
+        git.add().addFilepattern("test.txt")
+                .call();
+        commit("test.txt commit");
+
+        List<BranchInfo> branchInfos = gitManager.getLastCommitsFromBranches(Arrays.asList(
+                git.getRepository().findRef("master"),
+                git.getRepository().findRef("origin/dev")));
+
+        assertThat(branchInfos.size(), equalTo(2));
+        assertThat(branchInfos.get(0).getLastCommit().getFullMessage(), equalTo("build.gradle commit"));
+        assertThat(branchInfos.get(1).getBranch().getName(), equalTo("refs/heads/origin/dev"));
+        assertThat(branchInfos.get(1).getLastCommit().getFullMessage(), equalTo("test.txt commit"));
+    }
+
+    @Test
+    public void should_return_last_commits_in_branches_order_when_collected_in_parallel() throws IOException, GitAPIException {
+        List<Ref> branches = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            createBranch("feature/" + i, "master");
+            commit("commit " + i);
+            branches.add(git.getRepository().findRef("feature/" + i));
+        }
+
+        List<BranchInfo> branchInfos = gitManager.getLastCommitsFromBranches(branches, 3);
+
+        assertThat(branchInfos.size(), equalTo(5));
+        for (int i = 0; i < 5; i++) {
+            assertThat(branchInfos.get(i).getBranch().getName(), equalTo("refs/heads/feature/" + i));
+            assertThat(branchInfos.get(i).getLastCommit().getFullMessage(), equalTo("commit " + i));
+        }
+    }
+
+    @Test
+    public void should_return_remote_branches_by_prefixes() throws IOException, GitAPIException {
+        for (String branchName : Arrays.asList("feature/1", "feature/2", "release/1", "bugfix/1")) {
+            createBranch(branchName, "master");
+            push();
+        }
+        git.fetch()
+                .setRemote("origin")
+                .call();
+
+        List<String> branches = gitManager.getRemoteBranches(Arrays.asList(
+                "refs/remotes/origin/release/", "refs/remotes/origin/feature/", "refs/remotes/origin/feature/1")).stream()
+                .map(Ref::getName)
+                .collect(Collectors.toList());
+
+        assertThat(branches, equalTo(Arrays.asList(
+                "refs/remotes/origin/feature/1", "refs/remotes/origin/feature/2", "refs/remotes/origin/release/1")));
+    }
+
+    @Test
+    public void should_read_only_changed_branches_and_drop_deleted_branches_from_cache() throws IOException, GitAPIException {
+        for (int i = 0; i < 3; i++) {
+            createBranch("feature/" + i, "master");
+            commit("commit " + i);
+        }
+        BranchTipCache branchTipCache = BranchTipCache.load(projectDir.resolve("branch-tips.cache").toFile(), 10);
+        List<Ref> branches = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            branches.add(git.getRepository().findRef("feature/" + i));
+        }
+        gitManager.getStaleBranches(branches, Long.MAX_VALUE, 1, branchTipCache);
+        branchTipCache.put("refs/heads/feature/0", branches.get(0).getObjectId(), 100L,
+                new PersonIdent("Автор", "author@yoomoney.ru"), "commit 0");
+
+        git.checkout()
+                .setName("feature/1")
+                .call();
+        commit("moved");
+        List<Ref> currentBranches = Arrays.asList(
+                git.getRepository().findRef("feature/0"), git.getRepository().findRef("feature/1"));
+        List<BranchInfo> staleBranches = gitManager.getStaleBranches(currentBranches, 1000L, 1, branchTipCache);
+
+        assertThat(staleBranches.size(), equalTo(1));
+        assertThat(staleBranches.get(0).getBranch().getName(), equalTo("refs/heads/feature/0"));
+        assertThat(staleBranches.get(0).getCommitTime(), equalTo(100L));
+        assertThat(staleBranches.get(0).getShortMessage(), equalTo("commit 0"));
+        assertThat(branchTipCache.size(), equalTo(2));
+        assertThat(branchTipCache.get("refs/heads/feature/1", currentBranches.get(1).getObjectId()).isPresent(),
+                equalTo(true));
+    }
+
+    @Test
+    public void should_persist_commit_details_of_stale_branches() throws IOException, GitAPIException {
+        createBranch("feature/stale", "master");
+        commit("stale commit");
+        List<Ref> branches = Collections.singletonList(git.getRepository().findRef("feature/stale"));
+        File cacheFile = projectDir.resolve("branch-tips.cache").toFile();
+        BranchTipCache branchTipCache = BranchTipCache.load(cacheFile, 10);
+
+        gitManager.getStaleBranches(branches, Long.MAX_VALUE, 1, branchTipCache);
+        branchTipCache.save();
+
+        BranchTipCache.Entry entry = BranchTipCache.load(cacheFile, 10)
+                .get("refs/heads/feature/stale", branches.get(0).getObjectId()).get();
+        assertThat(entry.hasCommitDetails(), equalTo(true));
+        assertThat(entry.getShortMessage(), equalTo("stale commit"));
+    }
+
+    @Test
+    public void should_delete_remote_branches_in_batches() throws IOException, GitAPIException {
+        for (int i = 0; i < 3; i++) {
+            createBranch("feature/" + i, "master");
+            push();
+        }
+        git.checkout()
+                .setName("master")
+                .call();
+
+        Map<String, RemoteRefUpdate.Status> statuses = gitManager.deleteRemoteBranches(
+                Arrays.asList("feature/0", "feature/1", "feature/2", "feature/missing"), 2);
+
+        assertThat(new ArrayList<>(statuses.keySet()),
+                equalTo(Arrays.asList("feature/0", "feature/1", "feature/2", "feature/missing")));
+        assertThat(statuses.get("feature/0"), equalTo(RemoteRefUpdate.Status.OK));
+        assertThat(statuses.get("feature/1"), equalTo(RemoteRefUpdate.Status.OK));
+        assertThat(statuses.get("feature/2"), equalTo(RemoteRefUpdate.Status.OK));
+        assertThat(statuses.get("feature/missing"), equalTo(RemoteRefUpdate.Status.NON_EXISTING));
+        assertThat(git.lsRemote().setRemote("origin").setHeads(true).call().stream()
+                .map(Ref::getName)
+                .collect(Collectors.toList()), equalTo(Collections.singletonList("refs/heads/master")));
+    }
+
+    @Test
+    public void should_not_delete_remote_branch_moved_after_collection() throws IOException, GitAPIException {
+        Map<String, String> expectedTips = new HashMap<>();
+        for (String branchName : Arrays.asList("feature/0", "feature/1")) {
+            createBranch(branchName, "master");
+            push();
+            expectedTips.put(branchName, git.getRepository().resolve(branchName).getName());
+        }
+        commitFile("moved.txt", "moved after collection");
+        push();
+        git.checkout()
+                .setName("master")
+                .call();
+        git.branchDelete()
+                .setBranchNames("feature/1")
+                .setForce(true)
+                .call();
+
+        Map<String, RemoteRefUpdate.Status> statuses = gitManager.deleteRemoteBranches(
+                Arrays.asList("feature/0", "feature/1"), expectedTips, 2);
+
+        assertThat(statuses.get("feature/0"), equalTo(RemoteRefUpdate.Status.OK));
+        assertThat(statuses.get("feature/1"), equalTo(RemoteRefUpdate.Status.REJECTED_REMOTE_CHANGED));
+        assertThat(git.lsRemote().setRemote("origin").setHeads(true).call().stream()
+                .map(Ref::getName)
+                .sorted()
+                .collect(Collectors.toList()), equalTo(Arrays.asList("refs/heads/feature/1", "refs/heads/master")));
+    }
+
+    @Test
+    public void should_reject_branches_when_deletion_push_fails() throws IOException, GitAPIException {
+        createBranch("feature/0", "master");
+        push();
+        git.checkout()
+                .setName("master")
+                .call();
+        StoredConfig config = git.getRepository().getConfig();
+        config.setString("remote", "origin", "url", projectDir.resolve("missing-remote").toUri().toString());
+        config.save();
+
+        Map<String, RemoteRefUpdate.Status> statuses =
+                gitManager.deleteRemoteBranches(Collections.singletonList("feature/0"), 1);
+
+        assertThat(statuses.get("feature/0"), equalTo(RemoteRefUpdate.Status.REJECTED_OTHER_REASON));
+    }
+
+    @Test
+    public void should_keep_statuses_of_deleted_chunks_when_next_chunk_push_fails()
+            throws IOException, GitAPIException {
+        for (int i = 0; i < 3; i++) {
+            createBranch("feature/" + i, "master");
+            push();
+        }
+        git.checkout()
+                .setName("master")
+                .call();
+        // pre-push hook отклоняет push второй пачки целиком
+        Path prePushHook = git.getRepository().getDirectory().toPath().resolve("hooks/pre-push");
+        Files.createDirectories(prePushHook.getParent());
+        Files.write(prePushHook, Arrays.asList("#!/bin/sh", "if grep -q refs/heads/feature/2; then exit 1; fi"),
+                StandardCharsets.UTF_8);
+        prePushHook.toFile().setExecutable(true);
+
+        Map<String, RemoteRefUpdate.Status> statuses = gitManager.deleteRemoteBranches(
+                Arrays.asList("feature/0", "feature/1", "feature/2"), 2);
+
+        assertThat(statuses.get("feature/0"), equalTo(RemoteRefUpdate.Status.OK));
+        assertThat(statuses.get("feature/1"), equalTo(RemoteRefUpdate.Status.OK));
+        assertThat(statuses.get("feature/2"), equalTo(RemoteRefUpdate.Status.REJECTED_OTHER_REASON));
+        assertThat(git.lsRemote().setRemote("origin").setHeads(true).call().stream()
+                .map(Ref::getName)
+                .sorted()
+                .collect(Collectors.toList()), equalTo(Arrays.asList("refs/heads/feature/2", "refs/heads/master")));
+    }
+
+    @Test
+    public void should_fetch_and_prune_branches_by_prefixes_into_bare_mirror()
+            throws IOException, GitAPIException, URISyntaxException {
+        for (String branchName : Arrays.asList("feature/1", "feature/2", "release/1")) {
+            createBranch(branchName, "master");
+            push();
+        }
+        Path mirrorDir = Files.createTempDirectory("git_manager_mirror");
+        Git.init().setDirectory(mirrorDir.toFile()).setBare(true).call()
+                .remoteAdd()
+                .setName("origin")
+                .setUri(new URIish(git.getRepository().getConfig().getString("remote", "origin", "url")))
+                .call();
+        GitManager mirrorManager = new GitManager(mirrorDir.toFile(), GitSettings.builder()
+                .withEmail("releaser@yoomoney.ru")
+                .withUsername("Releaser")
+                .build());
+        List<String> includePrefixes = Collections.singletonList("refs/remotes/origin/feature/");
+
+        mirrorManager.fetchRemoteBranches(includePrefixes);
+        assertThat(mirrorManager.getRemoteBranches().stream().map(Ref::getName).collect(Collectors.toList()),
+                equalTo(Arrays.asList("refs/remotes/origin/feature/1", "refs/remotes/origin/feature/2",
+                        "refs/remotes/origin/master")));
+
+        git.checkout().setName("master").call();
+        gitManager.deleteRemoteBranches(Collections.singletonList("feature/1"), 1);
+        mirrorManager.fetchRemoteBranches(includePrefixes);
+        assertThat(mirrorManager.getRemoteBranches().stream().map(Ref::getName).collect(Collectors.toList()),
+                equalTo(Arrays.asList("refs/remotes/origin/feature/2", "refs/remotes/origin/master")));
+    }
+
+    @Test
+    public void should_fetch_all_branches_when_prefix_is_not_origin_branch_prefix() {
+        assertThat(GitManager.getFetchRefSpecs(Arrays.asList("refs/remotes/origin/feature/", "refs/remotes/"))
+                        .stream().map(RefSpec::toString).collect(Collectors.toList()),
+                equalTo(Collections.singletonList("+refs/heads/*:refs/remotes/origin/*")));
+        assertThat(GitManager.getFetchRefSpecs(Arrays.asList("refs/remotes/origin/feature/", "refs/remotes/upstream/"))
+                        .stream().map(RefSpec::toString).collect(Collectors.toList()),
+                equalTo(Arrays.asList("+refs/heads/master:refs/remotes/origin/master",
+                        "+refs/heads/feature/*:refs/remotes/origin/feature/*")));
+    }
+
     @Test
     public void should_find_lowest_common_ancestor() throws IOException, GitAPIException {
         //делаем коммит в мастер
@@ -123,6 +382,60 @@ public class GitManagerTest {
         assertThat(baseCommit, equalTo(expectedBaseCommit));
     }
 
+    @Test
+    public void should_find_lowest_common_ancestors_for_several_branches() throws IOException, GitAPIException {
+        List<String> expectedBaseCommits = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            git.checkout()
+                    .setName("master")
+                    .call();
+            commitFile("master" + i + ".txt", "master commit " + i);
+            expectedBaseCommits.add(git.getRepository().resolve("master").getName());
+
+            createBranch("feature/" + i, "master");
+            commitFile("feature" + i + ".txt", "feature commit " + i);
+        }
+        git.checkout()
+                .setName("master")
+                .call();
+        commitFile("master.txt", "last master commit");
+
+        Map<String, String> baseCommits = gitManager.getGoodCommonAncestorsCommits("master",
+                Arrays.asList("feature/0", "feature/1", "feature/2", "feature/missing"));
+
+        assertThat(baseCommits.size(), equalTo(3));
+        for (int i = 0; i < 3; i++) {
+            assertThat(baseCommits.get("feature/" + i), equalTo(expectedBaseCommits.get(i)));
+            assertThat(gitManager.getGoodCommonAncestorsCommit("master", "feature/" + i).get(),
+                    equalTo(expectedBaseCommits.get(i)));
+        }
+    }
+
+    @Test
+    public void should_find_lowest_common_ancestor_when_commit_times_are_skewed() throws IOException, GitAPIException {
+        commitFile("master.txt", "base commit");
+        String expectedBaseCommit = git.getRepository().resolve("master").getName();
+        createBranch("feature/skewed", "master");
+        Files.write(projectDir.resolve("feature.txt"), Collections.singletonList("feature"), Charset.forName("UTF-8"));
+        git.add().addFilepattern("feature.txt")
+                .call();
+        PersonIdent pastIdent = new PersonIdent("Автор", "author@yoomoney.ru", 1_000_000_000_000L, 0);
+        git.commit()
+                .setAuthor(pastIdent)
+                .setCommitter(pastIdent)
+                .setMessage("commit with skewed time")
+                .call();
+        git.checkout()
+                .setName("master")
+                .call();
+        commitFile("master2.txt", "last master commit");
+
+        Map<String, String> baseCommits = gitManager.getGoodCommonAncestorsCommits("master",
+                Collections.singletonList("feature/skewed"));
+
+        assertThat(baseCommits.get("feature/skewed"), equalTo(expectedBaseCommit));
+    }
+
     @Test
     public void should_return_diff_from_head() throws IOException, GitAPIException {
         File gradleProperties = new File(projectDir.toAbsolutePath().toString(), "gradle.properties");
@@ -173,6 +486,32 @@ public class GitManagerTest {
 
     }
 
+    @Test
+    public void should_truncate_diff_exceeding_size_limit() throws IOException, GitAPIException {
+        createBranch("origin/dev", "master");
+        File testFile = new File(projectDir.toAbsolutePath().toString(), "test.txt");
+        Files.write(Paths.get(testFile.getAbsolutePath()), Collections.singletonList("testing"),
+                Charset.forName("UTF-8"));
+        git.add().addFilepattern("test.txt")
+                .call();
+        commit("test.txt commit");
+        push();
+        git.checkout()
+                .setName("master")
+                .call();
+
+        ByteArrayOutputStream fullDiff = new ByteArrayOutputStream();
+        boolean fullDiffTruncated = gitManager.writeDiffBranch("origin/dev", fullDiff, 0);
+        ByteArrayOutputStream truncatedDiff = new ByteArrayOutputStream();
+        boolean diffTruncated = gitManager.writeDiffBranch("origin/dev", truncatedDiff, 20);
+
+        assertThat(fullDiffTruncated, equalTo(false));
+        assertThat(fullDiff.toString("UTF-8"), equalTo(gitManager.makeDiffBranch("origin/dev")));
+        assertThat(diffTruncated, equalTo(true));
+        assertThat(truncatedDiff.toString("UTF-8"), equalTo(fullDiff.toString("UTF-8").substring(0, 20) +
+                String.format("%n# diff truncated: size limit of 20 bytes exceeded%n")));
+    }
+
     private Git initProjectRepoWithMasterBranch(Path projectDir) throws GitAPIException, IOException, URISyntaxException {
         git = Git.init().setDirectory(projectDir.toFile()).call();
 
@@ -218,6 +557,13 @@ public class GitManagerTest {
         pushCommand.call();
     }
 
+    private void commitFile(String fileName, String message) throws IOException, GitAPIException {
+        Files.write(projectDir.resolve(fileName), Collections.singletonList(message), Charset.forName("UTF-8"));
+        git.add().addFilepattern(fileName)
+                .call();
+        commit(message);
+    }
+
     private void commit(String message) throws GitAPIException {
         git.commit()
                 .setAll(true)
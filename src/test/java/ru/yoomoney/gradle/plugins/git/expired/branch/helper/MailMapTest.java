@@ -0,0 +1,69 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.helper;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class MailMapTest {
+
+    private static final String MAILMAP = "# comment\n" +
+            "Ivan Ivanov <ivanov@yoomoney.ru>\n" +
+            "<petrov@yoomoney.ru> <petr@home.ru>\n" +
+            "Sidor Sidorov <sidorov@yoomoney.ru> <sidor@home.ru>\n" +
+            "Build Bot <bot@yoomoney.ru> jenkins <ci@yoomoney.ru>\n";
+
+    @Test
+    public void should_resolve_all_mailmap_formats() {
+        MailMap mailMap = MailMap.parse(MAILMAP);
+
+        assertIdentity(mailMap.resolve("ivan", "Ivanov@YooMoney.ru"), "Ivan Ivanov", "ivanov@yoomoney.ru");
+        assertIdentity(mailMap.resolve("Petr", "petr@home.ru"), "Petr", "petrov@yoomoney.ru");
+        assertIdentity(mailMap.resolve("sidor", "sidor@home.ru"), "Sidor Sidorov", "sidorov@yoomoney.ru");
+        assertIdentity(mailMap.resolve("Jenkins", "ci@yoomoney.ru"), "Build Bot", "bot@yoomoney.ru");
+        assertIdentity(mailMap.resolve("teamcity", "ci@yoomoney.ru"), "teamcity", "ci@yoomoney.ru");
+        assertIdentity(mailMap.resolve("Other", "other@yoomoney.ru"), "Other", "other@yoomoney.ru");
+    }
+
+    @Test
+    public void should_group_commits_of_one_author_into_one_identity() {
+        MailMap mailMap = MailMap.parse(MAILMAP);
+        Set<AuthorIdentity> identities = new HashSet<>();
+
+        identities.add(mailMap.resolve(new PersonIdent("Sidor", "sidor@home.ru", 1000L, 0)));
+        identities.add(mailMap.resolve(new PersonIdent("Sidor", "sidor@home.ru", 2000L, 180)));
+        identities.add(mailMap.resolve(new PersonIdent("Sidor Sidorov", "SIDOROV@yoomoney.ru", 3000L, 0)));
+
+        assertThat(identities.size(), equalTo(1));
+    }
+
+    @Test
+    public void should_load_mailmap_from_work_tree() throws IOException, GitAPIException {
+        Path repoDir = Files.createTempDirectory("mailmap_test");
+        try (Git git = Git.init().setDirectory(repoDir.toFile()).call()) {
+            assertIdentity(MailMap.load(git.getRepository()).resolve("ivan", "ivanov@yoomoney.ru"),
+                    "ivan", "ivanov@yoomoney.ru");
+
+            Files.write(repoDir.resolve(".mailmap"), Collections.singletonList(MAILMAP.trim()), StandardCharsets.UTF_8);
+
+            assertIdentity(MailMap.load(git.getRepository()).resolve("ivan", "ivanov@yoomoney.ru"),
+                    "Ivan Ivanov", "ivanov@yoomoney.ru");
+        }
+    }
+
+    private static void assertIdentity(AuthorIdentity identity, String name, String email) {
+        assertThat(identity.getName(), equalTo(name));
+        assertThat(identity.getEmail(), equalTo(email));
+    }
+}
@@ -0,0 +1,49 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.helper;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class RepositoryScannerTest {
+
+    @Test
+    public void should_return_results_in_repositories_order() {
+        List<File> repoDirs = Arrays.asList(new File("first"), new File("second"), new File("third"));
+
+        RepositoryScanner.Results<String> results = RepositoryScanner.scan(repoDirs, 2, File::getName);
+
+        assertThat(new ArrayList<>(results.getResults().keySet()), equalTo(repoDirs));
+        assertThat(new ArrayList<>(results.getResults().values()), equalTo(Arrays.asList("first", "second", "third")));
+        assertThat(results.getFailures().isEmpty(), equalTo(true));
+    }
+
+    @Test
+    public void should_process_other_repositories_when_one_failed() {
+        List<File> repoDirs = Arrays.asList(new File("first"), new File("broken"), new File("third"));
+
+        RepositoryScanner.Results<String> results = RepositoryScanner.scan(repoDirs, 2, repoDir -> {
+            if (repoDir.getName().equals("broken")) {
+                throw new IllegalStateException("repository is broken");
+            }
+            return repoDir.getName();
+        });
+
+        assertThat(new ArrayList<>(results.getResults().values()), equalTo(Arrays.asList("first", "third")));
+        assertThat(new ArrayList<>(results.getFailures().keySet()), equalTo(Collections.singletonList(new File("broken"))));
+        assertThat(results.getFailures().get(new File("broken")).getMessage(), equalTo("repository is broken"));
+    }
+
+    @Test(expectedExceptions = RuntimeException.class)
+    public void should_throw_when_repository_failed() {
+        RepositoryScanner.scan(Collections.singletonList(new File("broken")), 1, repoDir -> {
+            throw new IllegalStateException("repository is broken");
+        }).throwIfFailed();
+    }
+}
@@ -0,0 +1,149 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.notification;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class DigestStoreTest {
+
+    private static final ObjectId FIRST_TIP = ObjectId.fromString("1111111111111111111111111111111111111111");
+    private static final ObjectId SECOND_TIP = ObjectId.fromString("2222222222222222222222222222222222222222");
+    private static final long NOW = 1_600_000_000_000L;
+
+    private File storeFile;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        storeFile = new File(Files.createTempDirectory("digest_store_test").toFile(), "notification-digest.store");
+    }
+
+    @Test
+    public void should_restore_saved_events() {
+        DigestStore store = DigestStore.load(storeFile);
+        store.putRepository("/repo", "repo", "https://host/repo/branches",
+                Collections.singletonList(event("refs/remotes/origin/feature", FIRST_TIP)), NOW);
+        store.save();
+
+        DigestStore restored = DigestStore.load(storeFile);
+
+        assertEquals(restored.size(), 1);
+        DigestStore.RepositoryEvents repository = restored.getRepositories().iterator().next();
+        assertEquals(repository.getRepositoryName(), "repo");
+        assertEquals(repository.getBranchesUrl(), "https://host/repo/branches");
+        DigestStore.BranchEvent event = repository.getEvents().get(0);
+        assertEquals(event.getRefName(), "refs/remotes/origin/feature");
+        assertEquals(event.getTipId(), FIRST_TIP);
+        assertEquals(event.getCommitTime(), 100L);
+        assertEquals(event.getAuthorName(), "Автор");
+        assertEquals(event.getAuthorEmail(), "author@yoomoney.ru");
+        assertEquals(event.getShortMessage(), "Сообщение");
+        assertEquals(restored.getWindowEndMillis(7), NOW + TimeUnit.DAYS.toMillis(7));
+    }
+
+    @Test
+    public void should_replace_events_of_scanned_repository_and_keep_others() {
+        DigestStore store = DigestStore.load(storeFile);
+        store.putRepository("/first", "first", "url", Collections.singletonList(
+                event("refs/remotes/origin/updated", FIRST_TIP)), NOW);
+        store.putRepository("/second", "second", "url", Collections.singletonList(
+                event("refs/remotes/origin/other", FIRST_TIP)), NOW);
+
+        store.putRepository("/first", "first", "url", Collections.singletonList(
+                event("refs/remotes/origin/stale", SECOND_TIP)), NOW + 1);
+
+        List<String> refNames = new ArrayList<>();
+        store.getRepositories().forEach(repository ->
+                repository.getEvents().forEach(event -> refNames.add(event.getRefName())));
+        assertEquals(refNames, Arrays.asList("refs/remotes/origin/stale", "refs/remotes/origin/other"));
+
+        store.putRepository("/second", "second", "url", Collections.emptyList(), NOW + 2);
+        assertEquals(store.size(), 1);
+    }
+
+    @Test
+    public void should_close_window_after_window_days_from_first_run() {
+        DigestStore store = DigestStore.load(storeFile);
+        assertFalse(store.isWindowClosed(NOW, 7));
+
+        store.putRepository("/repo", "repo", "url",
+                Collections.singletonList(event("refs/remotes/origin/feature", FIRST_TIP)), NOW);
+        store.putRepository("/repo", "repo", "url",
+                Collections.singletonList(event("refs/remotes/origin/feature", FIRST_TIP)), NOW + 1000L);
+
+        assertFalse(store.isWindowClosed(NOW + TimeUnit.DAYS.toMillis(7) - 1, 7));
+        assertTrue(store.isWindowClosed(NOW + TimeUnit.DAYS.toMillis(7), 7));
+
+        store.clear();
+        store.save();
+        DigestStore restored = DigestStore.load(storeFile);
+        assertEquals(restored.size(), 0);
+        assertFalse(restored.isWindowClosed(NOW + TimeUnit.DAYS.toMillis(30), 7));
+    }
+
+    @Test
+    public void should_keep_events_of_authors_without_delivered_digest() {
+        DigestStore store = DigestStore.load(storeFile);
+        store.putRepository("/repo", "repo", "url", Arrays.asList(
+                event("refs/remotes/origin/delivered", FIRST_TIP),
+                event("refs/remotes/origin/undelivered", SECOND_TIP, "other@yoomoney.ru")), NOW);
+        long windowEnd = NOW + TimeUnit.DAYS.toMillis(7);
+
+        store.removeDelivered(Collections.singleton("author@yoomoney.ru"));
+        store.save();
+
+        DigestStore restored = DigestStore.load(storeFile);
+        assertEquals(restored.size(), 1);
+        assertEquals(restored.getRepositories().iterator().next().getEvents().get(0).getAuthorEmail(),
+                "other@yoomoney.ru");
+        assertTrue(restored.isWindowClosed(windowEnd, 7));
+
+        restored.putRepository("/repo", "repo", "url", Arrays.asList(
+                event("refs/remotes/origin/delivered", FIRST_TIP),
+                event("refs/remotes/origin/undelivered", SECOND_TIP, "other@yoomoney.ru")), windowEnd + 1);
+        assertEquals(restored.size(), 1);
+
+        restored.removeDelivered(Collections.singleton("other@yoomoney.ru"));
+        assertEquals(restored.size(), 0);
+        assertFalse(restored.isWindowClosed(windowEnd + 1, 7));
+        restored.putRepository("/repo", "repo", "url",
+                Collections.singletonList(event("refs/remotes/origin/delivered", FIRST_TIP)), windowEnd + 2);
+        assertEquals(restored.size(), 1);
+    }
+
+    @Test
+    public void should_drop_corrupted_store() throws IOException {
+        DigestStore store = DigestStore.load(storeFile);
+        store.putRepository("/repo", "repo", "url",
+                Collections.singletonList(event("refs/remotes/origin/feature", FIRST_TIP)), NOW);
+        store.save();
+        byte[] content = Files.readAllBytes(storeFile.toPath());
+        content[content.length - 1] ^= 1;
+        Files.write(storeFile.toPath(), content);
+
+        DigestStore restored = DigestStore.load(storeFile);
+
+        assertEquals(restored.size(), 0);
+        assertFalse(storeFile.exists());
+    }
+
+    private static DigestStore.BranchEvent event(String refName, ObjectId tipId) {
+        return event(refName, tipId, "author@yoomoney.ru");
+    }
+
+    private static DigestStore.BranchEvent event(String refName, ObjectId tipId, String authorEmail) {
+        return new DigestStore.BranchEvent(refName, tipId, 100L, "Автор", authorEmail, "Сообщение");
+    }
+}
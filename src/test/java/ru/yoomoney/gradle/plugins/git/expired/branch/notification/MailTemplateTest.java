@@ -0,0 +1,117 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.notification;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class MailTemplateTest {
+
+    @Test
+    public void should_render_variables_and_skip_missing_ones() {
+        MailTemplate template = MailTemplate.compile("Hello, {{name}}!{{missing}} Bye, {{ name }}.");
+
+        assertThat(template.render(Collections.singletonMap("name", "Ivan")), equalTo("Hello, Ivan! Bye, Ivan."));
+    }
+
+    @Test
+    public void should_render_list_section_for_each_element_with_outer_variables() {
+        MailTemplate template = MailTemplate.compile("{{#branches}}{{prefix}}{{branchName}};{{/branches}}");
+        Map<String, Object> model = new HashMap<>();
+        model.put("prefix", "origin/");
+        model.put("branches", Arrays.asList(
+                Collections.singletonMap("branchName", "feature/a"),
+                Collections.singletonMap("branchName", "feature/b")));
+
+        assertThat(template.render(model), equalTo("origin/feature/a;origin/feature/b;"));
+    }
+
+    @Test
+    public void should_render_boolean_and_inverted_sections() {
+        MailTemplate template = MailTemplate.compile("{{#several}}Ветки{{/several}}{{^several}}Ветка{{/several}}:");
+
+        assertThat(template.render(Collections.singletonMap("several", true)), equalTo("Ветки:"));
+        assertThat(template.render(Collections.singletonMap("several", false)), equalTo("Ветка:"));
+        assertThat(template.render(Collections.emptyMap()), equalTo("Ветка:"));
+        assertThat(template.render(Collections.singletonMap("several", Collections.emptyList())), equalTo("Ветка:"));
+    }
+
+    @Test
+    public void should_render_nested_sections() {
+        MailTemplate template = MailTemplate.compile(
+                "{{#repositories}}[{{repositoryName}}:{{#branches}} {{branchName}}{{/branches}}]{{/repositories}}");
+        Map<String, Object> first = new HashMap<>();
+        first.put("repositoryName", "first");
+        first.put("branches", Collections.singletonList(Collections.singletonMap("branchName", "a")));
+        Map<String, Object> second = new HashMap<>();
+        second.put("repositoryName", "second");
+        second.put("branches", Arrays.asList(
+                Collections.singletonMap("branchName", "b"),
+                Collections.singletonMap("branchName", "c")));
+
+        assertThat(template.render(Collections.singletonMap("repositories", Arrays.asList(first, second))),
+                equalTo("[first: a][second: b c]"));
+    }
+
+    @Test
+    public void should_append_to_passed_buffer() {
+        MailTemplate template = MailTemplate.compile("{{value}}");
+        StringBuilder out = new StringBuilder("value=");
+
+        template.renderTo(Collections.singletonMap("value", 42), out);
+
+        assertThat(out.toString(), equalTo("value=42"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void should_fail_on_unclosed_section() {
+        MailTemplate.compile("{{#branches}}{{branchName}}");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void should_fail_on_mismatched_section_end() {
+        MailTemplate.compile("{{#branches}}{{branchName}}{{/repositories}}");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void should_fail_on_unclosed_tag() {
+        MailTemplate.compile("Hello, {{name");
+    }
+
+    @Test
+    public void should_render_same_template_concurrently() throws Exception {
+        MailTemplate template = MailTemplate.compile("{{#branches}}{{author}}:{{branchName}};{{/branches}}");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                String author = "author" + i;
+                results.add(executor.submit(() -> {
+                    Map<String, Object> model = new HashMap<>();
+                    model.put("author", author);
+                    model.put("branches", Arrays.asList(
+                            Collections.singletonMap("branchName", "a"),
+                            Collections.singletonMap("branchName", "b")));
+                    return template.render(model).equals(author + ":a;" + author + ":b;");
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertThat(result.get(), equalTo(true));
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.notification;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class NotificationDispatcherTest {
+
+    private static final EmailMessage MESSAGE = new EmailMessage("notifier@yoomoney.ru",
+            Collections.singleton("author@yoomoney.ru"), "subject", "body");
+
+    @Test
+    public void should_retry_failed_sending() {
+        FailingMailSender mailSender = new FailingMailSender(2, true);
+
+        NotificationDispatcher.Summary summary;
+        try (NotificationDispatcher dispatcher = new NotificationDispatcher(mailSender, 2, 3, 1L)) {
+            dispatcher.submit(MESSAGE, "admin@yoomoney.ru");
+            summary = dispatcher.awaitCompletion();
+        }
+
+        assertThat(summary.getDelivered(), equalTo(1L));
+        assertThat(summary.getFailed(), equalTo(0L));
+        assertThat(mailSender.attempts.get(), equalTo(3));
+        assertThat(mailSender.sentBodies, equalTo(Collections.singletonList("author@yoomoney.ru:body")));
+    }
+
+    @Test
+    public void should_redirect_message_to_fallback_recipient_when_attempts_exhausted() {
+        FailingMailSender mailSender = new FailingMailSender(Integer.MAX_VALUE, true);
+
+        NotificationDispatcher.Summary summary;
+        try (NotificationDispatcher dispatcher = new NotificationDispatcher(mailSender, 2, 2, 1L)) {
+            dispatcher.submit(MESSAGE, "admin@yoomoney.ru");
+            summary = dispatcher.awaitCompletion();
+        }
+
+        assertThat(summary.getDelivered(), equalTo(0L));
+        assertThat(summary.getFailed(), equalTo(1L));
+        assertThat(summary.getRedirected(), equalTo(1L));
+        assertThat(mailSender.sentBodies, equalTo(Collections.singletonList("admin@yoomoney.ru:body\nrelay is down")));
+    }
+
+    @Test
+    public void should_not_retry_sending_failed_after_transfer_started() {
+        FailingMailSender mailSender = new FailingMailSender(1, false);
+
+        NotificationDispatcher.Summary summary;
+        try (NotificationDispatcher dispatcher = new NotificationDispatcher(mailSender, 2, 3, 1L)) {
+            dispatcher.submit(MESSAGE, "admin@yoomoney.ru");
+            summary = dispatcher.awaitCompletion();
+        }
+
+        assertThat(summary.getDelivered(), equalTo(0L));
+        assertThat(summary.getFailed(), equalTo(1L));
+        assertThat(summary.getRedirected(), equalTo(1L));
+        assertThat(mailSender.attempts.get(), equalTo(1));
+        assertThat(mailSender.sentBodies, equalTo(Collections.singletonList("admin@yoomoney.ru:body\nrelay is down")));
+    }
+
+    /**
+     * Отправщик, который не отправляет письма авторам заданное количество раз
+     */
+    private static class FailingMailSender extends MailSender {
+        private final int failures;
+        private final boolean connectionFailure;
+        private final AtomicInteger attempts = new AtomicInteger();
+        private final List<String> sentBodies = Collections.synchronizedList(new ArrayList<>());
+
+        /**
+         * @param failures          количество неудачных отправок авторам
+         * @param connectionFailure признак ошибки соединения до начала передачи, иначе ошибка во время передачи
+         */
+        FailingMailSender(int failures, boolean connectionFailure) {
+            super(null);
+            this.failures = failures;
+            this.connectionFailure = connectionFailure;
+        }
+
+        @Override
+        public void sendEmail(String sender, Set<String> recipients, String subject, String body) {
+            String recipient = recipients.iterator().next();
+            if (recipient.startsWith("author") && attempts.incrementAndGet() <= failures) {
+                RuntimeException error = new RuntimeException("relay is down");
+                throw connectionFailure ? new MailConnectionException("relay is down", error) : error;
+            }
+            sentBodies.add(recipient + ':' + body);
+        }
+    }
+}
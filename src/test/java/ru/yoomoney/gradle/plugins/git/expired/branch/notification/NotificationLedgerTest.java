@@ -0,0 +1,115 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.notification;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class NotificationLedgerTest {
+
+    private static final ObjectId FIRST_TIP = ObjectId.fromString("1111111111111111111111111111111111111111");
+    private static final ObjectId SECOND_TIP = ObjectId.fromString("2222222222222222222222222222222222222222");
+    private static final long NOW = 1_600_000_000_000L;
+    private static final long INTERVAL = TimeUnit.DAYS.toMillis(7);
+
+    private File ledgerFile;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        ledgerFile = new File(Files.createTempDirectory("notification_ledger_test").toFile(), "notification-ledger.log");
+    }
+
+    @Test
+    public void should_suppress_branch_notified_at_same_tip_within_interval() {
+        NotificationLedger ledger = NotificationLedger.load(ledgerFile);
+        ledger.markNotified("/repo", "refs/remotes/origin/feature", FIRST_TIP, NOW);
+        ledger.save(NOW, INTERVAL);
+
+        NotificationLedger restored = NotificationLedger.load(ledgerFile);
+
+        assertTrue(restored.isNotified("/repo", "refs/remotes/origin/feature", FIRST_TIP, NOW + INTERVAL - 1, INTERVAL));
+        assertFalse(restored.isNotified("/repo", "refs/remotes/origin/feature", FIRST_TIP, NOW + INTERVAL, INTERVAL));
+        assertFalse(restored.isNotified("/repo", "refs/remotes/origin/feature", SECOND_TIP, NOW + 1, INTERVAL));
+        assertFalse(restored.isNotified("/other", "refs/remotes/origin/feature", FIRST_TIP, NOW + 1, INTERVAL));
+    }
+
+    @Test
+    public void should_append_records_and_keep_latest_one() throws IOException {
+        NotificationLedger ledger = NotificationLedger.load(ledgerFile);
+        ledger.markNotified("/repo", "refs/remotes/origin/feature", FIRST_TIP, NOW);
+        ledger.save(NOW, INTERVAL);
+        byte[] initialContent = Files.readAllBytes(ledgerFile.toPath());
+
+        NotificationLedger second = NotificationLedger.load(ledgerFile);
+        second.markNotified("/repo", "refs/remotes/origin/feature", SECOND_TIP, NOW + 1);
+        second.markNotified("/repo", "refs/remotes/origin/other", FIRST_TIP, NOW + 1);
+        second.save(NOW + 1, INTERVAL);
+
+        byte[] content = Files.readAllBytes(ledgerFile.toPath());
+        assertTrue(content.length > initialContent.length);
+        assertEquals(Arrays.copyOf(content, initialContent.length), initialContent);
+
+        NotificationLedger restored = NotificationLedger.load(ledgerFile);
+        assertEquals(restored.size(), 2);
+        assertTrue(restored.isNotified("/repo", "refs/remotes/origin/feature", SECOND_TIP, NOW + 2, INTERVAL));
+        assertFalse(restored.isNotified("/repo", "refs/remotes/origin/feature", FIRST_TIP, NOW + 2, INTERVAL));
+    }
+
+    @Test
+    public void should_compact_file_when_most_records_are_dead() {
+        NotificationLedger ledger = NotificationLedger.load(ledgerFile);
+        for (int i = 0; i < 2000; i++) {
+            ledger.markNotified("/repo", "refs/remotes/origin/branch" + i, FIRST_TIP, NOW);
+        }
+        ledger.save(NOW, INTERVAL);
+        long fullSize = ledgerFile.length();
+
+        NotificationLedger later = NotificationLedger.load(ledgerFile);
+        later.markNotified("/repo", "refs/remotes/origin/branch0", SECOND_TIP, NOW + INTERVAL);
+        later.save(NOW + INTERVAL, INTERVAL);
+
+        assertEquals(later.size(), 1);
+        assertTrue(ledgerFile.length() < fullSize / 100);
+        NotificationLedger restored = NotificationLedger.load(ledgerFile);
+        assertEquals(restored.size(), 1);
+        assertTrue(restored.isNotified("/repo", "refs/remotes/origin/branch0", SECOND_TIP, NOW + INTERVAL, INTERVAL));
+    }
+
+    @Test
+    public void should_drop_corrupted_tail() throws IOException {
+        NotificationLedger ledger = NotificationLedger.load(ledgerFile);
+        ledger.markNotified("/repo", "refs/remotes/origin/first", FIRST_TIP, NOW);
+        ledger.markNotified("/repo", "refs/remotes/origin/second", FIRST_TIP, NOW);
+        ledger.save(NOW, INTERVAL);
+        byte[] content = Files.readAllBytes(ledgerFile.toPath());
+        Files.write(ledgerFile.toPath(), Arrays.copyOf(content, content.length - 3));
+
+        NotificationLedger restored = NotificationLedger.load(ledgerFile);
+
+        assertEquals(restored.size(), 1);
+        restored.save(NOW, INTERVAL);
+        assertEquals(NotificationLedger.load(ledgerFile).size(), 1);
+    }
+
+    @Test
+    public void should_rebuild_ledger_of_unknown_format() throws IOException {
+        Files.write(ledgerFile.toPath(), "not a ledger".getBytes(UTF_8));
+
+        NotificationLedger ledger = NotificationLedger.load(ledgerFile);
+        assertEquals(ledger.size(), 0);
+        ledger.markNotified("/repo", "refs/remotes/origin/feature", FIRST_TIP, NOW);
+        ledger.save(NOW, INTERVAL);
+
+        assertEquals(NotificationLedger.load(ledgerFile).size(), 1);
+    }
+}
@@ -0,0 +1,65 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.plan;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class RemovalPlanTest {
+
+    @Test
+    public void should_read_written_plan() throws IOException {
+        File planFile = new File(Files.createTempDirectory("removal-plan").toFile(), "plan/removal-plan.txt");
+        PlannedBranch branch = new PlannedBranch("refs/remotes/origin/feature/BACKEND-1",
+                "1111111111111111111111111111111111111111", 1569484800L, "Author", "author@example.com",
+                "BACKEND-1\tfix \\ done\n", null, 42L, true);
+        new RemovalPlan(1000L, 30L, Collections.singletonList(
+                new RepositoryRemovalPlan(new File("/agent/repo"), "ssh://git@bitbucket.example.com:7999/backend/repo.git",
+                        "repo", Collections.singletonList(branch))))
+                .write(planFile);
+
+        RemovalPlan plan = RemovalPlan.read(planFile);
+
+        assertThat(plan.getCreatedAtMillis(), equalTo(1000L));
+        assertThat(plan.getStaleDaysToDelete(), equalTo(30L));
+        RepositoryRemovalPlan readRepository = plan.getRepositories().get(0);
+        assertThat(readRepository.getRepoDir(), equalTo(new File("/agent/repo")));
+        assertThat(readRepository.getRemoteUrl().get(),
+                equalTo("ssh://git@bitbucket.example.com:7999/backend/repo.git"));
+        PlannedBranch readBranch = readRepository.getBranches().get(0);
+        assertThat(readBranch.getRefName(), equalTo("refs/remotes/origin/feature/BACKEND-1"));
+        assertThat(readBranch.getTipId(), equalTo("1111111111111111111111111111111111111111"));
+        assertThat(readBranch.getCommitTime(), equalTo(1569484800L));
+        assertThat(readBranch.getAuthorEmail(), equalTo("author@example.com"));
+        assertThat(readBranch.getShortMessage(), equalTo("BACKEND-1\tfix \\ done\n"));
+        assertThat(readBranch.getMergeBase().isPresent(), equalTo(false));
+        assertThat(readBranch.getDiffSizeBytes(), equalTo(42L));
+        assertThat(readBranch.isDiffTruncated(), equalTo(true));
+    }
+
+    @Test
+    public void should_find_repository_by_path_or_unique_remote_url() {
+        RepositoryRemovalPlan first = new RepositoryRemovalPlan(new File("/agent/first"),
+                "ssh://git@host/backend/first.git", "first", Collections.emptyList());
+        RepositoryRemovalPlan second = new RepositoryRemovalPlan(new File("/agent/second"),
+                "ssh://git@host/backend/second.git", "second", Collections.emptyList());
+        RepositoryRemovalPlan otherSecond = new RepositoryRemovalPlan(new File("/other/second"),
+                "ssh://git@host/backend/second.git", "second", Collections.emptyList());
+        RemovalPlan plan = new RemovalPlan(0L, 30L, Arrays.asList(first, second, otherSecond));
+
+        assertThat(plan.findRepository(new File("/agent/second"), null).get(), equalTo(second));
+        assertThat(plan.findRepository(new File("/build/first"), "ssh://git@host/backend/first.git").get(),
+                equalTo(first));
+        assertThat(plan.findRepository(new File("/build/first"), null).isPresent(), equalTo(false));
+        assertThat(plan.findRepository(new File("/build/first"), "ssh://git@host/frontend/first.git").isPresent(),
+                equalTo(false));
+        assertThat(plan.findRepository(new File("/build/second"), "ssh://git@host/backend/second.git").isPresent(),
+                equalTo(false));
+    }
+}
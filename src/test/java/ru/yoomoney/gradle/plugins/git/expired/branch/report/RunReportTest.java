@@ -0,0 +1,51 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.report;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.StringContains.containsString;
+
+public class RunReportTest {
+
+    @Test
+    public void should_sum_task_and_repository_metrics() {
+        RunReport report = new RunReport("notifyAboutGitExpiredBranches");
+        report.getTaskMetrics().increment(RunMetrics.Counter.MAILS_SENT, 2);
+        report.measureRepository(new File("first"), metrics -> {
+            metrics.increment(RunMetrics.Counter.REFS_SCANNED, 10);
+            metrics.addTime(RunMetrics.Phase.REF_LISTING, 5_000_000L);
+            return null;
+        });
+        report.measureRepository(new File("second"), metrics -> {
+            metrics.increment(RunMetrics.Counter.REFS_SCANNED, 5);
+            metrics.addTime(RunMetrics.Phase.REF_LISTING, 7_000_000L);
+            return null;
+        });
+
+        String json = report.toJson();
+
+        assertThat(json, containsString("\"task\": \"notifyAboutGitExpiredBranches\""));
+        assertThat(json, containsString("  \"counters\": {\n    \"refsScanned\": 15,"));
+        assertThat(json, containsString("  \"phases\": {\n    \"refListing\": {\"millis\": 12, \"calls\": 2},"));
+        assertThat(json, containsString("    \"mailsSent\": 2,"));
+        assertThat(json, containsString("      \"repoDir\": \"first\",\n      \"failed\": false,"));
+        assertThat(json, containsString("        \"refsScanned\": 5,"));
+    }
+
+    @Test
+    public void should_mark_failed_repository() {
+        RunReport report = new RunReport("removeExpiredGitBranches");
+        try {
+            report.measureRepository(new File("broken"), metrics -> {
+                throw new IllegalStateException("repository is broken");
+            });
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), equalTo("repository is broken"));
+        }
+
+        assertThat(report.toJson(), containsString("\"repoDir\": \"broken\",\n      \"failed\": true,"));
+    }
+}
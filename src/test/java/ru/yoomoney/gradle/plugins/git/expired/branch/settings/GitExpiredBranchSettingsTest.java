@@ -0,0 +1,71 @@
+package ru.yoomoney.gradle.plugins.git.expired.branch.settings;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class GitExpiredBranchSettingsTest {
+
+    @Test
+    public void should_be_serializable_for_worker_api() throws IOException, ClassNotFoundException {
+        GitExpiredBranchSettings settings = new GitExpiredBranchSettings.Builder()
+                .withRepoDir(new File("repo"))
+                .withRepoDirs(Arrays.asList(new File("first"), new File("second")))
+                .withIgnoreBranchesPatterns(Collections.singletonList("^refs/remotes/origin/master$"))
+                .withIncludeBranchesPrefixes(Collections.singletonList("refs/remotes/origin/feature/"))
+                .withStaleDaysToNotify(30L)
+                .build();
+
+        GitExpiredBranchSettings restored = copy(settings);
+
+        assertThat(restored.getRepoDirs(), equalTo(Arrays.asList(new File("first"), new File("second"))));
+        assertThat(restored.getIgnoreBranches().stream().map(Pattern::pattern).collect(Collectors.toList()),
+                equalTo(Collections.singletonList("^refs/remotes/origin/master$")));
+        assertThat(restored.getIncludeBranchesPrefixes(),
+                equalTo(Collections.singletonList("refs/remotes/origin/feature/")));
+        assertThat(restored.getStaleDaysToNotify(), equalTo(30L));
+    }
+
+    @Test
+    public void should_use_plugin_defaults_when_built_directly() {
+        GitExpiredBranchSettings settings = new GitExpiredBranchSettings.Builder()
+                .withRepoDir(new File("repo"))
+                .build();
+
+        assertThat(settings.getStaleDaysToNotify(), equalTo(30L));
+        assertThat(settings.getStaleDaysToDelete(), equalTo(60L));
+        assertThat(settings.getIgnoreBranches().stream().map(Pattern::pattern).collect(Collectors.toList()),
+                equalTo(Arrays.asList("^refs/remotes/origin/dev$", "^refs/remotes/origin/master$",
+                        "^refs/remotes/origin/HEAD$")));
+        assertThat(settings.getBranchScanThreads(), equalTo(Runtime.getRuntime().availableProcessors()));
+        assertThat(settings.getRepositoryScanThreads(), equalTo(4));
+        assertThat(settings.getNotificationThreads(), equalTo(4));
+        assertThat(settings.getNotificationMaxAttempts(), equalTo(3));
+        assertThat(settings.isBranchTipCacheEnabled(), equalTo(true));
+        assertThat(settings.getArchiveDiffMaxSizeBytes(), equalTo(52_428_800L));
+        assertThat(new EmailConnectionSettings.Builder().build().isReuseConnection(), equalTo(true));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T copy(T value) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (T) in.readObject();
+        }
+    }
+}